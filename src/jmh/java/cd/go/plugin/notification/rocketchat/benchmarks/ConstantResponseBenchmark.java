@@ -0,0 +1,47 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.Constants;
+import cd.go.plugin.notification.rocketchat.RocketChatPlugin;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests whose response does not depend on the request body, through {@link RocketChatPlugin#handle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstantResponseBenchmark {
+    @Param({"notifications-interested-in", "go.plugin-settings.get-view", "go.plugin-settings.get-configuration"})
+    public String requestName;
+
+    private RocketChatPlugin plugin;
+    private DefaultGoPluginApiRequest request;
+
+    @Setup
+    public void setUp() {
+        plugin = new RocketChatPlugin();
+        request = new DefaultGoPluginApiRequest(Constants.EXTENSION_TYPE, Constants.API_VERSION, requestName);
+    }
+
+    @Benchmark
+    public GoPluginApiResponse handle() throws Exception {
+        return plugin.handle(request);
+    }
+}
@@ -0,0 +1,66 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.utils.DefaultDateTypeAdapter;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.bind.util.ISO8601Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing GoCD timestamps from 8 threads through one shared adapter, as the request threads do through the static
+ * Gson instances. {@code synchronizedSimpleDateFormat} is the adapter as it was before it became lock-free.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class DateParsingBenchmark {
+    private static final String TIMESTAMP = "2016-04-06T12:50:03.317+0000";
+
+    private final DefaultDateTypeAdapter adapter = new DefaultDateTypeAdapter(DefaultDateTypeAdapter.GOCD_PATTERN);
+    private final DateFormat enUsFormat = new SimpleDateFormat(DefaultDateTypeAdapter.GOCD_PATTERN, Locale.US);
+    private final DateFormat localFormat = new SimpleDateFormat(DefaultDateTypeAdapter.GOCD_PATTERN);
+
+    @Benchmark
+    public Date lockFree() {
+        return adapter.deserializeToDate(TIMESTAMP);
+    }
+
+    @Benchmark
+    public Date synchronizedSimpleDateFormat() {
+        synchronized (localFormat) {
+            try {
+                return localFormat.parse(TIMESTAMP);
+            } catch (ParseException ignored) {
+            }
+            try {
+                return enUsFormat.parse(TIMESTAMP);
+            } catch (ParseException ignored) {
+            }
+            try {
+                return ISO8601Utils.parse(TIMESTAMP, new ParsePosition(0));
+            } catch (ParseException e) {
+                throw new JsonSyntaxException(TIMESTAMP, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryQueue;
+import cd.go.plugin.notification.rocketchat.delivery.DeliverySettings;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryThreads;
+import cd.go.plugin.notification.rocketchat.delivery.OverflowPolicy;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatStub;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A burst of notifications through the delivery queue to a {@link RocketChatStub} which answers every post after
+ * {@code latencyMillis}, as a slow room does, until the last one arrived. Compares the pool of platform workers with a
+ * virtual thread per delivery; on runtimes before Java 21 both run on the workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryModeBenchmark {
+    private static final int WORKERS = 8;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    @Param({"200"})
+    public int burst;
+
+    private RocketChatStub stub;
+    private RocketChatService service;
+    private DeliveryQueue queue;
+
+    @Setup
+    public void setUp() throws IOException {
+        stub = RocketChatStub.start().latencyMillis(latencyMillis);
+        service = new RocketChatService();
+        service.configure(PluginSettings.fromJSON("{\"api_url\":\"" + stub.url() + "\",\"api_user\":\"bot\",\"api_key\":\"secret\"," +
+                "\"room\":\"builds\",\"rate_limit_per_minute\":\"100000000\",\"rate_limit_burst\":\"100000\"}"));
+        queue = new DeliveryQueue(new DeliverySettings(burst, WORKERS, OverflowPolicy.CALLER_RUNS, DeliveryThreads.fromString(threads)));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        queue.shutdown();
+        queue.awaitTermination(10, TimeUnit.SECONDS);
+        stub.close();
+    }
+
+    @Benchmark
+    public int deliverBurst() throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(burst);
+        AtomicInteger failed = new AtomicInteger();
+        Message message = new Message("Stage [benchmark/1/build/1] failed");
+        for (int i = 0; i < burst; i++) {
+            queue.submit(() -> {
+                try {
+                    service.postMessage(message);
+                }
+                catch (IOException e) {
+                    failed.incrementAndGet();
+                }
+                finally {
+                    delivered.countDown();
+                }
+            });
+        }
+        delivered.await();
+        return failed.get();
+    }
+}
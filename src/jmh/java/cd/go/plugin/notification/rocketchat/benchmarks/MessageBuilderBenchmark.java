@@ -0,0 +1,93 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the message of a failed stage, every other job of which failed, with the default templates and with a
+ * template that uses every placeholder but the failed jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBuilderBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    public int jobs;
+
+    private final MessageBuilderService messageBuilder = new MessageBuilderService();
+    private PluginSettings settings;
+    private PluginSettings customized;
+    private StageStatusRequest.Pipeline pipeline;
+
+    @Setup
+    public void setUp() {
+        settings = new PluginSettings();
+        settings.setGoServerUrl("https://gocd.example.com");
+        customized = new PluginSettings();
+        customized.setGoServerUrl("https://gocd.example.com");
+        customized.setMessageTemplateFailed(":red_circle: [{pipeline}/{pipeline_counter}]({vsm_url}) in {group}, label {label}: " +
+                "stage [{stage}/{stage_counter}]({stage_url}) ({stage_run}) failed after {duration}, triggered by {approver}");
+
+        pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = "up42";
+        pipeline.counter = "1234";
+        pipeline.label = "1.2.1234";
+        pipeline.group = "first";
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = "test";
+        pipeline.stage.counter = "1";
+        pipeline.stage.state = "Failed";
+        pipeline.stage.result = "Failed";
+        pipeline.stage.approvedBy = "changes";
+        pipeline.stage.createTime = new Date(1546300800000L);
+        pipeline.stage.lastTransitionTime = new Date(1546300800000L + 754000L);
+        pipeline.stage.jobs = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            StageStatusRequest.Job job = new StageStatusRequest.Job();
+            job.name = "job-" + i;
+            job.state = "Completed";
+            job.result = i % 2 == 0 ? "Failed" : "Passed";
+            pipeline.stage.jobs.add(job);
+        }
+    }
+
+    @Benchmark
+    public Message onStageFailed() {
+        return messageBuilder.onStageFailed(pipeline, settings);
+    }
+
+    @Benchmark
+    public String getTopMessage() {
+        return messageBuilder.getTopMessage(pipeline, settings);
+    }
+
+    @Benchmark
+    public String getTopMessageWithEveryPlaceholder() {
+        return messageBuilder.getTopMessage(pipeline, customized);
+    }
+
+    @Benchmark
+    public String getFailedJobsText() {
+        return messageBuilder.getFailedJobsText(pipeline, settings);
+    }
+}
@@ -0,0 +1,74 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Stage status payloads for the benchmarks, built from a notification recorded from a GoCD server.
+ */
+final class Payloads {
+    private static final String RECORDED = "/stage-status-request.json";
+
+    private Payloads() {
+    }
+
+    static String stageStatus(String size) throws IOException {
+        switch (size) {
+            case "small":
+                return recorded();
+            case "fanIn":
+                // a pipeline with 400 upstream materials, 25 modifications each, roughly 700 KB
+                return withBuildCause(400, 25);
+            default:
+                throw new IllegalArgumentException("Unknown payload size " + size);
+        }
+    }
+
+    /**
+     * The payload of {@link #stageStatus(String)} for a stage in another state, the recorded one has passed.
+     */
+    static String stageStatus(String size, String state) throws IOException {
+        JsonObject request = new JsonParser().parse(stageStatus(size)).getAsJsonObject();
+        JsonObject stage = request.getAsJsonObject("pipeline").getAsJsonObject("stage");
+        stage.addProperty("state", state);
+        stage.addProperty("result", state);
+        return request.toString();
+    }
+
+    static String recorded() throws IOException {
+        return Resources.toString(Payloads.class.getResource(RECORDED), Charsets.UTF_8);
+    }
+
+    static String withBuildCause(int materials, int modificationsPerMaterial) throws IOException {
+        JsonObject request = new JsonParser().parse(recorded()).getAsJsonObject();
+        JsonObject pipeline = request.getAsJsonObject("pipeline");
+        JsonArray recordedCauses = pipeline.getAsJsonArray("build-cause");
+        JsonArray causes = new JsonArray();
+        for (int i = 0; i < materials; i++) {
+            JsonObject cause = recordedCauses.get(i % recordedCauses.size()).getAsJsonObject();
+            JsonObject copy = new JsonObject();
+            copy.add("material", cause.get("material"));
+            copy.addProperty("changed", i % 2 == 0);
+            JsonArray modifications = new JsonArray();
+            for (int m = 0; m < modificationsPerMaterial; m++) {
+                JsonObject modification = new JsonObject();
+                modification.addProperty("revision", String.format("%040x", (long) i * modificationsPerMaterial + m));
+                modification.addProperty("modified-time", "2016-04-06T12:50:03.317+0000");
+                JsonObject data = new JsonObject();
+                data.addProperty("author", "Developer " + m + " <dev" + m + "@example.com>");
+                data.addProperty("comment", "Change " + m + " of material " + i + ", which touches a few files and says so at some length");
+                modification.add("data", data);
+                modifications.add(modification);
+            }
+            copy.add("modifications", modifications);
+            causes.add(copy);
+        }
+        pipeline.add("build-cause", causes);
+        return request.toString();
+    }
+}
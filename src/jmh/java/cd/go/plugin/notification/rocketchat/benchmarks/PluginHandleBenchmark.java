@@ -0,0 +1,118 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.Constants;
+import cd.go.plugin.notification.rocketchat.Request;
+import cd.go.plugin.notification.rocketchat.RocketChatPlugin;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatSettings;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatTransport;
+import cd.go.plugin.notification.rocketchat.utils.Util;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.io.Files;
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.request.GoApiRequest;
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stage status notification through {@link RocketChatPlugin#handle}, as the GoCD server sends it: dispatch, parsing,
+ * duplicate check and enqueueing on the calling thread, settings lookup, rendering and posting on the delivery workers.
+ * Settings come from a stub accessor and posts go to a transport which drops them.
+ * <p>
+ * Every notification is for a new pipeline run, so none of them is suppressed as a duplicate. The payload text for
+ * each run is built in the benchmark method and is part of the measured allocation. Passed stages of pipelines which
+ * are not broken are answered by the stage state filter, failed ones are parsed and only the first failure goes all
+ * the way to the transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginHandleBenchmark {
+    private static final String SETTINGS = "{\"go_server_url\":\"https://gocd.example.com\",\"api_url\":\"http://127.0.0.1:1\"," +
+            "\"api_user\":\"bot\",\"api_key\":\"secret\",\"room\":\"builds\"}";
+
+    @Param({"small", "fanIn"})
+    public String payload;
+
+    /**
+     * A stage that keeps failing is only posted once, "Flapping" alternates between failed and passed runs so every
+     * notification is rendered and sent.
+     */
+    @Param({"Failed", "Passed", "Flapping"})
+    public String state;
+
+    private RocketChatPlugin plugin;
+    private String[] before;
+    private String[] after;
+    private long run;
+
+    @Setup
+    public void setUp() throws IOException {
+        File dataDirectory = Files.createTempDir();
+        dataDirectory.deleteOnExit();
+        System.setProperty(Util.DATA_DIRECTORY_PROPERTY, dataDirectory.getAbsolutePath());
+
+        plugin = new RocketChatPlugin(new RocketChatService() {
+            @Override
+            protected RocketChatTransport newTransport(RocketChatSettings settings) {
+                return new DroppingTransport(settings);
+            }
+        });
+        plugin.initializeGoApplicationAccessor(new GoApplicationAccessor() {
+            @Override
+            public GoApiResponse submit(GoApiRequest request) {
+                return DefaultGoApiResponse.success(SETTINGS);
+            }
+        });
+
+        String[] states = "Flapping".equals(state) ? new String[]{"Failed", "Passed"} : new String[]{state};
+        before = new String[states.length];
+        after = new String[states.length];
+        for (int i = 0; i < states.length; i++) {
+            // the first counter in the payload is the pipeline counter
+            String json = Payloads.stageStatus(payload, states[i]);
+            int open = json.indexOf('"', json.indexOf(':', json.indexOf("\"counter\"")));
+            before[i] = json.substring(0, open + 1);
+            after[i] = json.substring(json.indexOf('"', open + 1));
+        }
+    }
+
+    @Benchmark
+    public GoPluginApiResponse stageStatus() throws Exception {
+        DefaultGoPluginApiRequest request = new DefaultGoPluginApiRequest(Constants.EXTENSION_TYPE, Constants.API_VERSION, Request.REQUEST_STAGE_STATUS.requestName());
+        int i = (int) (++run % before.length);
+        request.setRequestBody(before[i] + run + after[i]);
+        return plugin.handle(request);
+    }
+
+    private static class DroppingTransport extends RocketChatTransport {
+        DroppingTransport(RocketChatSettings settings) {
+            super(settings.getServerUrl(), settings.getUser(), settings.getPassword(),
+                    settings.getConnectTimeoutMillis(), settings.getReadTimeoutMillis());
+        }
+
+        @Override
+        public void postMessage(String room, Message msg, RateLimitListener listener) {
+        }
+    }
+}
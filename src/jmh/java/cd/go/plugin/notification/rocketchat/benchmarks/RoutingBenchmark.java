@@ -0,0 +1,66 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.routing.RoomRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing a stage to its rooms with few and with many rules, a third of them exact names, a third globs and a third
+ * regular expressions. {@code resolve} skips the decision cache, {@code rooms} hits it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+    @Param({"5", "5000"})
+    public int rules;
+
+    private RoomRouter router;
+    private String pipeline;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            switch (i % 3) {
+                case 0:
+                    text.append("pipeline=service-").append(i);
+                    break;
+                case 1:
+                    text.append("group=team-").append(i % 50).append(" pipeline=team-").append(i).append("-*");
+                    break;
+                default:
+                    text.append("pipeline=/app-").append(i).append("-(build|deploy)/ stage=prod");
+            }
+            text.append(" => #room-").append(i).append('\n');
+        }
+        router = RoomRouter.compile(text.toString(), "builds");
+        int last = (rules - 1) / 3 * 3 + 1;
+        pipeline = "team-" + last + "-deploy";
+    }
+
+    @Benchmark
+    public List<String> resolve() {
+        return router.resolve("team-1", pipeline, "prod");
+    }
+
+    @Benchmark
+    public List<String> rooms() {
+        return router.rooms("team-1", pipeline, "prod");
+    }
+}
@@ -0,0 +1,55 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStateFilter;
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding the whole stage status payload with Gson against the streaming parser behind
+ * {@link StageStatusRequest#fromJSON(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageStatusRequestParsingBenchmark {
+    @Param({"small", "fanIn"})
+    public String payload;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = Payloads.stageStatus(payload);
+    }
+
+    @Benchmark
+    public StageStatusRequest gsonBinding() {
+        return StageStatusRequest.GSON.fromJson(json, StageStatusRequest.class);
+    }
+
+    @Benchmark
+    public StageStatusRequest streaming() {
+        return StageStatusRequest.fromJSON(json);
+    }
+
+    @Benchmark
+    public String stageState() {
+        return StageStateFilter.stageState(json);
+    }
+}
@@ -0,0 +1,77 @@
+package cd.go.plugin.notification.rocketchat.benchmarks;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import cd.go.plugin.notification.rocketchat.state.NotificationDeduplicator;
+import cd.go.plugin.notification.rocketchat.state.StageResultStore;
+import cd.go.plugin.notification.rocketchat.state.StateSnapshots;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restoring saved state on startup: half of the entries are stage results and half are notifications seen, all of
+ * them in the snapshot but the last thousand, which are replayed from the log. Includes creating the empty stores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateRestoreBenchmark {
+    private static final int LOGGED = 1000;
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDir();
+        directory.deleteOnExit();
+        StageResultStore results = new StageResultStore();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, deduplicator, entries);
+        int stages = entries / 2;
+        for (int i = 0; i < stages; i++) {
+            if(i == stages - LOGGED / 2) {
+                snapshots.checkpoint();
+            }
+            results.record("pipeline-" + i, i, "build", 1, i % 2 == 0 ? StageResultStore.FAILED : StageResultStore.PASSED);
+            deduplicator.firstSeen(pipeline("pipeline-" + i, String.valueOf(i)));
+        }
+        snapshots.close();
+    }
+
+    @Benchmark
+    public StageResultStore restore() throws IOException {
+        StageResultStore results = new StageResultStore();
+        StateSnapshots.open(directory, results, new NotificationDeduplicator(), entries);
+        return results;
+    }
+
+    private static StageStatusRequest.Pipeline pipeline(String name, String counter) {
+        StageStatusRequest.Pipeline pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = name;
+        pipeline.counter = counter;
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = "build";
+        pipeline.stage.counter = "1";
+        pipeline.stage.state = "Failed";
+        return pipeline;
+    }
+}
@@ -16,25 +16,82 @@
 
 package cd.go.plugin.notification.rocketchat;
 
+import com.google.common.base.Ticker;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.request.DefaultGoApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoApiResponse;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static cd.go.plugin.notification.rocketchat.Constants.PLUGIN_IDENTIFIER;
 import static cd.go.plugin.notification.rocketchat.Constants.PLUGIN_SETTINGS_PROCESSOR_API_VERSION;
 
 
 /**
  * Instances of this class know how to send messages to the GoCD Server.
+ * <p>
+ * Plugin settings are cached for {@link #SETTINGS_TTL_SECONDS}, or until {@link #invalidatePluginSettings()} is called,
+ * so rendering a notification does not cost a server round trip per link. The cached instance is shared between threads
+ * and must be treated as read-only.
+ * <p>
+ * The server validates settings before it saves them, so for {@link #SETTINGS_SAVE_WINDOW_SECONDS} after an invalidation
+ * settings are fetched on every call and not cached; a fetch in between validating and saving would otherwise keep the
+ * old settings for the whole TTL.
  */
 public class PluginRequest {
+    public static final long SETTINGS_TTL_SECONDS = 60;
+    public static final long SETTINGS_SAVE_WINDOW_SECONDS = 10;
+
     private final GoApplicationAccessor accessor;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final long saveWindowNanos;
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile CachedSettings cached;
+    // ticker reading until which fetched settings are not cached
+    private volatile long uncachedUntil;
 
     public PluginRequest(GoApplicationAccessor accessor) {
+        this(accessor, Ticker.systemTicker(), TimeUnit.SECONDS.toNanos(SETTINGS_TTL_SECONDS), TimeUnit.SECONDS.toNanos(SETTINGS_SAVE_WINDOW_SECONDS));
+    }
+
+    PluginRequest(GoApplicationAccessor accessor, Ticker ticker, long ttlNanos, long saveWindowNanos) {
         this.accessor = accessor;
+        this.ticker = ticker;
+        this.ttlNanos = ttlNanos;
+        this.saveWindowNanos = saveWindowNanos;
+        this.uncachedUntil = ticker.read();
     }
 
     public PluginSettings getPluginSettings() throws ServerRequestFailedException {
+        CachedSettings current = cached;
+        long now = ticker.read();
+        if (current != null && now - current.fetchedAt < ttlNanos) {
+            return current.settings;
+        }
+
+        long fetchGeneration = generation.get();
+        PluginSettings settings = fetchPluginSettings();
+        // an unconfigured plugin is not cached, so settings saved later are picked up immediately
+        if (settings != null && generation.get() == fetchGeneration && now - uncachedUntil >= 0) {
+            cached = new CachedSettings(settings, now);
+        }
+        return settings;
+    }
+
+    /**
+     * Drops the cached settings and keeps settings fetched during the next {@link #SETTINGS_SAVE_WINDOW_SECONDS} out of
+     * the cache, the server saves new settings only after asking the plugin to validate them.
+     */
+    public void invalidatePluginSettings() {
+        uncachedUntil = ticker.read() + saveWindowNanos;
+        generation.incrementAndGet();
+        cached = null;
+    }
+
+    private PluginSettings fetchPluginSettings() throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(Constants.REQUEST_SERVER_GET_PLUGIN_SETTINGS, PLUGIN_SETTINGS_PROCESSOR_API_VERSION, PLUGIN_IDENTIFIER);
         GoApiResponse response = accessor.submit(request);
 
@@ -45,4 +102,13 @@ public class PluginRequest {
         return PluginSettings.fromJSON(response.responseBody());
     }
 
+    private static class CachedSettings {
+        private final PluginSettings settings;
+        private final long fetchedAt;
+
+        private CachedSettings(PluginSettings settings, long fetchedAt) {
+            this.settings = settings;
+            this.fetchedAt = fetchedAt;
+        }
+    }
 }
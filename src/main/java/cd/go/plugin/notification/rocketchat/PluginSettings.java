@@ -16,10 +16,26 @@
 
 package cd.go.plugin.notification.rocketchat;
 
+import cd.go.plugin.notification.rocketchat.console.ConsoleTails;
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
+import cd.go.plugin.notification.rocketchat.delivery.DeliverySettings;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryThreads;
+import cd.go.plugin.notification.rocketchat.delivery.MessageCoalescer;
+import cd.go.plugin.notification.rocketchat.delivery.OverflowPolicy;
+import cd.go.plugin.notification.rocketchat.delivery.RateLimiter;
+import cd.go.plugin.notification.rocketchat.delivery.RetryPolicy;
+import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatTransport;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.List;
 
 // Implement any settings that your plugin needs
 public class PluginSettings {
@@ -47,6 +63,98 @@ public class PluginSettings {
     @SerializedName("room")
     private String room;
 
+    @Expose
+    @SerializedName("delivery_queue_capacity")
+    private String deliveryQueueCapacity;
+
+    @Expose
+    @SerializedName("delivery_workers")
+    private String deliveryWorkers;
+
+    @Expose
+    @SerializedName("delivery_overflow_policy")
+    private String deliveryOverflowPolicy;
+
+    @Expose
+    @SerializedName("retry_max_attempts")
+    private String retryMaxAttempts;
+
+    @Expose
+    @SerializedName("retry_initial_backoff_ms")
+    private String retryInitialBackoffMillis;
+
+    @Expose
+    @SerializedName("circuit_breaker_failure_threshold")
+    private String circuitBreakerFailureThreshold;
+
+    @Expose
+    @SerializedName("circuit_breaker_open_seconds")
+    private String circuitBreakerOpenSeconds;
+
+    @Expose
+    @SerializedName("rate_limit_per_minute")
+    private String rateLimitPerMinute;
+
+    @Expose
+    @SerializedName("rate_limit_burst")
+    private String rateLimitBurst;
+
+    @Expose
+    @SerializedName("coalesce_window_seconds")
+    private String coalesceWindowSeconds;
+
+    @Expose
+    @SerializedName("message_max_size")
+    private String messageMaxSize;
+
+    @Expose
+    @SerializedName("connect_timeout_ms")
+    private String connectTimeoutMillis;
+
+    @Expose
+    @SerializedName("read_timeout_ms")
+    private String readTimeoutMillis;
+
+    @Expose
+    @SerializedName("routing_rules")
+    private String routingRules;
+
+    @Expose
+    @SerializedName("agent_status_states")
+    private String agentStatusStates;
+
+    @Expose
+    @SerializedName("agent_status_window_seconds")
+    private String agentStatusWindowSeconds;
+
+    @Expose
+    @SerializedName("delivery_threads")
+    private String deliveryThreads;
+
+    @Expose
+    @SerializedName("message_template_failed")
+    private String messageTemplateFailed;
+
+    @Expose
+    @SerializedName("message_template_fixed")
+    private String messageTemplateFixed;
+
+    @Expose
+    @SerializedName("failed_jobs_max_bytes")
+    private String failedJobsMaxBytes;
+
+    @Expose
+    @SerializedName("console_tail_bytes")
+    private String consoleTailBytes;
+
+    @Expose
+    @SerializedName("console_tail_deadline_ms")
+    private String consoleTailDeadlineMillis;
+
+    @Expose
+    @SerializedName("go_api_token")
+    private String goApiToken;
+
     public static PluginSettings fromJSON(String json) {
         return GSON.fromJson(json, PluginSettings.class);
     }
@@ -90,4 +198,212 @@ public class PluginSettings {
     public void setRoom(String room) {
         this.room = room;
     }
+
+    public int getDeliveryQueueCapacity() {
+        return positiveIntOrDefault(deliveryQueueCapacity, DeliverySettings.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public void setDeliveryQueueCapacity(String deliveryQueueCapacity) {
+        this.deliveryQueueCapacity = deliveryQueueCapacity;
+    }
+
+    public int getDeliveryWorkers() {
+        return positiveIntOrDefault(deliveryWorkers, DeliverySettings.DEFAULT_WORKERS);
+    }
+
+    public void setDeliveryWorkers(String deliveryWorkers) {
+        this.deliveryWorkers = deliveryWorkers;
+    }
+
+    public OverflowPolicy getDeliveryOverflowPolicy() {
+        OverflowPolicy policy = OverflowPolicy.fromString(deliveryOverflowPolicy);
+        return policy != null ? policy : DeliverySettings.DEFAULT_OVERFLOW_POLICY;
+    }
+
+    public void setDeliveryOverflowPolicy(String deliveryOverflowPolicy) {
+        this.deliveryOverflowPolicy = deliveryOverflowPolicy;
+    }
+
+    public int getRetryMaxAttempts() {
+        return positiveIntOrDefault(retryMaxAttempts, RetryPolicy.DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public void setRetryMaxAttempts(String retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+    }
+
+    public long getRetryInitialBackoffMillis() {
+        return positiveIntOrDefault(retryInitialBackoffMillis, (int) RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS);
+    }
+
+    public void setRetryInitialBackoffMillis(String retryInitialBackoffMillis) {
+        this.retryInitialBackoffMillis = retryInitialBackoffMillis;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return positiveIntOrDefault(circuitBreakerFailureThreshold, RocketChatService.DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+    }
+
+    public void setCircuitBreakerFailureThreshold(String circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    public int getCircuitBreakerOpenSeconds() {
+        return positiveIntOrDefault(circuitBreakerOpenSeconds, RocketChatService.DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS);
+    }
+
+    public void setCircuitBreakerOpenSeconds(String circuitBreakerOpenSeconds) {
+        this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+    }
+
+    public int getRateLimitPerMinute() {
+        return positiveIntOrDefault(rateLimitPerMinute, RateLimiter.DEFAULT_PERMITS_PER_MINUTE);
+    }
+
+    public void setRateLimitPerMinute(String rateLimitPerMinute) {
+        this.rateLimitPerMinute = rateLimitPerMinute;
+    }
+
+    public int getRateLimitBurst() {
+        return positiveIntOrDefault(rateLimitBurst, RateLimiter.DEFAULT_BURST);
+    }
+
+    public void setRateLimitBurst(String rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    public int getCoalesceWindowSeconds() {
+        return nonNegativeIntOrDefault(coalesceWindowSeconds, MessageCoalescer.DEFAULT_WINDOW_SECONDS);
+    }
+
+    public void setCoalesceWindowSeconds(String coalesceWindowSeconds) {
+        this.coalesceWindowSeconds = coalesceWindowSeconds;
+    }
+
+    public int getMessageMaxSize() {
+        return positiveIntOrDefault(messageMaxSize, MessageCoalescer.DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    public void setMessageMaxSize(String messageMaxSize) {
+        this.messageMaxSize = messageMaxSize;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return positiveIntOrDefault(connectTimeoutMillis, RocketChatTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    public void setConnectTimeoutMillis(String connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return positiveIntOrDefault(readTimeoutMillis, RocketChatTransport.DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public void setReadTimeoutMillis(String readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public String getRoutingRules() {
+        return routingRules;
+    }
+
+    public void setRoutingRules(String routingRules) {
+        this.routingRules = routingRules;
+    }
+
+    public List<String> getAgentStatusStates() {
+        return listOf(agentStatusStates);
+    }
+
+    public void setAgentStatusStates(String agentStatusStates) {
+        this.agentStatusStates = agentStatusStates;
+    }
+
+    public int getAgentStatusWindowSeconds() {
+        return positiveIntOrDefault(agentStatusWindowSeconds, AgentStatusAggregator.DEFAULT_WINDOW_SECONDS);
+    }
+
+    public void setAgentStatusWindowSeconds(String agentStatusWindowSeconds) {
+        this.agentStatusWindowSeconds = agentStatusWindowSeconds;
+    }
+
+    public DeliveryThreads getDeliveryThreads() {
+        DeliveryThreads threads = DeliveryThreads.fromString(deliveryThreads);
+        return threads != null ? threads : DeliverySettings.DEFAULT_THREADS;
+    }
+
+    public void setDeliveryThreads(String deliveryThreads) {
+        this.deliveryThreads = deliveryThreads;
+    }
+
+    public String getMessageTemplateFailed() {
+        return StringUtils.isBlank(messageTemplateFailed) ? MessageBuilderService.DEFAULT_FAILED_TEMPLATE : messageTemplateFailed;
+    }
+
+    public void setMessageTemplateFailed(String messageTemplateFailed) {
+        this.messageTemplateFailed = messageTemplateFailed;
+    }
+
+    public String getMessageTemplateFixed() {
+        return StringUtils.isBlank(messageTemplateFixed) ? MessageBuilderService.DEFAULT_FIXED_TEMPLATE : messageTemplateFixed;
+    }
+
+    public void setMessageTemplateFixed(String messageTemplateFixed) {
+        this.messageTemplateFixed = messageTemplateFixed;
+    }
+
+    public int getFailedJobsMaxBytes() {
+        return positiveIntOrDefault(failedJobsMaxBytes, MessageBuilderService.DEFAULT_FAILED_JOBS_MAX_BYTES);
+    }
+
+    public void setFailedJobsMaxBytes(String failedJobsMaxBytes) {
+        this.failedJobsMaxBytes = failedJobsMaxBytes;
+    }
+
+    public int getConsoleTailBytes() {
+        return Math.min(nonNegativeIntOrDefault(consoleTailBytes, ConsoleTails.DEFAULT_TAIL_BYTES), ConsoleTails.MAX_TAIL_BYTES);
+    }
+
+    public void setConsoleTailBytes(String consoleTailBytes) {
+        this.consoleTailBytes = consoleTailBytes;
+    }
+
+    public int getConsoleTailDeadlineMillis() {
+        return positiveIntOrDefault(consoleTailDeadlineMillis, ConsoleTails.DEFAULT_DEADLINE_MILLIS);
+    }
+
+    public void setConsoleTailDeadlineMillis(String consoleTailDeadlineMillis) {
+        this.consoleTailDeadlineMillis = consoleTailDeadlineMillis;
+    }
+
+    public String getGoApiToken() {
+        return goApiToken;
+    }
+
+    public void setGoApiToken(String goApiToken) {
+        this.goApiToken = goApiToken;
+    }
+
+    private static int positiveIntOrDefault(String value, int defaultValue) {
+        int parsed = NumberUtils.toInt(value == null ? null : value.trim(), defaultValue);
+        return parsed > 0 ? parsed : defaultValue;
+    }
+
+    private static List<String> listOf(String value) {
+        List<String> values = new ArrayList<>();
+        if(value != null) {
+            for (String item : value.split(",")) {
+                if(!item.trim().isEmpty()) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int nonNegativeIntOrDefault(String value, int defaultValue) {
+        int parsed = NumberUtils.toInt(value == null ? null : value.trim(), defaultValue);
+        return parsed >= 0 ? parsed : defaultValue;
+    }
 }
@@ -16,6 +16,10 @@
 
 package cd.go.plugin.notification.rocketchat;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Enumerable that represents one of the messages that the server sends to the plugin
  */
@@ -30,6 +34,14 @@ public enum Request {
     PLUGIN_SETTINGS_GET_VIEW(Constants.GO_PLUGIN_SETTINGS_PREFIX + ".get-view"),
     PLUGIN_SETTINGS_VALIDATE_CONFIGURATION(Constants.GO_PLUGIN_SETTINGS_PREFIX + ".validate-configuration"),;
 
+    private static final Map<String, Request> BY_NAME = new HashMap<>();
+
+    static {
+        for (Request request : values()) {
+            BY_NAME.put(request.requestName, request);
+        }
+    }
+
     private final String requestName;
 
     Request(String requestName) {
@@ -41,15 +53,15 @@ public enum Request {
     }
 
     public static Request fromString(String requestName) {
-        if (requestName != null) {
-            for (Request request : Request.values()) {
-                if (requestName.equalsIgnoreCase(request.requestName)) {
-                    return request;
-                }
-            }
+        if (requestName == null) {
+            return null;
         }
-
-        return null;
+        Request request = BY_NAME.get(requestName);
+        if (request != null) {
+            return request;
+        }
+        // names are all lower case, the server sends them that way
+        return BY_NAME.get(requestName.toLowerCase(Locale.ROOT));
     }
 
     private static class Constants {
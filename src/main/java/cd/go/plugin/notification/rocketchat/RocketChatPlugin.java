@@ -16,14 +16,26 @@
 
 package cd.go.plugin.notification.rocketchat;
 
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryQueue;
+import cd.go.plugin.notification.rocketchat.delivery.MessageDelivery;
+import cd.go.plugin.notification.rocketchat.delivery.Outbox;
 import cd.go.plugin.notification.rocketchat.executors.GetPluginConfigurationExecutor;
 import cd.go.plugin.notification.rocketchat.executors.GetViewRequestExecutor;
 import cd.go.plugin.notification.rocketchat.executors.NotificationInterestedInExecutor;
+import cd.go.plugin.notification.rocketchat.executors.NotificationResponses;
+import cd.go.plugin.notification.rocketchat.metrics.PluginMetrics;
 import cd.go.plugin.notification.rocketchat.requests.AgentStatusRequest;
+import cd.go.plugin.notification.rocketchat.requests.StageStateFilter;
 import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
 import cd.go.plugin.notification.rocketchat.requests.ValidatePluginSettings;
 import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
 import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.state.NotificationDeduplicator;
+import cd.go.plugin.notification.rocketchat.state.StageResultStore;
+import cd.go.plugin.notification.rocketchat.state.StateSnapshots;
+import cd.go.plugin.notification.rocketchat.utils.Util;
+import com.github.baloise.rocketchatrestclient.model.Message;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPlugin;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
@@ -33,25 +45,130 @@ import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @Extension
 public class RocketChatPlugin implements GoPlugin {
 
     public static final Logger LOG = Logger.getLoggerFor(RocketChatPlugin.class);
+    private static final long STATE_CHECKPOINT_MILLIS = TimeUnit.SECONDS.toMillis(30);
 
     private GoApplicationAccessor accessor;
     private PluginRequest pluginRequest;
     private RocketChatService chatService;
     private MessageBuilderService messageBuilder;
+    private DeliveryQueue deliveryQueue;
+    private MessageDelivery messageDelivery;
+    private NotificationDeduplicator deduplicator;
+    private StageResultStore stageResults;
+    private StateSnapshots stateSnapshots;
+    private PluginMetrics metrics;
+    private AgentStatusAggregator agentStatus;
+    private StageStateFilter stageFilter;
+    private final Map<Request, Handler> handlers;
 
     public RocketChatPlugin() {
-        chatService = new RocketChatService();
-        this.messageBuilder = new MessageBuilderService();
+        this(new RocketChatService());
+    }
+
+    /**
+     * For tests and benchmarks which post through a stubbed service.
+     */
+    public RocketChatPlugin(RocketChatService chatService) {
+        this.chatService = chatService;
+        this.stageResults = new StageResultStore();
+        this.messageBuilder = new MessageBuilderService(stageResults);
+        this.deliveryQueue = new DeliveryQueue();
+        this.deduplicator = new NotificationDeduplicator();
+        this.metrics = chatService.getMetrics();
+        this.stageFilter = new StageStateFilter(MessageBuilderService.NOTIFIED_STATES);
+        // most stages pass, only the ones which were broken can be fixed; results are recorded as notifications are
+        // accepted, so a failure still waiting in the delivery queue counts
+        this.stageFilter.onlyWhen("Passed", messageBuilder::isBroken);
+        this.agentStatus = new AgentStatusAggregator(summary -> deliveryQueue.submit(() -> sendAgentSummary(summary)));
+        this.handlers = handlers();
+    }
+
+    private Map<Request, Handler> handlers() {
+        // the settings executors are stateless, one instance serves every request
+        GetViewRequestExecutor getView = new GetViewRequestExecutor();
+        NotificationInterestedInExecutor interestedIn = new NotificationInterestedInExecutor(this::agentStatusEnabled);
+        GetPluginConfigurationExecutor getConfiguration = new GetPluginConfigurationExecutor();
+
+        Map<Request, Handler> handlers = new EnumMap<>(Request.class);
+        handlers.put(Request.PLUGIN_SETTINGS_GET_VIEW, request -> getView.execute());
+        handlers.put(Request.REQUEST_NOTIFICATIONS_INTERESTED_IN, request -> interestedIn.execute());
+        handlers.put(Request.REQUEST_STAGE_STATUS, this::stageStatus);
+        handlers.put(Request.REQUEST_AGENT_STATUS, this::agentStatus);
+        handlers.put(Request.PLUGIN_SETTINGS_GET_CONFIGURATION, request -> getConfiguration.execute());
+        handlers.put(Request.PLUGIN_SETTINGS_VALIDATE_CONFIGURATION, this::validateConfiguration);
+        return handlers;
     }
 
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor accessor) {
         this.accessor = accessor;
         this.pluginRequest = new PluginRequest(accessor);
+        restoreState();
+        this.messageDelivery = new MessageDelivery(chatService, openOutbox(), deliveryQueue::submit);
+        if(messageDelivery.pendingCount() > 0) {
+            deliveryQueue.submit(this::replayOutbox);
+        }
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("deliveryQueueDepth", deliveryQueue::size);
+        metrics.gauge("deliveryQueueDropped", deliveryQueue::droppedCount);
+        metrics.gauge("outboxPending", messageDelivery::pendingCount);
+        metrics.gauge("duplicatesSuppressed", deduplicator::hitCount);
+        metrics.gauge("notificationsFirstSeen", deduplicator::missCount);
+        metrics.gauge("stageNotificationsFiltered", stageFilter::rejectedCount);
+        metrics.gauge("rateLimitThrottled", () -> chatService.rateLimiter().throttledCount());
+        metrics.gauge("rateLimitWaitedMillis", () -> TimeUnit.NANOSECONDS.toMillis(chatService.rateLimiter().waitedNanos()));
+        metrics.gauge("rateLimitMaxWaitMillis", () -> TimeUnit.NANOSECONDS.toMillis(chatService.rateLimiter().maxWaitNanos()));
+        metrics.gauge("circuitOpened", chatService::circuitOpenedCount);
+        metrics.gauge("circuitRejected", chatService::circuitRejectedCount);
+        metrics.register();
+    }
+
+    private Outbox openOutbox() {
+        File directory = new File(Util.pluginDataDirectory(), "outbox");
+        try {
+            return Outbox.open(directory);
+        }
+        catch (Exception e) {
+            LOG.error("Could not open outbox in " + directory + ", undelivered messages will not be retried", e);
+            return null;
+        }
+    }
+
+    private void restoreState() {
+        if(stateSnapshots != null) {
+            stateSnapshots.close();
+        }
+        File directory = new File(Util.pluginDataDirectory(), "state");
+        try {
+            stateSnapshots = StateSnapshots.open(directory, stageResults, deduplicator);
+            stateSnapshots.checkpointEvery(STATE_CHECKPOINT_MILLIS);
+        }
+        catch (Exception e) {
+            LOG.error("Could not restore plugin state from " + directory + ", it will not be kept across restarts", e);
+            stateSnapshots = null;
+        }
+    }
+
+    private void replayOutbox() {
+        try {
+            chatService.configure(pluginRequest.getPluginSettings());
+            messageDelivery.replayPending();
+        }
+        catch (Exception e) {
+            LOG.error("Failed to replay undelivered messages", e);
+        }
     }
 
     @Override
@@ -62,32 +179,77 @@ public class RocketChatPlugin implements GoPlugin {
             throw new RuntimeException("Request from server was null");
         }
         try {
-            switch (Request.fromString(request.requestName())) {
-                case PLUGIN_SETTINGS_GET_VIEW:
-                    return new GetViewRequestExecutor().execute();
-                case REQUEST_NOTIFICATIONS_INTERESTED_IN:
-                    return new NotificationInterestedInExecutor().execute();
-                case REQUEST_STAGE_STATUS:
-                    chatService.configure(this.pluginRequest);
-                    return StageStatusRequest.fromJSON(request.requestBody()).executor(chatService, messageBuilder, pluginRequest).execute();
-                case REQUEST_AGENT_STATUS:
-                    chatService.configure(this.pluginRequest);
-                    return AgentStatusRequest.fromJSON(request.requestBody()).executor(chatService, pluginRequest).execute();
-                case PLUGIN_SETTINGS_GET_CONFIGURATION:
-                    return new GetPluginConfigurationExecutor().execute();
-                case PLUGIN_SETTINGS_VALIDATE_CONFIGURATION:
-                    return ValidatePluginSettings.fromJSON(request.requestBody()).executor().execute();
-                default:
-                    throw new UnhandledRequestTypeException(request.requestName());
+            Request requestType = Request.fromString(request.requestName());
+            metrics.onRequest(requestType);
+            Handler handler = requestType == null ? null : handlers.get(requestType);
+            if(handler == null) {
+                throw new UnhandledRequestTypeException(request.requestName());
             }
+            return handler.handle(request);
         } catch (Exception e) {
+            metrics.onRequestFailed();
             LOG.error("Error thrown in plugin",e);
             throw new RuntimeException(e);
         }
     }
 
+    private GoPluginApiResponse stageStatus(GoPluginApiRequest request) throws Exception {
+        StageStateFilter.Header header = StageStateFilter.scan(request.requestBody());
+        if(!stageFilter.accepts(header)) {
+            // nothing is posted in this state, answer before binding the request or fetching settings
+            metrics.onStageState(header.state);
+            return NotificationResponses.success();
+        }
+        long parseStart = System.nanoTime();
+        StageStatusRequest stageStatus = StageStatusRequest.fromJSON(request.requestBody());
+        metrics.parse().recordSince(parseStart);
+        return stageStatus.executor(messageDelivery, messageBuilder, pluginRequest, deliveryQueue, deduplicator, metrics).execute();
+    }
+
+    private GoPluginApiResponse agentStatus(GoPluginApiRequest request) throws Exception {
+        return AgentStatusRequest.fromJSON(request.requestBody()).executor(pluginRequest, agentStatus).execute();
+    }
+
+    private boolean agentStatusEnabled() {
+        try {
+            PluginSettings settings = pluginRequest == null ? null : pluginRequest.getPluginSettings();
+            return settings != null && !settings.getAgentStatusStates().isEmpty();
+        }
+        catch (Exception e) {
+            LOG.warn("Could not read plugin settings, not subscribing to agent status notifications", e);
+            return false;
+        }
+    }
+
+    private void sendAgentSummary(Message summary) {
+        try {
+            PluginSettings settings = pluginRequest.getPluginSettings();
+            if(settings == null) {
+                LOG.warn("Rocket chat plugin is not configured");
+                return;
+            }
+            messageDelivery.configure(settings);
+            messageDelivery.send(summary);
+        }
+        catch (Exception e) {
+            LOG.error("Failed to deliver agent status summary", e);
+        }
+    }
+
+    private GoPluginApiResponse validateConfiguration(GoPluginApiRequest request) throws Exception {
+        // the server validates right before saving, pick up the new settings on the next notification
+        if(pluginRequest != null) {
+            pluginRequest.invalidatePluginSettings();
+        }
+        return ValidatePluginSettings.fromJSON(request.requestBody()).executor().execute();
+    }
+
     @Override
     public GoPluginIdentifier pluginIdentifier() {
         return Constants.PLUGIN_IDENTIFIER;
     }
+
+    private interface Handler {
+        GoPluginApiResponse handle(GoPluginApiRequest request) throws Exception;
+    }
 }
@@ -0,0 +1,232 @@
+package cd.go.plugin.notification.rocketchat.console;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import cd.go.plugin.notification.rocketchat.rocket.LinkBuilder;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * The last few KB of the console logs of failed jobs, fetched from the GoCD server for failure messages.
+ * <p>
+ * Only the tail is requested, with {@code Range: bytes=-<n>}. A server which ignores the range and answers with the
+ * whole log is read to the end only for logs up to {@link #MAX_UNRANGED_BYTES}, keeping the last bytes; longer logs are
+ * left unread. Fetches run on a small pool of their own, which caps the requests to the GoCD server across all
+ * notifications, and a notification waits for them no longer than its deadline. The log of a finished job does not
+ * change, so tails are cached by job.
+ */
+public class ConsoleTails {
+    private static final Logger LOG = Logger.getLoggerFor(ConsoleTails.class);
+
+    public static final int DEFAULT_TAIL_BYTES = 0;
+    public static final int DEFAULT_DEADLINE_MILLIS = 3000;
+    public static final int DEFAULT_CONCURRENCY = 4;
+    // a matrix stage can fail hundreds of jobs, their first few tell the story
+    static final int MAX_JOBS = 5;
+    static final int MAX_UNRANGED_BYTES = 256 * 1024;
+    // the tail of a log sent whole is kept in memory, so no more than such a log is asked for
+    public static final int MAX_TAIL_BYTES = MAX_UNRANGED_BYTES;
+    static final int MAX_CACHED_TAILS = 1000;
+    private static final int MAX_QUEUED_FETCHES = 100;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    public ConsoleTails() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    public ConsoleTails(int concurrency) {
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_FETCHES),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-console-%d").build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return console tails of the first failed jobs of the stage which arrived before the deadline, in job order;
+     * empty when tails are disabled in the settings
+     */
+    public Map<StageStatusRequest.Job, String> fetch(StageStatusRequest.Pipeline pipeline, LinkBuilder links, PluginSettings settings) {
+        int tailBytes = settings.getConsoleTailBytes();
+        if(tailBytes == 0 || pipeline.stage.jobs == null) {
+            return Collections.emptyMap();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getConsoleTailDeadlineMillis());
+        Map<StageStatusRequest.Job, String> tails = new LinkedHashMap<>();
+        Map<StageStatusRequest.Job, Future<String>> pending = new LinkedHashMap<>();
+        int jobs = 0;
+        for (StageStatusRequest.Job job : pipeline.stage.jobs) {
+            if(!"Failed".equals(job.result)) {
+                continue;
+            }
+            if(++jobs > MAX_JOBS) {
+                break;
+            }
+            String url = links.consoleLog(pipeline, job);
+            String cached = cache.get(url);
+            if(cached != null) {
+                tails.put(job, cached);
+                continue;
+            }
+            try {
+                pending.put(job, executor.submit(() -> tail(url, tailBytes, settings.getGoApiToken(), settings.getConsoleTailDeadlineMillis())));
+            }
+            catch (RejectedExecutionException e) {
+                LOG.debug(format("Too many console logs are being fetched, skipping {0}", url));
+            }
+        }
+        for (Map.Entry<StageStatusRequest.Job, Future<String>> entry : pending.entrySet()) {
+            Future<String> fetch = entry.getValue();
+            try {
+                String tail = fetch.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if(tail != null) {
+                    cache(links.consoleLog(pipeline, entry.getKey()), tail);
+                    tails.put(entry.getKey(), tail);
+                }
+            }
+            catch (TimeoutException e) {
+                fetch.cancel(true);
+                LOG.debug(format("Console log of job {0} did not arrive in time", entry.getKey().name));
+            }
+            catch (ExecutionException e) {
+                LOG.warn(format("Could not fetch the console log of job {0}: {1}", entry.getKey().name, e.getCause().getMessage()));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fetch.cancel(true);
+            }
+        }
+        return tails;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void cache(String url, String tail) {
+        if(cache.size() >= MAX_CACHED_TAILS) {
+            // jobs come and go, start over rather than track recency
+            cache.clear();
+        }
+        cache.put(url, tail);
+    }
+
+    /**
+     * @return the last {@code tailBytes} of the log starting at a line, null when the server has no log to give
+     */
+    static String tail(String url, int tailBytes, String token, int timeoutMillis) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestProperty("Range", "bytes=-" + tailBytes);
+        connection.setRequestProperty("Accept", "text/plain");
+        if(StringUtils.isNotBlank(token)) {
+            connection.setRequestProperty("Authorization", "Bearer " + token.trim());
+        }
+        int status = connection.getResponseCode();
+        if(status == HttpURLConnection.HTTP_PARTIAL) {
+            try (InputStream in = connection.getInputStream()) {
+                byte[] tail = ByteStreams.toByteArray(ByteStreams.limit(in, tailBytes));
+                ByteStreams.exhaust(in);
+                // without a range to say where the bytes start, assume somewhere in the log
+                String range = connection.getHeaderField("Content-Range");
+                return text(tail, 0, tail.length, range == null || !range.startsWith("bytes 0-"));
+            }
+        }
+        if(status == HttpURLConnection.HTTP_OK) {
+            long length = connection.getContentLengthLong();
+            if(length > MAX_UNRANGED_BYTES) {
+                // ignored the range, not worth downloading the whole log for its end
+                connection.disconnect();
+                LOG.debug(format("GoCD server ignored the range request for {0} and sent {1} bytes, skipping it", url, length));
+                return null;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return streamedTail(in, tailBytes, url, connection);
+            }
+        }
+        InputStream error = connection.getErrorStream();
+        if(error != null) {
+            try (InputStream in = error) {
+                ByteStreams.exhaust(in);
+            }
+        }
+        if(status == 416) {
+            // an empty log has no last bytes
+            return "";
+        }
+        throw new IOException(format("GoCD server answered {0} for {1}", status, url));
+    }
+
+    private static String streamedTail(InputStream in, int tailBytes, String url, HttpURLConnection connection) throws IOException {
+        // ring buffer holding the last tailBytes read
+        byte[] ring = new byte[tailBytes];
+        byte[] chunk = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            for (int i = 0; i < read; i++) {
+                ring[(int) ((total + i) % tailBytes)] = chunk[i];
+            }
+            total += read;
+            if(total > MAX_UNRANGED_BYTES) {
+                connection.disconnect();
+                LOG.debug(format("Console log {0} is longer than {1} bytes and was sent without a range, skipping it", url, MAX_UNRANGED_BYTES));
+                return null;
+            }
+        }
+        if(total <= tailBytes) {
+            return text(ring, 0, (int) total, false);
+        }
+        byte[] tail = new byte[tailBytes];
+        int start = (int) (total % tailBytes);
+        System.arraycopy(ring, start, tail, 0, tailBytes - start);
+        System.arraycopy(ring, 0, tail, tailBytes - start, start);
+        return text(tail, 0, tailBytes, true);
+    }
+
+    /**
+     * @param cut whether the bytes start somewhere in the log, the partial first line is dropped then
+     */
+    static String text(byte[] bytes, int from, int to, boolean cut) {
+        int start = from;
+        if(cut) {
+            int newline = start;
+            while (newline < to && bytes[newline] != '\n') {
+                newline++;
+            }
+            if(newline < to) {
+                start = newline + 1;
+            }
+            else {
+                // one long line, skip the rest of a character cut in half
+                while (start < to && (bytes[start] & 0xC0) == 0x80) {
+                    start++;
+                }
+            }
+        }
+        return StringUtils.stripEnd(new String(bytes, start, to - start, Charsets.UTF_8), null);
+    }
+}
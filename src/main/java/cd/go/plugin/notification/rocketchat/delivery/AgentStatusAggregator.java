@@ -0,0 +1,186 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.requests.AgentStatusRequest;
+import com.github.baloise.rocketchatrestclient.model.Attachment;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.time.Clock;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Collects agent transitions into the watched states and posts one summary per window, like
+ * "12 agents LostContact since 14:05", instead of a message per transition. Elastic agents come and go by the hundreds,
+ * so an agent is counted once per state and window however often it flaps, and only the first host names are listed.
+ * <p>
+ * Windows do not slide: the first watched transition after a quiet period opens one, the summary is posted when it
+ * closes and tells when it opened, in the time zone of the GoCD server.
+ */
+public class AgentStatusAggregator {
+    public static final int DEFAULT_WINDOW_SECONDS = 300;
+    public static final List<String> KNOWN_STATES = Collections.unmodifiableList(Arrays.asList(
+            "Idle", "Building", "LostContact", "Missing", "Cancelled", "Unknown", "Pending", "Enabled", "Disabled"));
+    static final int MAX_HOSTS_LISTED = 20;
+    // agents remembered per state and window, beyond that they are only counted
+    static final int MAX_AGENTS_TRACKED = 10000;
+
+    public interface Flusher {
+        void flush(Message summary);
+    }
+
+    private final Flusher flusher;
+    private final Clock clock;
+    private final DateTimeFormatter openedAt;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-agent-status-%d").build());
+    private final Object lock = new Object();
+
+    private volatile long windowMillis = TimeUnit.SECONDS.toMillis(DEFAULT_WINDOW_SECONDS);
+    // lower case state to the name used in summaries
+    private volatile Map<String, String> watched = Collections.emptyMap();
+    private Window window;
+
+    public AgentStatusAggregator(Flusher flusher) {
+        this(flusher, Clock.systemDefaultZone());
+    }
+
+    AgentStatusAggregator(Flusher flusher, Clock clock) {
+        this.flusher = flusher;
+        this.clock = clock;
+        this.openedAt = DateTimeFormatter.ofPattern("HH:mm", Locale.ROOT).withZone(clock.getZone());
+    }
+
+    public void configure(long windowMillis, Collection<String> states) {
+        this.windowMillis = windowMillis;
+        Map<String, String> watched = new LinkedHashMap<>();
+        for (String state : states) {
+            watched.put(state.toLowerCase(Locale.ROOT), state);
+        }
+        this.watched = watched;
+    }
+
+    /**
+     * @return whether the transition is into a watched state and will be part of the next summary
+     */
+    public boolean add(AgentStatusRequest.Agent agent) {
+        String state = watchedState(agent);
+        if(state == null) {
+            return false;
+        }
+        synchronized (lock) {
+            if(window == null) {
+                window = new Window(openedAt.format(clock.instant()));
+                timer.schedule(this::flushAll, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            window.add(state, agent);
+        }
+        return true;
+    }
+
+    private String watchedState(AgentStatusRequest.Agent agent) {
+        Map<String, String> watched = this.watched;
+        if(agent == null || watched.isEmpty()) {
+            return null;
+        }
+        String state = lookup(watched, agent.getAgentState());
+        return state != null ? state : lookup(watched, agent.getConfigState());
+    }
+
+    private static String lookup(Map<String, String> watched, String state) {
+        return state == null ? null : watched.get(state.toLowerCase(Locale.ROOT));
+    }
+
+    public void flushAll() {
+        Window closed;
+        synchronized (lock) {
+            closed = window;
+            window = null;
+        }
+        if(closed != null) {
+            flusher.flush(closed.summary());
+        }
+    }
+
+    private static class Window {
+        private final String openedAt;
+        private final Map<String, Transitions> byState = new LinkedHashMap<>();
+
+        Window(String openedAt) {
+            this.openedAt = openedAt;
+        }
+
+        void add(String state, AgentStatusRequest.Agent agent) {
+            byState.computeIfAbsent(state, s -> new Transitions()).add(agent);
+        }
+
+        Message summary() {
+            List<String> lines = new ArrayList<>(byState.size());
+            Message message = new Message();
+            for (Map.Entry<String, Transitions> entry : byState.entrySet()) {
+                Transitions transitions = entry.getValue();
+                String line = format("{0,choice,1#1 agent|1<{0,number,integer} agents} {1} since {2}", transitions.count, entry.getKey(), openedAt);
+                if(transitions.elastic > 0) {
+                    line += format(" ({0,number,integer} elastic)", transitions.elastic);
+                }
+                lines.add(line);
+                Attachment attachment = new Attachment();
+                attachment.setText(transitions.hosts());
+                message.addAttachment(attachment);
+            }
+            message.setText(String.join("\n", lines));
+            return message;
+        }
+    }
+
+    private static class Transitions {
+        // uuid to host name
+        private final Map<String, String> agents = new LinkedHashMap<>();
+        private int count;
+        private int elastic;
+
+        void add(AgentStatusRequest.Agent agent) {
+            String uuid = agent.getUuid() != null ? agent.getUuid() : agent.getHostName();
+            if(agents.containsKey(uuid)) {
+                return;
+            }
+            if(agents.size() < MAX_AGENTS_TRACKED) {
+                agents.put(uuid, agent.getHostName() != null ? agent.getHostName() : uuid);
+            }
+            count++;
+            if(agent.isElastic()) {
+                elastic++;
+            }
+        }
+
+        String hosts() {
+            StringBuilder text = new StringBuilder();
+            int listed = 0;
+            for (String host : agents.values()) {
+                if(listed == MAX_HOSTS_LISTED) {
+                    break;
+                }
+                if(listed++ > 0) {
+                    text.append(", ");
+                }
+                text.append(host);
+            }
+            if(count > listed) {
+                text.append(format(" and {0,number,integer} more", count - listed));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.base.Ticker;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Stops calling a Rocket.Chat server after {@code failureThreshold} consecutive transient failures.
+ * <p>
+ * While open every call fails fast with {@link CircuitOpenException}. Once {@code openDuration} has passed a single
+ * probe call is let through (half-open); its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = Logger.getLoggerFor(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long rejected;
+    private long opened;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit) {
+        this(name, failureThreshold, unit.toNanos(openDuration), Ticker.systemTicker());
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long openNanos, Ticker ticker) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.ticker = ticker;
+    }
+
+    public synchronized void acquirePermission() throws CircuitOpenException {
+        if(state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if(state == State.CLOSED) {
+            return;
+        }
+        if(state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return;
+        }
+        rejected++;
+        throw new CircuitOpenException(format("Circuit breaker for {0} is {1}, not calling Rocket.Chat", name, state));
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if(state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if(state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = ticker.read();
+            opened++;
+            transitionTo(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return calls refused while the circuit was open
+     */
+    public synchronized long rejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * @return how many times the circuit has opened
+     */
+    public synchronized long openedCount() {
+        return opened;
+    }
+
+    private void transitionTo(State next) {
+        if(next == State.OPEN) {
+            LOG.warn(format("Circuit breaker for {0} is now OPEN after {1} consecutive failures, failing fast for {2} ms",
+                    name, consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(openNanos)));
+        }
+        else {
+            LOG.info(format("Circuit breaker for {0} is now {1}", name, next));
+        }
+        state = next;
+    }
+}
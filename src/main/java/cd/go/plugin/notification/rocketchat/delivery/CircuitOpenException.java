@@ -0,0 +1,12 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling Rocket.Chat while its circuit breaker is open.
+ */
+public class CircuitOpenException extends IOException {
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
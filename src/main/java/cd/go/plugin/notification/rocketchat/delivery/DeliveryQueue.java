@@ -0,0 +1,142 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Bounded in-memory queue of pending deliveries, drained by a small pool of daemon workers.
+ * GoCD server threads only enqueue, so a slow Rocket.Chat server never holds up stage transitions.
+ * <p>
+ * With {@link DeliveryThreads#VIRTUAL} on Java 21 and later every delivery gets a virtual thread of its own instead, up
+ * to the queue capacity at once, and only deliveries beyond that wait in the queue. A virtual thread blocked on a slow
+ * room costs a few hundred bytes of heap rather than a platform thread and its stack.
+ */
+public class DeliveryQueue {
+    private static final Logger LOG = Logger.getLoggerFor(DeliveryQueue.class);
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile DeliverySettings settings;
+    private volatile ThreadPoolExecutor executor;
+
+    public DeliveryQueue() {
+        this(DeliverySettings.DEFAULT);
+    }
+
+    public DeliveryQueue(DeliverySettings settings) {
+        this.settings = settings;
+        this.executor = newExecutor(settings);
+    }
+
+    /**
+     * Applies new queue settings. The previous pool is shut down gracefully, so deliveries already queued on it are still sent.
+     */
+    public synchronized void configure(DeliverySettings settings) {
+        if(this.settings.equals(settings)) {
+            return;
+        }
+        ThreadPoolExecutor previous = this.executor;
+        this.executor = newExecutor(settings);
+        this.settings = settings;
+        previous.shutdown();
+        LOG.info(format("Reconfigured delivery queue: capacity {0}, {1}, overflow policy {2}",
+                settings.getQueueCapacity(), usesVirtualThreads() ? "virtual threads" : settings.getWorkers() + " workers",
+                settings.getOverflowPolicy().settingValue()));
+    }
+
+    public void submit(Runnable delivery) {
+        executor.execute(delivery);
+    }
+
+    public int size() {
+        return executor.getQueue().size();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public DeliverySettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return whether deliveries run on virtual threads, false if they were asked for but the runtime has none
+     */
+    public boolean usesVirtualThreads() {
+        return settings.getThreads() == DeliveryThreads.VIRTUAL && VirtualThreads.available();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private ThreadPoolExecutor newExecutor(DeliverySettings settings) {
+        int workers = settings.getWorkers();
+        ThreadFactory threadFactory;
+        if(settings.getThreads() == DeliveryThreads.VIRTUAL && VirtualThreads.available()) {
+            // threads are started on demand and time out like the workers, so an idle queue holds none
+            workers = settings.getQueueCapacity();
+            threadFactory = VirtualThreads.factory();
+        }
+        else {
+            if(settings.getThreads() == DeliveryThreads.VIRTUAL) {
+                LOG.info(format("Virtual threads need Java 21, delivering with {0} workers on Java {1}", workers, System.getProperty("java.version")));
+            }
+            threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-delivery-%d").build();
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                workers, workers,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                threadFactory,
+                (delivery, source) -> rejected(delivery, source, settings.getOverflowPolicy()));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private void rejected(Runnable delivery, ThreadPoolExecutor source, OverflowPolicy policy) {
+        if(source.isShutdown()) {
+            // raced with configure(), hand the delivery over to the replacement pool
+            ThreadPoolExecutor current = this.executor;
+            if(current != source) {
+                current.execute(delivery);
+            }
+            else {
+                drop("delivery queue is shut down");
+            }
+            return;
+        }
+        switch (policy) {
+            case DROP_NEWEST:
+                drop("delivery queue is full");
+                break;
+            case DROP_OLDEST:
+                if(source.getQueue().poll() != null) {
+                    drop("delivery queue is full, evicted the oldest pending notification");
+                }
+                source.execute(delivery);
+                break;
+            case CALLER_RUNS:
+                delivery.run();
+                break;
+        }
+    }
+
+    private void drop(String reason) {
+        long total = dropped.incrementAndGet();
+        LOG.warn(format("Dropped a Rocket.Chat notification: {0} ({1} dropped so far)", reason, total));
+    }
+}
@@ -0,0 +1,75 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+
+import java.util.Objects;
+
+public class DeliverySettings {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+    // virtual threads run every queued delivery at once, in no particular order, so they are opted into
+    public static final DeliveryThreads DEFAULT_THREADS = DeliveryThreads.PLATFORM;
+
+    public static final DeliverySettings DEFAULT = new DeliverySettings(DEFAULT_QUEUE_CAPACITY, DEFAULT_WORKERS, DEFAULT_OVERFLOW_POLICY, DEFAULT_THREADS);
+
+    private final int queueCapacity;
+    private final int workers;
+    private final OverflowPolicy overflowPolicy;
+    private final DeliveryThreads threads;
+
+    public DeliverySettings(int queueCapacity, int workers, OverflowPolicy overflowPolicy) {
+        this(queueCapacity, workers, overflowPolicy, DEFAULT_THREADS);
+    }
+
+    public DeliverySettings(int queueCapacity, int workers, OverflowPolicy overflowPolicy, DeliveryThreads threads) {
+        this.queueCapacity = queueCapacity;
+        this.workers = workers;
+        this.overflowPolicy = overflowPolicy;
+        this.threads = threads;
+    }
+
+    public static DeliverySettings fromPluginSettings(PluginSettings pluginSettings) {
+        return new DeliverySettings(
+                pluginSettings.getDeliveryQueueCapacity(),
+                pluginSettings.getDeliveryWorkers(),
+                pluginSettings.getDeliveryOverflowPolicy(),
+                pluginSettings.getDeliveryThreads());
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public DeliveryThreads getThreads() {
+        return threads;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null)
+            return false;
+        if (getClass() != o.getClass())
+            return false;
+        DeliverySettings other = (DeliverySettings) o;
+        return queueCapacity == other.queueCapacity
+                && workers == other.workers
+                && overflowPolicy == other.overflowPolicy
+                && threads == other.threads;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queueCapacity, workers, overflowPolicy, threads);
+    }
+}
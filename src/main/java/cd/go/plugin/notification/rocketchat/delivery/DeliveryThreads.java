@@ -0,0 +1,32 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+/**
+ * Which threads the delivery queue sends notifications on.
+ */
+public enum DeliveryThreads {
+    // a fixed number of platform threads, see DeliverySettings#getWorkers()
+    PLATFORM("platform"),
+    // a virtual thread per notification on Java 21 and later, platform threads on older runtimes
+    VIRTUAL("virtual");
+
+    private final String settingValue;
+
+    DeliveryThreads(String settingValue) {
+        this.settingValue = settingValue;
+    }
+
+    public String settingValue() {
+        return settingValue;
+    }
+
+    public static DeliveryThreads fromString(String settingValue) {
+        if (settingValue != null) {
+            for (DeliveryThreads threads : DeliveryThreads.values()) {
+                if (settingValue.trim().equalsIgnoreCase(threads.settingValue)) {
+                    return threads;
+                }
+            }
+        }
+        return null;
+    }
+}
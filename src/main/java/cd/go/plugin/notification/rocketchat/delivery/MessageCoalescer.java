@@ -0,0 +1,284 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.github.baloise.rocketchatrestclient.model.Attachment;
+import com.github.baloise.rocketchatrestclient.model.AttachmentField;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Collects the messages posted to a room during a short window and flushes them as one digest with an attachment per
+ * pipeline, followed by the attachments of its messages which carry more than fields, like console tails. A digest is
+ * only split when it would exceed Rocket.Chat's maximum message size, between pipelines where possible and otherwise
+ * between the messages of one pipeline. A single message too large on its own loses its console tails first and then
+ * has its text and fields cut short.
+ * <p>
+ * Messages waiting for their window to close are only kept in memory, they reach the outbox when they are flushed.
+ */
+public class MessageCoalescer {
+    public static final int DEFAULT_WINDOW_SECONDS = 0;
+    // Rocket.Chat's default Message_MaxAllowedSize
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 5000;
+
+    public interface Flusher {
+        void flush(String room, Message message);
+    }
+
+    private final Flusher flusher;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-coalescer-%d").build());
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    private volatile long windowMillis = TimeUnit.SECONDS.toMillis(DEFAULT_WINDOW_SECONDS);
+    private volatile int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+    public MessageCoalescer(Flusher flusher) {
+        this.flusher = flusher;
+    }
+
+    public void configure(long windowMillis, int maxMessageSize) {
+        this.windowMillis = windowMillis;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public boolean isEnabled() {
+        return windowMillis > 0;
+    }
+
+    public void add(String room, String pipeline, Message message) {
+        synchronized (batches) {
+            Batch batch = batches.get(room);
+            if(batch == null) {
+                batch = new Batch();
+                batches.put(room, batch);
+                timer.schedule(() -> flush(room), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.add(pipeline, message);
+        }
+    }
+
+    public void flushAll() {
+        List<String> rooms;
+        synchronized (batches) {
+            rooms = new ArrayList<>(batches.keySet());
+        }
+        for (String room : rooms) {
+            flush(room);
+        }
+    }
+
+    void flush(String room) {
+        Batch batch;
+        synchronized (batches) {
+            batch = batches.remove(room);
+        }
+        if(batch == null) {
+            return;
+        }
+        for (Message message : batch.render(maxMessageSize)) {
+            flusher.flush(room, message);
+        }
+    }
+
+    private static class Batch {
+        private final Map<String, PipelineFailures> pipelines = new LinkedHashMap<>();
+        private Message first;
+        private int count;
+
+        void add(String pipeline, Message message) {
+            if(first == null) {
+                first = message;
+            }
+            count++;
+            pipelines.computeIfAbsent(pipeline, name -> new PipelineFailures()).add(message);
+        }
+
+        List<Message> render(int maxMessageSize) {
+            if(count == 1) {
+                return Collections.singletonList(first);
+            }
+            List<Message> messages = new ArrayList<>();
+            List<Attachment> attachments = new ArrayList<>();
+            int size = 0;
+            int stages = 0;
+            for (PipelineFailures failures : pipelines.values()) {
+                for (PipelineFailures.Chunk chunk : failures.chunks(maxMessageSize)) {
+                    if(!attachments.isEmpty() && size + chunk.size > maxMessageSize) {
+                        messages.add(digest(stages, attachments));
+                        attachments = new ArrayList<>();
+                        size = 0;
+                        stages = 0;
+                    }
+                    attachments.addAll(chunk.toAttachments());
+                    size += chunk.size;
+                    stages += chunk.count;
+                }
+            }
+            messages.add(digest(stages, attachments));
+            return messages;
+        }
+
+        private static Message digest(int stages, List<Attachment> attachments) {
+            Message message = new Message(format("{0,choice,1#1 stage has|1<{0} stages have} failed", stages));
+            for (Attachment attachment : attachments) {
+                message.addAttachment(attachment);
+            }
+            return message;
+        }
+    }
+
+    private static class PipelineFailures {
+        private final List<Failure> failures = new ArrayList<>();
+
+        void add(Message message) {
+            failures.add(new Failure(message));
+        }
+
+        /**
+         * @return the failures in order, grouped into as few chunks as fit the maximum size each
+         */
+        List<Chunk> chunks(int maxMessageSize) {
+            List<Chunk> chunks = new ArrayList<>();
+            Chunk chunk = new Chunk();
+            for (Failure failure : failures) {
+                failure.fit(maxMessageSize);
+                if(chunk.count > 0 && chunk.size + failure.size() > maxMessageSize) {
+                    chunks.add(chunk);
+                    chunk = new Chunk();
+                }
+                chunk.add(failure);
+            }
+            chunks.add(chunk);
+            return chunks;
+        }
+
+        /**
+         * Failures of a pipeline which go into one attachment.
+         */
+        private static class Chunk {
+            private final StringBuilder text = new StringBuilder();
+            private final List<AttachmentField> fields = new ArrayList<>();
+            // attachments with a title or text of their own, kept whole
+            private final List<Attachment> attachments = new ArrayList<>();
+            private int size;
+            private int count;
+
+            void add(Failure failure) {
+                count++;
+                if(text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(failure.text);
+                fields.addAll(failure.fields);
+                attachments.addAll(failure.attachments);
+                size += failure.size();
+            }
+
+            List<Attachment> toAttachments() {
+                Attachment attachment = new Attachment();
+                attachment.setText(text.toString());
+                attachment.setFields(fields.toArray(new AttachmentField[0]));
+                List<Attachment> all = new ArrayList<>(attachments.size() + 1);
+                all.add(attachment);
+                all.addAll(attachments);
+                return all;
+            }
+        }
+    }
+
+    /**
+     * One coalesced message. The same message can be coalesced for several rooms, so it is copied rather than changed.
+     */
+    private static class Failure {
+        private static final String CUT = "...";
+
+        private String text;
+        private final List<AttachmentField> fields = new ArrayList<>();
+        private final List<Attachment> attachments = new ArrayList<>();
+
+        Failure(Message message) {
+            text = message.getText() == null ? "" : message.getText();
+            if(message.getAttachments() == null) {
+                return;
+            }
+            for (Attachment attachment : message.getAttachments()) {
+                if(attachment.getTitle() != null || attachment.getText() != null) {
+                    attachments.add(attachment);
+                }
+                else if(attachment.getFields() != null) {
+                    fields.addAll(Arrays.asList(attachment.getFields()));
+                }
+            }
+        }
+
+        int size() {
+            int size = text.length() + 1;
+            for (AttachmentField field : fields) {
+                size += length(field.getTitle()) + length(field.getValue());
+            }
+            for (Attachment attachment : attachments) {
+                size += length(attachment.getTitle()) + length(attachment.getText());
+                if(attachment.getFields() != null) {
+                    for (AttachmentField field : attachment.getFields()) {
+                        size += length(field.getTitle()) + length(field.getValue());
+                    }
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Makes a message too large for a digest of its own fit, Rocket.Chat would refuse it otherwise.
+         */
+        void fit(int maxMessageSize) {
+            while (size() > maxMessageSize && !attachments.isEmpty()) {
+                attachments.remove(attachments.size() - 1);
+            }
+            int excess = size() - maxMessageSize;
+            if(excess > 0) {
+                String cut = cut(text, excess);
+                excess -= text.length() - cut.length();
+                text = cut;
+            }
+            for (int i = 0; excess > 0 && i < fields.size(); i++) {
+                AttachmentField field = fields.get(i);
+                String value = field.getValue() == null ? "" : field.getValue();
+                String cut = cut(value, excess);
+                AttachmentField shorter = new AttachmentField();
+                shorter.setShort(field.isShort());
+                shorter.setTitle(field.getTitle());
+                shorter.setValue(cut);
+                fields.set(i, shorter);
+                excess -= value.length() - cut.length();
+            }
+        }
+
+        // without the last characters, marked as cut when there is room for the mark
+        private static String cut(String value, int excess) {
+            if(value.length() <= CUT.length()) {
+                return value;
+            }
+            int keep = Math.max(value.length() - excess - CUT.length(), 0);
+            if(keep > 0 && Character.isHighSurrogate(value.charAt(keep - 1))) {
+                keep--;
+            }
+            return value.substring(0, keep) + CUT;
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+}
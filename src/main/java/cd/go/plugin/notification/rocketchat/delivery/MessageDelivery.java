@@ -0,0 +1,242 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.routing.RoomRouter;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Posts rendered messages through the {@link Outbox}: a message is journaled before it is sent and acknowledged once
+ * Rocket.Chat accepted it, so failed posts and posts interrupted by a restart are replayed later. A message which was
+ * posted but could not be acknowledged is remembered, and the replay only acknowledges it again.
+ * When a coalescing window is configured, messages are first collected into per-room digests by a {@link MessageCoalescer}.
+ * <p>
+ * The rooms a notification goes to are picked by a {@link RoomRouter}, which is compiled again when the routing rules
+ * or the default room change. The outbox keeps the room of every message, so replays go to the same room.
+ */
+public class MessageDelivery {
+    private static final Logger LOG = Logger.getLoggerFor(MessageDelivery.class);
+    private static final Gson GSON = new Gson();
+
+    private final RocketChatService chat;
+    private final Outbox outbox;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    // posted, but the acknowledgement failed
+    private final Set<Long> posted = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean replayNeeded = new AtomicBoolean();
+    private final MessageCoalescer coalescer;
+
+    private volatile RoomRouter router = RoomRouter.compile(null, null);
+
+    public MessageDelivery(RocketChatService chat, Outbox outbox) {
+        this(chat, outbox, Runnable::run);
+    }
+
+    /**
+     * @param outbox        journal to use, or null to post without one
+     * @param flushExecutor where coalesced digests are posted from
+     */
+    public MessageDelivery(RocketChatService chat, Outbox outbox, Executor flushExecutor) {
+        this.chat = chat;
+        this.outbox = outbox;
+        this.replayNeeded.set(outbox != null && outbox.pendingCount() > 0);
+        this.coalescer = new MessageCoalescer((room, digest) -> flushExecutor.execute(() -> sendQuietly(room, digest)));
+    }
+
+    public void configure(PluginSettings settings) {
+        chat.configure(settings);
+        if(!router.isFor(settings.getRoutingRules(), settings.getRoom())) {
+            router = compileRouter(settings.getRoutingRules(), settings.getRoom());
+        }
+        coalescer.configure(TimeUnit.SECONDS.toMillis(settings.getCoalesceWindowSeconds()), settings.getMessageMaxSize());
+    }
+
+    private static RoomRouter compileRouter(String rules, String defaultRoom) {
+        try {
+            RoomRouter router = RoomRouter.compile(rules, defaultRoom);
+            LOG.info(format("Routing notifications with {0} rules", router.ruleCount()));
+            return router;
+        }
+        catch (IllegalArgumentException e) {
+            LOG.error("Invalid routing rules, posting everything to the default room. " + e.getMessage());
+            return RoomRouter.compile(null, defaultRoom);
+        }
+    }
+
+    /**
+     * Sends a message about a broken stage to every room it is routed to, or adds it to the rooms' digests when
+     * coalescing is enabled.
+     */
+    public void deliver(String group, String pipeline, String stage, Message msg) throws IOException {
+        deliver(group, pipeline, stage, msg, true);
+    }
+
+    /**
+     * Sends a message about a stage to every room it is routed to. A failure in one room does not keep the message from
+     * the others.
+     *
+     * @param broken whether the stage broke; only those messages go into the rooms' digests when coalescing is enabled,
+     *               a digest counts failed stages
+     */
+    public void deliver(String group, String pipeline, String stage, Message msg, boolean broken) throws IOException {
+        IOException failure = null;
+        for (String room : router.rooms(group, pipeline, stage)) {
+            if(broken && coalescer.isEnabled()) {
+                coalescer.add(room, pipeline, msg);
+                continue;
+            }
+            try {
+                send(room, msg);
+            }
+            catch (IOException e) {
+                if(failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sends a message to the room from the settings.
+     */
+    public void send(Message msg) throws IOException {
+        send(null, msg);
+    }
+
+    public void send(String room, Message msg) throws IOException {
+        if(outbox == null) {
+            chat.postMessage(room, msg);
+            return;
+        }
+        long id;
+        try {
+            id = outbox.append(GSON.toJson(new Journaled(room, msg)).getBytes(Charsets.UTF_8));
+        }
+        catch (IOException e) {
+            LOG.warn("Could not journal message in the outbox, posting it without a retry guarantee", e);
+            chat.postMessage(room, msg);
+            return;
+        }
+        post(id, room, msg);
+        if(replayNeeded.compareAndSet(true, false)) {
+            // Rocket.Chat accepts messages again, catch up on what was missed
+            replayPending();
+        }
+    }
+
+    /**
+     * Posts every message left in the outbox by failed deliveries or by a previous run of the plugin.
+     * Stops at the first failure, the remaining messages stay pending.
+     */
+    public void replayPending() {
+        if(outbox == null) {
+            return;
+        }
+        int replayed = 0;
+        for (Outbox.Entry entry : outbox.pending()) {
+            if(inFlight.contains(entry.getId())) {
+                continue;
+            }
+            Journaled journaled = Journaled.fromJson(new String(entry.getPayload(), Charsets.UTF_8));
+            try {
+                post(entry.getId(), journaled.room, journaled.message);
+                replayed++;
+            }
+            catch (IOException e) {
+                LOG.warn(format("Replay of undelivered messages stopped after {0} messages", replayed), e);
+                return;
+            }
+        }
+        if(replayed > 0) {
+            LOG.info(format("Replayed {0} undelivered messages from the outbox", replayed));
+        }
+    }
+
+    private void sendQuietly(String room, Message msg) {
+        try {
+            send(room, msg);
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.error("Failed to deliver message digest", e);
+        }
+    }
+
+    public int pendingCount() {
+        return outbox == null ? 0 : outbox.pendingCount();
+    }
+
+    private void post(long id, String room, Message msg) throws IOException {
+        if(!inFlight.add(id)) {
+            return;
+        }
+        try {
+            if(!posted.contains(id)) {
+                try {
+                    chat.postMessage(room, msg);
+                }
+                catch (IOException | RuntimeException e) {
+                    replayNeeded.set(true);
+                    throw e;
+                }
+                posted.add(id);
+            }
+            acknowledge(id);
+        }
+        finally {
+            inFlight.remove(id);
+        }
+    }
+
+    private void acknowledge(long id) {
+        try {
+            outbox.acknowledge(id);
+            posted.remove(id);
+        }
+        catch (IOException | RuntimeException e) {
+            // Rocket.Chat has the message, the replay only acknowledges it; a restart before then posts it twice
+            LOG.warn(format("Message {0} was posted but could not be acknowledged in the outbox, it is posted again if the plugin restarts before the next replay", id), e);
+            replayNeeded.set(true);
+        }
+    }
+
+    /**
+     * Outbox payload. Messages journaled before routing was added are a bare message, they go to the default room.
+     */
+    private static class Journaled {
+        private final String room;
+        private final Message message;
+
+        Journaled(String room, Message message) {
+            this.room = room;
+            this.message = message;
+        }
+
+        static Journaled fromJson(String json) {
+            JsonObject payload = new JsonParser().parse(json).getAsJsonObject();
+            if(payload.has("message")) {
+                return GSON.fromJson(payload, Journaled.class);
+            }
+            return new Journaled(null, GSON.fromJson(payload, Message.class));
+        }
+    }
+}
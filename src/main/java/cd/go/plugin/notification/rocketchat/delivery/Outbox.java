@@ -0,0 +1,375 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Append-only journal of messages which were not yet confirmed by Rocket.Chat.
+ * <p>
+ * The journal is a sequence of fixed size, memory-mapped segment files. Each record is
+ * {@code [int length][int crc32][byte type][long id][payload]}; the length is written last, so a record torn by a crash
+ * is either invisible or fails its checksum and marks the end of the segment. Acknowledgements are records too, which
+ * keeps every write an append. Only record locations are kept on heap, payloads are read back from the mapping on replay.
+ * <p>
+ * Segments are only ever removed from the head of the journal: fully acknowledged ones are deleted, sparse ones have
+ * their remaining records copied forward, and when the journal grows past {@code maxSegments} the oldest segment is
+ * evicted together with the messages still pending in it.
+ */
+public class Outbox implements Closeable {
+    private static final Logger LOG = Logger.getLoggerFor(Outbox.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+
+    private static final byte TYPE_MESSAGE = 1;
+    private static final byte TYPE_ACK = 2;
+    // length + crc32 + type + id
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 8;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Location> pending = new LinkedHashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private long nextId = 1;
+    private long evicted;
+
+    private Outbox(File directory, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    public static Outbox open(File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public static Outbox open(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("Outbox needs at least 2 segments");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create outbox directory " + directory);
+        }
+        Outbox outbox = new Outbox(directory, segmentSize, maxSegments);
+        outbox.load();
+        return outbox;
+    }
+
+    /**
+     * Journals a message payload and returns the id to acknowledge it with.
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (HEADER_SIZE + payload.length > segmentSize - 4) {
+            throw new IOException(format("Message of {0} bytes does not fit in an outbox segment of {1} bytes", payload.length, segmentSize));
+        }
+        long id = nextId++;
+        Segment segment = writableSegment(HEADER_SIZE + payload.length);
+        int offset = segment.write(TYPE_MESSAGE, id, payload, crc);
+        pending.put(id, new Location(segment, offset, payload.length));
+        segment.live++;
+        segment.liveBytes += HEADER_SIZE + payload.length;
+        return id;
+    }
+
+    /**
+     * Marks a message as delivered, it will not be replayed anymore.
+     */
+    public synchronized void acknowledge(long id) throws IOException {
+        Location location = pending.remove(id);
+        if (location == null) {
+            return;
+        }
+        location.segment.live--;
+        location.segment.liveBytes -= HEADER_SIZE + location.length;
+        writableSegment(HEADER_SIZE).write(TYPE_ACK, id, new byte[0], crc);
+        releaseHead();
+    }
+
+    /**
+     * @return copies of all messages which were appended but not acknowledged yet, oldest first
+     */
+    public synchronized List<Entry> pending() {
+        List<Entry> entries = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, Location> entry : pending.entrySet()) {
+            entries.add(new Entry(entry.getKey(), entry.getValue().read()));
+        }
+        return entries;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return how many pending messages were discarded because the journal reached its size cap
+     */
+    public synchronized long evictedCount() {
+        return evicted;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        pending.clear();
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, (a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+            for (File file : files) {
+                Segment segment = Segment.map(file, sequenceOf(file), (int) file.length());
+                segments.addLast(segment);
+                scan(segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(newSegment(0));
+        }
+        releaseHead();
+        if (!pending.isEmpty()) {
+            LOG.info(format("Outbox in {0} has {1} undelivered messages", directory, pending.size()));
+        }
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_SIZE - 8 || position + 8 + length > buffer.capacity()) {
+                break;
+            }
+            byte type = buffer.get(position + 8);
+            long id = buffer.getLong(position + 9);
+            if (buffer.getInt(position + 4) != checksum(buffer, position + 8, length)) {
+                LOG.warn(format("Outbox segment {0} has a torn record at offset {1}, ignoring the rest of it", segment.file, position));
+                break;
+            }
+            if (type == TYPE_MESSAGE) {
+                Location previous = pending.put(id, new Location(segment, position, length - 9));
+                if (previous != null) {
+                    // copied forward by compaction before the old segment could be deleted
+                    previous.segment.live--;
+                    previous.segment.liveBytes -= HEADER_SIZE + previous.length;
+                }
+                segment.live++;
+                segment.liveBytes += 8 + length;
+            } else if (type == TYPE_ACK) {
+                Location acknowledged = pending.remove(id);
+                if (acknowledged != null) {
+                    acknowledged.segment.live--;
+                    acknowledged.segment.liveBytes -= HEADER_SIZE + acknowledged.length;
+                }
+            }
+            nextId = Math.max(nextId, id + 1);
+            position += 8 + length;
+        }
+        if (position + 4 <= buffer.capacity()) {
+            buffer.putInt(position, 0);
+        }
+        segment.writePosition = position;
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset);
+        body.limit(offset + length);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private Segment writableSegment(int recordSize) throws IOException {
+        Segment active = segments.peekLast();
+        if (active.remaining() >= recordSize) {
+            return active;
+        }
+        segments.addLast(newSegment(active.sequence + 1));
+        compact(recordSize);
+        return segments.peekLast();
+    }
+
+    private Segment newSegment(long sequence) throws IOException {
+        File file = new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        return Segment.map(file, sequence, segmentSize);
+    }
+
+    private void compact(int reserved) {
+        releaseHead();
+        Segment active = segments.peekLast();
+        while (segments.size() > 1) {
+            Segment head = segments.peekFirst();
+            if (head.liveBytes > segmentSize / 4 || head.liveBytes + reserved > active.remaining()) {
+                break;
+            }
+            for (Map.Entry<Long, Location> entry : pending.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment == head) {
+                    int offset = active.write(TYPE_MESSAGE, entry.getKey(), location.read(), crc);
+                    entry.setValue(new Location(active, offset, location.length));
+                    active.live++;
+                    active.liveBytes += HEADER_SIZE + location.length;
+                }
+            }
+            head.live = 0;
+            head.liveBytes = 0;
+            releaseHead();
+        }
+        while (segments.size() > maxSegments) {
+            evictHead();
+        }
+    }
+
+    private void releaseHead() {
+        while (segments.size() > 1 && segments.peekFirst().live == 0) {
+            delete(segments.pollFirst());
+        }
+    }
+
+    private void evictHead() {
+        Segment head = segments.pollFirst();
+        int dropped = 0;
+        for (Iterator<Location> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().segment == head) {
+                iterator.remove();
+                dropped++;
+            }
+        }
+        evicted += dropped;
+        LOG.warn(format("Outbox reached its cap of {0} segments, discarded {1} undelivered messages", maxSegments, dropped));
+        delete(head);
+    }
+
+    private void delete(Segment segment) {
+        if (!segment.file.delete()) {
+            LOG.warn(format("Could not delete outbox segment {0}", segment.file));
+        }
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static class Entry {
+        private final long id;
+        private final byte[] payload;
+
+        Entry(long id, byte[] payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        byte[] read() {
+            byte[] payload = new byte[length];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(payload);
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int live;
+        private long liveBytes;
+
+        private Segment(File file, long sequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        static Segment map(File file, long sequence, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                // the mapping stays valid after the channel is closed
+                return new Segment(file, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        int remaining() {
+            // keep room for the zero length that terminates the segment
+            return buffer.capacity() - writePosition - 4;
+        }
+
+        int write(byte type, long id, byte[] payload, CRC32 crc) {
+            int offset = writePosition;
+            int length = 1 + 8 + payload.length;
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset + 8);
+            record.put(type);
+            record.putLong(id);
+            record.put(payload);
+
+            crc.reset();
+            ByteBuffer body = buffer.duplicate();
+            body.position(offset + 8);
+            body.limit(offset + 8 + length);
+            crc.update(body);
+
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.putInt(offset + 8 + length, 0);
+            // publish the record only once it is complete
+            buffer.putInt(offset, length);
+            writePosition = offset + 8 + length;
+            return offset;
+        }
+    }
+}
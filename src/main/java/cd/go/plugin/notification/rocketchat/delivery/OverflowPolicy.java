@@ -0,0 +1,34 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+/**
+ * What the delivery queue does with a new notification when it is already full.
+ */
+public enum OverflowPolicy {
+    // reject the notification that was just submitted
+    DROP_NEWEST("drop_newest"),
+    // evict the longest waiting notification to make room for the new one
+    DROP_OLDEST("drop_oldest"),
+    // deliver on the submitting (GoCD server) thread, slowing the server down instead of losing messages
+    CALLER_RUNS("caller_runs");
+
+    private final String settingValue;
+
+    OverflowPolicy(String settingValue) {
+        this.settingValue = settingValue;
+    }
+
+    public String settingValue() {
+        return settingValue;
+    }
+
+    public static OverflowPolicy fromString(String settingValue) {
+        if (settingValue != null) {
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                if (settingValue.trim().equalsIgnoreCase(policy.settingValue)) {
+                    return policy;
+                }
+            }
+        }
+        return null;
+    }
+}
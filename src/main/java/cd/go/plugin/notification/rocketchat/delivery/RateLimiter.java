@@ -0,0 +1,147 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.base.Ticker;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps posts under Rocket.Chat's REST rate limit with one token bucket per API user and room.
+ * Throttled posts wait for a token instead of being dropped; the buckets follow the
+ * {@code X-RateLimit-Remaining} and {@code X-RateLimit-Reset} headers whenever the server sends them.
+ */
+public class RateLimiter {
+    private static final Logger LOG = Logger.getLoggerFor(RateLimiter.class);
+
+    public static final int DEFAULT_PERMITS_PER_MINUTE = 60;
+    public static final int DEFAULT_BURST = 10;
+    // used when a 429 response does not tell when the limit resets
+    private static final long DEFAULT_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private final int permitsPerMinute;
+    private final int burst;
+    private final Ticker ticker;
+    private final Sleeper sleeper;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // shared with the limiters built from this one, so the counts survive a settings change
+    private final AtomicLong throttled;
+    private final AtomicLong waitedNanos;
+    private final AtomicLong maxWaitNanos;
+
+    public RateLimiter(int permitsPerMinute, int burst) {
+        this(permitsPerMinute, burst, Ticker.systemTicker(), TimeUnit.NANOSECONDS::sleep);
+    }
+
+    RateLimiter(int permitsPerMinute, int burst, Ticker ticker, Sleeper sleeper) {
+        this(permitsPerMinute, burst, ticker, sleeper, new AtomicLong(), new AtomicLong(), new AtomicLong());
+    }
+
+    private RateLimiter(int permitsPerMinute, int burst, Ticker ticker, Sleeper sleeper,
+                        AtomicLong throttled, AtomicLong waitedNanos, AtomicLong maxWaitNanos) {
+        this.permitsPerMinute = permitsPerMinute;
+        this.burst = burst;
+        this.ticker = ticker;
+        this.sleeper = sleeper;
+        this.throttled = throttled;
+        this.waitedNanos = waitedNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * @return a limiter with new limits and fresh buckets, which keeps adding to the counts of this one
+     */
+    public RateLimiter withLimits(int permitsPerMinute, int burst) {
+        return new RateLimiter(permitsPerMinute, burst, ticker, sleeper, throttled, waitedNanos, maxWaitNanos);
+    }
+
+    /**
+     * Blocks until a post from {@code user} to {@code room} is allowed.
+     *
+     * @return nanoseconds spent waiting
+     */
+    public long acquire(String user, String room) throws InterruptedIOException {
+        long wait = bucket(user, room).reserve(ticker.read());
+        if(wait <= 0) {
+            return 0;
+        }
+        throttled.incrementAndGet();
+        waitedNanos.addAndGet(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        LOG.debug(format("Rate limit for {0} in {1} reached, delaying post by {2} ms", user, room, TimeUnit.NANOSECONDS.toMillis(wait)));
+        try {
+            sleeper.sleep(wait);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Rocket.Chat rate limit");
+        }
+        return wait;
+    }
+
+    /**
+     * Feeds the server's view of the limit back into the bucket.
+     *
+     * @param remaining      value of {@code X-RateLimit-Remaining}, or -1 when absent
+     * @param resetEpochMillis value of {@code X-RateLimit-Reset}, or -1 when absent
+     */
+    public void observe(String user, String room, long remaining, long resetEpochMillis) {
+        long resetIn = resetEpochMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(resetEpochMillis - System.currentTimeMillis()) : -1;
+        bucket(user, room).observe(remaining, resetIn, ticker.read());
+    }
+
+    /**
+     * The server refused a post with 429 Too Many Requests.
+     */
+    public void onRateLimited(String user, String room, long resetEpochMillis) {
+        if(resetEpochMillis > 0) {
+            observe(user, room, 0, resetEpochMillis);
+        }
+        else {
+            bucket(user, room).observe(0, DEFAULT_PENALTY_NANOS, ticker.read());
+        }
+    }
+
+    public int getPermitsPerMinute() {
+        return permitsPerMinute;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return posts which had to wait for a token
+     */
+    public long throttledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * @return time posts spent waiting for a token
+     */
+    public long waitedNanos() {
+        return waitedNanos.get();
+    }
+
+    /**
+     * @return the longest a post waited for a token
+     */
+    public long maxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    private TokenBucket bucket(String user, String room) {
+        return buckets.computeIfAbsent(user + '\n' + room, key -> new TokenBucket(burst, permitsPerMinute, ticker.read()));
+    }
+}
@@ -0,0 +1,154 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatApiException;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Retries transient Rocket.Chat failures (network errors, 5xx and 429 responses) with jittered exponential backoff.
+ * <p>
+ * Only network errors and 5xx responses count against the circuit breaker. A 429 is the rate limit of one API user,
+ * the server is fine, and it is retried once the {@link RateLimiter} lets the next post through rather than after a
+ * backoff of its own.
+ */
+public class RetryPolicy {
+    private static final Logger LOG = Logger.getLoggerFor(RetryPolicy.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public static final long MAX_BACKOFF_MILLIS = 30000;
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS);
+
+    public interface Call {
+        void run() throws IOException;
+    }
+
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final Sleeper sleeper;
+
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis) {
+        this(maxAttempts, initialBackoffMillis, Thread::sleep);
+    }
+
+    RetryPolicy(int maxAttempts, long initialBackoffMillis, Sleeper sleeper) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.sleeper = sleeper;
+    }
+
+    public static RetryPolicy fromPluginSettings(PluginSettings pluginSettings) {
+        return new RetryPolicy(pluginSettings.getRetryMaxAttempts(), pluginSettings.getRetryInitialBackoffMillis());
+    }
+
+    public void execute(CircuitBreaker breaker, Call call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquirePermission();
+            try {
+                call.run();
+                breaker.onSuccess();
+                return;
+            }
+            catch (IOException e) {
+                if(countsAsOutage(e)) {
+                    breaker.onFailure();
+                }
+                else {
+                    // Rocket.Chat answered, so it is up even though it refused this message
+                    breaker.onSuccess();
+                }
+                if(!isRetryable(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                if(!countsAsOutage(e)) {
+                    // rate limited, the limiter holds the next attempt until the limit resets
+                    LOG.warn(format("Attempt {0} of {1} to post to Rocket.Chat was rate limited, retrying", attempt, maxAttempts));
+                    continue;
+                }
+                long backoff = backoffMillis(attempt);
+                LOG.warn(format("Attempt {0} of {1} to post to Rocket.Chat failed: {2}, retrying in {3} ms", attempt, maxAttempts, e.getMessage(), backoff));
+                sleep(backoff);
+            }
+            catch (RuntimeException | Error e) {
+                // a bug rather than an outage, but the breaker has to hear of the call or a half-open probe never ends
+                breaker.onFailure();
+                throw e;
+            }
+        }
+    }
+
+    public static boolean isRetryable(IOException e) {
+        if(e instanceof RocketChatApiException && ((RocketChatApiException) e).isRateLimited()) {
+            return true;
+        }
+        return countsAsOutage(e);
+    }
+
+    /**
+     * @return whether the failure says the server is down rather than that it refused the post
+     */
+    public static boolean countsAsOutage(IOException e) {
+        if(e instanceof CircuitOpenException) {
+            return false;
+        }
+        if(e instanceof RocketChatApiException) {
+            return ((RocketChatApiException) e).isServerError();
+        }
+        // connect and read timeouts, resets and other network level errors
+        return true;
+    }
+
+    /**
+     * Equal jitter: half of the exponential delay is fixed, the other half random, so concurrent workers spread out
+     * but still back off.
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt - 1, 20));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            sleeper.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry a Rocket.Chat post");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null)
+            return false;
+        if (getClass() != o.getClass())
+            return false;
+        RetryPolicy other = (RetryPolicy) o;
+        return maxAttempts == other.maxAttempts
+                && initialBackoffMillis == other.initialBackoffMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxAttempts, initialBackoffMillis);
+    }
+}
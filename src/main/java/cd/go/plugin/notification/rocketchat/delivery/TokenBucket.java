@@ -0,0 +1,53 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+/**
+ * Token bucket which hands out reservations instead of blocking, so callers can sleep outside the lock.
+ * Tokens may go negative: each reservation beyond the burst queues behind the previous ones.
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long refilledAt;
+    private long blockedUntil;
+
+    TokenBucket(int burst, int permitsPerMinute, long now) {
+        this.capacity = burst;
+        this.tokensPerNano = permitsPerMinute / 60e9;
+        this.tokens = burst;
+        this.refilledAt = now;
+        this.blockedUntil = now;
+    }
+
+    /**
+     * Takes one token and returns how many nanoseconds the caller has to wait before using it.
+     */
+    synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+        long wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        return Math.max(wait, blockedUntil - now);
+    }
+
+    /**
+     * Aligns the bucket with what the server reported about its own limit.
+     */
+    synchronized void observe(long remaining, long resetInNanos, long now) {
+        refill(now);
+        if(remaining <= 0 && resetInNanos > 0) {
+            blockedUntil = Math.max(blockedUntil, now + resetInNanos);
+            tokens = Math.min(tokens, 0);
+        }
+        else if(remaining >= 0) {
+            tokens = Math.min(tokens, remaining);
+        }
+    }
+
+    private void refill(long now) {
+        if(now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
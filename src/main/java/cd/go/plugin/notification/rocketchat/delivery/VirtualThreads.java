@@ -0,0 +1,38 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of the running JVM, if it has them. The plugin is compiled for Java 8, so {@code Thread.ofVirtual()}
+ * is looked up once through reflection; the factory it returns is then called directly.
+ */
+final class VirtualThreads {
+    private static final ThreadFactory FACTORY = lookup();
+
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return a factory for virtual threads named {@code rocketchat-delivery-virtual-<n>}, null before Java 21
+     */
+    static ThreadFactory factory() {
+        return FACTORY;
+    }
+
+    private static ThreadFactory lookup() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "rocketchat-delivery-virtual-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            // no such method before Java 19, a preview feature which is not enabled on 19 and 20
+            return null;
+        }
+    }
+}
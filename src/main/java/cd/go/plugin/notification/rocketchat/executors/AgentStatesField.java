@@ -0,0 +1,32 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
+import org.apache.commons.lang3.StringUtils;
+
+public class AgentStatesField extends Field {
+    public AgentStatesField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+    }
+
+    @Override
+    public String doValidate(String input) {
+        if (StringUtils.isBlank(input)) {
+            return null;
+        }
+        for (String state : input.split(",")) {
+            if (StringUtils.isNotBlank(state) && !isKnown(state.trim())) {
+                return "Agent states must be from: " + String.join(", ", AgentStatusAggregator.KNOWN_STATES) + ".";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isKnown(String state) {
+        for (String known : AgentStatusAggregator.KNOWN_STATES) {
+            if (known.equalsIgnoreCase(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
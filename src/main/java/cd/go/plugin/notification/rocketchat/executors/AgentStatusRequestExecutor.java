@@ -17,40 +17,47 @@
 package cd.go.plugin.notification.rocketchat.executors;
 
 import cd.go.plugin.notification.rocketchat.PluginRequest;
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
 import cd.go.plugin.notification.rocketchat.requests.AgentStatusRequest;
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
-import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
 
 public class AgentStatusRequestExecutor implements RequestExecutor {
+    private static final Logger LOG = Logger.getLoggerFor(AgentStatusRequestExecutor.class);
+
     private final AgentStatusRequest request;
     private final PluginRequest pluginRequest;
+    private final AgentStatusAggregator aggregator;
 
-    public AgentStatusRequestExecutor(AgentStatusRequest request, PluginRequest pluginRequest) {
+    public AgentStatusRequestExecutor(AgentStatusRequest request, PluginRequest pluginRequest, AgentStatusAggregator aggregator) {
         this.request = request;
         this.pluginRequest = pluginRequest;
+        this.aggregator = aggregator;
     }
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
-        HashMap<String, Object> responseJson = new HashMap<>();
         try {
             sendNotification();
-            responseJson.put("status", "success");
+            return NotificationResponses.success();
         } catch (Exception e) {
-            responseJson.put("status", "failure");
-            responseJson.put("messages", Arrays.asList(e.getMessage()));
+            return NotificationResponses.failure(e);
         }
-        return new DefaultGoPluginApiResponse(200, AgentStatusRequest.GSON.toJson(responseJson));
     }
 
     protected void sendNotification() throws Exception {
-        // TODO: Implement this. The request.agent object has all the details about the state changed agent
-        // If you need access to settings like API keys, URLs, then call PluginRequest#getPluginSettings
-//        PluginSettings pluginSettings = pluginRequest.getPluginSettings();
-        throw new UnsupportedOperationException("not implemented");
+        PluginSettings settings = pluginRequest.getPluginSettings();
+        if(settings == null) {
+            LOG.warn("Rocket chat plugin is not configured");
+            return;
+        }
+        // only aggregated here, summaries are posted when the window closes
+        aggregator.configure(TimeUnit.SECONDS.toMillis(settings.getAgentStatusWindowSeconds()), settings.getAgentStatusStates());
+        aggregator.add(request.agent);
     }
 }
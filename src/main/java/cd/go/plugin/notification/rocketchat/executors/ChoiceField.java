@@ -0,0 +1,30 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Optional setting restricted to a fixed set of values, blank means "use the default value".
+ */
+public class ChoiceField extends Field {
+    private final List<String> choices;
+
+    public ChoiceField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder, String... choices) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+        this.choices = Arrays.asList(choices);
+    }
+
+    @Override
+    public String doValidate(String input) {
+        if (StringUtils.isBlank(input)) {
+            return null;
+        }
+        if (!choices.contains(input.trim().toLowerCase())) {
+            return this.displayName + " must be one of: " + String.join(", ", choices) + ".";
+        }
+        return null;
+    }
+
+}
@@ -17,6 +17,19 @@
 package cd.go.plugin.notification.rocketchat.executors;
 
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
+import cd.go.plugin.notification.rocketchat.console.ConsoleTails;
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
+import cd.go.plugin.notification.rocketchat.delivery.DeliverySettings;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryThreads;
+import cd.go.plugin.notification.rocketchat.delivery.MessageCoalescer;
+import cd.go.plugin.notification.rocketchat.delivery.OverflowPolicy;
+import cd.go.plugin.notification.rocketchat.delivery.RateLimiter;
+import cd.go.plugin.notification.rocketchat.delivery.RetryPolicy;
+import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatTransport;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
@@ -38,6 +51,65 @@ public class GetPluginConfigurationExecutor implements RequestExecutor {
     public static final Field API_KEY = new NonBlankField("api_key", "Rocketchat API password", null, true, false, "3");
     public static final Field ROOM = new NonBlankField("room", "Rocketchat room", null, true, false, "4");
 
+    public static final Field DELIVERY_QUEUE_CAPACITY = new PositiveIntegerField("delivery_queue_capacity", "Delivery queue capacity",
+            String.valueOf(DeliverySettings.DEFAULT_QUEUE_CAPACITY), false, false, "5");
+    public static final Field DELIVERY_WORKERS = new PositiveIntegerField("delivery_workers", "Delivery workers",
+            String.valueOf(DeliverySettings.DEFAULT_WORKERS), false, false, "6");
+    public static final Field DELIVERY_OVERFLOW_POLICY = new ChoiceField("delivery_overflow_policy", "Delivery queue overflow policy",
+            DeliverySettings.DEFAULT_OVERFLOW_POLICY.settingValue(), false, false, "7",
+            OverflowPolicy.DROP_NEWEST.settingValue(), OverflowPolicy.DROP_OLDEST.settingValue(), OverflowPolicy.CALLER_RUNS.settingValue());
+
+    public static final Field RETRY_MAX_ATTEMPTS = new PositiveIntegerField("retry_max_attempts", "Retry attempts per message",
+            String.valueOf(RetryPolicy.DEFAULT_MAX_ATTEMPTS), false, false, "8");
+    public static final Field RETRY_INITIAL_BACKOFF = new PositiveIntegerField("retry_initial_backoff_ms", "Initial retry backoff (ms)",
+            String.valueOf(RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS), false, false, "9");
+    public static final Field CIRCUIT_BREAKER_FAILURE_THRESHOLD = new PositiveIntegerField("circuit_breaker_failure_threshold", "Circuit breaker failure threshold",
+            String.valueOf(RocketChatService.DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD), false, false, "10");
+    public static final Field CIRCUIT_BREAKER_OPEN_SECONDS = new PositiveIntegerField("circuit_breaker_open_seconds", "Circuit breaker open duration (seconds)",
+            String.valueOf(RocketChatService.DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS), false, false, "11");
+
+    public static final Field RATE_LIMIT_PER_MINUTE = new PositiveIntegerField("rate_limit_per_minute", "Posts per minute per room",
+            String.valueOf(RateLimiter.DEFAULT_PERMITS_PER_MINUTE), false, false, "12");
+    public static final Field RATE_LIMIT_BURST = new PositiveIntegerField("rate_limit_burst", "Post burst per room",
+            String.valueOf(RateLimiter.DEFAULT_BURST), false, false, "13");
+
+    public static final Field COALESCE_WINDOW_SECONDS = new NonNegativeIntegerField("coalesce_window_seconds", "Digest window per room (seconds, 0 to disable)",
+            String.valueOf(MessageCoalescer.DEFAULT_WINDOW_SECONDS), false, false, "14");
+    public static final Field MESSAGE_MAX_SIZE = new PositiveIntegerField("message_max_size", "Maximum message size",
+            String.valueOf(MessageCoalescer.DEFAULT_MAX_MESSAGE_SIZE), false, false, "15");
+
+    public static final Field CONNECT_TIMEOUT = new PositiveIntegerField("connect_timeout_ms", "Rocket.Chat connect timeout (ms)",
+            String.valueOf(RocketChatTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS), false, false, "16");
+    public static final Field READ_TIMEOUT = new PositiveIntegerField("read_timeout_ms", "Rocket.Chat read timeout (ms)",
+            String.valueOf(RocketChatTransport.DEFAULT_READ_TIMEOUT_MILLIS), false, false, "17");
+
+    public static final Field ROUTING_RULES = new RoutingRulesField("routing_rules", "Routing rules",
+            null, false, false, "18");
+
+    public static final Field AGENT_STATUS_STATES = new AgentStatesField("agent_status_states", "Agent states to report (comma separated, blank to disable)",
+            null, false, false, "19");
+    public static final Field AGENT_STATUS_WINDOW = new PositiveIntegerField("agent_status_window_seconds", "Agent status summary window (seconds)",
+            String.valueOf(AgentStatusAggregator.DEFAULT_WINDOW_SECONDS), false, false, "20");
+
+    public static final Field DELIVERY_THREADS = new ChoiceField("delivery_threads", "Delivery threads",
+            DeliverySettings.DEFAULT_THREADS.settingValue(), false, false, "21",
+            DeliveryThreads.PLATFORM.settingValue(), DeliveryThreads.VIRTUAL.settingValue());
+
+    public static final Field MESSAGE_TEMPLATE_FAILED = new MessageTemplateField("message_template_failed", "Message when a stage breaks",
+            MessageBuilderService.DEFAULT_FAILED_TEMPLATE, false, false, "22");
+    public static final Field MESSAGE_TEMPLATE_FIXED = new MessageTemplateField("message_template_fixed", "Message when a stage is fixed",
+            MessageBuilderService.DEFAULT_FIXED_TEMPLATE, false, false, "23");
+    public static final Field FAILED_JOBS_MAX_BYTES = new PositiveIntegerField("failed_jobs_max_bytes", "Failed jobs list size (bytes)",
+            String.valueOf(MessageBuilderService.DEFAULT_FAILED_JOBS_MAX_BYTES), false, false, "24");
+
+    public static final Field CONSOLE_TAIL_BYTES = new NonNegativeIntegerField("console_tail_bytes", "Console log tail per failed job (bytes, 0 to disable)",
+            String.valueOf(ConsoleTails.DEFAULT_TAIL_BYTES), false, false, "25", ConsoleTails.MAX_TAIL_BYTES);
+    public static final Field CONSOLE_TAIL_DEADLINE = new PositiveIntegerField("console_tail_deadline_ms", "Console log fetch deadline per notification (ms)",
+            String.valueOf(ConsoleTails.DEFAULT_DEADLINE_MILLIS), false, false, "26");
+    // secure, so GoCD keeps the token encrypted
+    public static final Field GO_API_TOKEN = new Field("go_api_token", "GoCD access token for console logs",
+            null, false, true, "27");
+
     public static final Map<String, Field> FIELDS = new LinkedHashMap<>();
 
     static {
@@ -48,9 +120,45 @@ public class GetPluginConfigurationExecutor implements RequestExecutor {
         FIELDS.put(API_KEY.key(), API_KEY);
 
         FIELDS.put(ROOM.key(), ROOM);
+
+        FIELDS.put(DELIVERY_QUEUE_CAPACITY.key(), DELIVERY_QUEUE_CAPACITY);
+        FIELDS.put(DELIVERY_WORKERS.key(), DELIVERY_WORKERS);
+        FIELDS.put(DELIVERY_OVERFLOW_POLICY.key(), DELIVERY_OVERFLOW_POLICY);
+
+        FIELDS.put(RETRY_MAX_ATTEMPTS.key(), RETRY_MAX_ATTEMPTS);
+        FIELDS.put(RETRY_INITIAL_BACKOFF.key(), RETRY_INITIAL_BACKOFF);
+        FIELDS.put(CIRCUIT_BREAKER_FAILURE_THRESHOLD.key(), CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+        FIELDS.put(CIRCUIT_BREAKER_OPEN_SECONDS.key(), CIRCUIT_BREAKER_OPEN_SECONDS);
+
+        FIELDS.put(RATE_LIMIT_PER_MINUTE.key(), RATE_LIMIT_PER_MINUTE);
+        FIELDS.put(RATE_LIMIT_BURST.key(), RATE_LIMIT_BURST);
+
+        FIELDS.put(COALESCE_WINDOW_SECONDS.key(), COALESCE_WINDOW_SECONDS);
+        FIELDS.put(MESSAGE_MAX_SIZE.key(), MESSAGE_MAX_SIZE);
+
+        FIELDS.put(CONNECT_TIMEOUT.key(), CONNECT_TIMEOUT);
+        FIELDS.put(READ_TIMEOUT.key(), READ_TIMEOUT);
+
+        FIELDS.put(ROUTING_RULES.key(), ROUTING_RULES);
+
+        FIELDS.put(AGENT_STATUS_STATES.key(), AGENT_STATUS_STATES);
+        FIELDS.put(AGENT_STATUS_WINDOW.key(), AGENT_STATUS_WINDOW);
+
+        FIELDS.put(DELIVERY_THREADS.key(), DELIVERY_THREADS);
+
+        FIELDS.put(MESSAGE_TEMPLATE_FAILED.key(), MESSAGE_TEMPLATE_FAILED);
+        FIELDS.put(MESSAGE_TEMPLATE_FIXED.key(), MESSAGE_TEMPLATE_FIXED);
+        FIELDS.put(FAILED_JOBS_MAX_BYTES.key(), FAILED_JOBS_MAX_BYTES);
+
+        FIELDS.put(CONSOLE_TAIL_BYTES.key(), CONSOLE_TAIL_BYTES);
+        FIELDS.put(CONSOLE_TAIL_DEADLINE.key(), CONSOLE_TAIL_DEADLINE);
+        FIELDS.put(GO_API_TOKEN.key(), GO_API_TOKEN);
     }
 
+    // FIELDS is complete once the class is initialized
+    private static final Supplier<String> BODY = Suppliers.memoize(() -> GSON.toJson(FIELDS));
+
     public GoPluginApiResponse execute() {
-        return new DefaultGoPluginApiResponse(200, GSON.toJson(FIELDS));
+        return new DefaultGoPluginApiResponse(200, BODY.get());
     }
 }
@@ -18,6 +18,8 @@ package cd.go.plugin.notification.rocketchat.executors;
 
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
 import cd.go.plugin.notification.rocketchat.utils.Util;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
@@ -26,13 +28,16 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 public class GetViewRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new Gson();
 
-    @Override
-    public GoPluginApiResponse execute() throws Exception {
+    // the template is part of the plugin jar, read and serialize it once
+    private static final Supplier<String> BODY = Suppliers.memoize(() -> {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("template", Util.readResource("/plugin-settings.template.html"));
-        DefaultGoPluginApiResponse defaultGoPluginApiResponse = new DefaultGoPluginApiResponse(200);
-        defaultGoPluginApiResponse.setResponseBody(GSON.toJson(jsonObject));
-        return defaultGoPluginApiResponse;
+        return GSON.toJson(jsonObject);
+    });
+
+    @Override
+    public GoPluginApiResponse execute() throws Exception {
+        return new DefaultGoPluginApiResponse(200, BODY.get());
     }
 
 }
@@ -0,0 +1,25 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import cd.go.plugin.notification.rocketchat.rocket.MessageTemplate;
+import org.apache.commons.lang3.StringUtils;
+
+public class MessageTemplateField extends Field {
+    public MessageTemplateField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+    }
+
+    @Override
+    public String doValidate(String input) {
+        if(StringUtils.isBlank(input)) {
+            // the default template is used
+            return null;
+        }
+        try {
+            MessageTemplate.compile(input);
+            return null;
+        }
+        catch (IllegalArgumentException e) {
+            return this.displayName + " is invalid: " + e.getMessage();
+        }
+    }
+}
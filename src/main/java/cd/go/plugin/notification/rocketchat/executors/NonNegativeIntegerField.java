@@ -0,0 +1,27 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+/**
+ * Optional numeric setting where zero switches the feature off.
+ */
+public class NonNegativeIntegerField extends PositiveIntegerField {
+    private final int maximum;
+
+    public NonNegativeIntegerField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
+        this(key, displayName, defaultValue, required, secure, displayOrder, Integer.MAX_VALUE);
+    }
+
+    public NonNegativeIntegerField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder, int maximum) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+        this.maximum = maximum;
+    }
+
+    @Override
+    protected int minimum() {
+        return 0;
+    }
+
+    @Override
+    protected int maximum() {
+        return maximum;
+    }
+}
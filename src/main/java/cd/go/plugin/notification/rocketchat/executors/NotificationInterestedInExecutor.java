@@ -24,19 +24,40 @@ import com.google.gson.JsonObject;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.util.function.BooleanSupplier;
+
+/**
+ * Agent status notifications are only asked for when agent states to report are configured. The server asks once,
+ * when the plugin is loaded, so enabling them takes effect after a restart.
+ */
 public class NotificationInterestedInExecutor implements RequestExecutor {
     private static final Gson GSON = new Gson();
+    private static final String STAGE_STATUS = body(false);
+    private static final String STAGE_AND_AGENT_STATUS = body(true);
+
+    private final BooleanSupplier agentStatusEnabled;
+
+    public NotificationInterestedInExecutor() {
+        this(() -> false);
+    }
+
+    public NotificationInterestedInExecutor(BooleanSupplier agentStatusEnabled) {
+        this.agentStatusEnabled = agentStatusEnabled;
+    }
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
+        return new DefaultGoPluginApiResponse(200, agentStatusEnabled.getAsBoolean() ? STAGE_AND_AGENT_STATUS : STAGE_STATUS);
+    }
+
+    private static String body(boolean agentStatus) {
         JsonObject jsonObject = new JsonObject();
         JsonArray notifications = new JsonArray();
         notifications.add(Request.REQUEST_STAGE_STATUS.requestName());
-        // not used notifications.add(Request.REQUEST_AGENT_STATUS.requestName());
+        if(agentStatus) {
+            notifications.add(Request.REQUEST_AGENT_STATUS.requestName());
+        }
         jsonObject.add("notifications", notifications);
-
-        DefaultGoPluginApiResponse defaultGoPluginApiResponse = new DefaultGoPluginApiResponse(200);
-        defaultGoPluginApiResponse.setResponseBody(GSON.toJson(jsonObject));
-        return defaultGoPluginApiResponse;
+        return GSON.toJson(jsonObject);
     }
 }
@@ -0,0 +1,31 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+
+/**
+ * Replies to notification requests. The success body is the same for every notification, so it is serialized once.
+ */
+public final class NotificationResponses {
+    private static final Gson GSON = new Gson();
+    private static final String SUCCESS = "{\"status\":\"success\"}";
+
+    private NotificationResponses() {
+    }
+
+    public static GoPluginApiResponse success() {
+        return new DefaultGoPluginApiResponse(200, SUCCESS);
+    }
+
+    static GoPluginApiResponse failure(Exception e) {
+        JsonObject json = new JsonObject();
+        json.addProperty("status", "failure");
+        JsonArray messages = new JsonArray();
+        messages.add(e.getMessage());
+        json.add("messages", messages);
+        return new DefaultGoPluginApiResponse(200, GSON.toJson(json));
+    }
+}
@@ -0,0 +1,36 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Optional numeric setting, blank means "use the default value".
+ */
+public class PositiveIntegerField extends Field {
+    public PositiveIntegerField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+    }
+
+    @Override
+    public String doValidate(String input) {
+        if (StringUtils.isBlank(input)) {
+            return null;
+        }
+        if (!NumberUtils.isDigits(input.trim()) || NumberUtils.toInt(input.trim(), -1) < minimum()) {
+            return this.displayName + (minimum() > 0 ? " must be a positive integer." : " must be zero or a positive integer.");
+        }
+        if (NumberUtils.toInt(input.trim()) > maximum()) {
+            return this.displayName + " must not be larger than " + maximum() + ".";
+        }
+        return null;
+    }
+
+    protected int minimum() {
+        return 1;
+    }
+
+    protected int maximum() {
+        return Integer.MAX_VALUE;
+    }
+
+}
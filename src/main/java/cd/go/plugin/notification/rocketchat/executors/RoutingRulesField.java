@@ -0,0 +1,20 @@
+package cd.go.plugin.notification.rocketchat.executors;
+
+import cd.go.plugin.notification.rocketchat.routing.RoutingRule;
+
+public class RoutingRulesField extends Field {
+    public RoutingRulesField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
+        super(key, displayName, defaultValue, required, secure, displayOrder);
+    }
+
+    @Override
+    public String doValidate(String input) {
+        try {
+            RoutingRule.parseAll(input);
+            return null;
+        }
+        catch (IllegalArgumentException e) {
+            return this.displayName + " are invalid. " + e.getMessage();
+        }
+    }
+}
@@ -17,54 +17,91 @@
 package cd.go.plugin.notification.rocketchat.executors;
 
 import cd.go.plugin.notification.rocketchat.PluginRequest;
+import cd.go.plugin.notification.rocketchat.PluginSettings;
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryQueue;
+import cd.go.plugin.notification.rocketchat.delivery.DeliverySettings;
+import cd.go.plugin.notification.rocketchat.delivery.MessageDelivery;
+import cd.go.plugin.notification.rocketchat.metrics.PluginMetrics;
 import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
 import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
-import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.state.NotificationDeduplicator;
+import cd.go.plugin.notification.rocketchat.state.StageResultStore;
 import com.github.baloise.rocketchatrestclient.model.Message;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.Arrays;
-import java.util.HashMap;
 
 import static java.text.MessageFormat.format;
 
 public class StageStatusRequestExecutor implements RequestExecutor {
-    private static final Gson GSON = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+    private static final Logger LOG = Logger.getLoggerFor(StageStatusRequestExecutor.class);
 
     private final StageStatusRequest request;
-    private RocketChatService chat;
+    private MessageDelivery delivery;
     private MessageBuilderService messageBuilderService;
     private final PluginRequest pluginRequest;
+    private final DeliveryQueue deliveryQueue;
+    private final NotificationDeduplicator deduplicator;
+    private final PluginMetrics metrics;
 
-    public StageStatusRequestExecutor(StageStatusRequest request, RocketChatService chat, MessageBuilderService messageBuilderService, PluginRequest pluginRequest) {
+    public StageStatusRequestExecutor(StageStatusRequest request, MessageDelivery delivery, MessageBuilderService messageBuilderService, PluginRequest pluginRequest, DeliveryQueue deliveryQueue, NotificationDeduplicator deduplicator, PluginMetrics metrics) {
         this.request = request;
-        this.chat = chat;
+        this.delivery = delivery;
         this.messageBuilderService = messageBuilderService;
         this.pluginRequest = pluginRequest;
+        this.deliveryQueue = deliveryQueue;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics;
     }
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
-        HashMap<String, Object> responseJson = new HashMap<>();
         try {
             sendNotification();
-            responseJson.put("status", "success");
+            return NotificationResponses.success();
         } catch (Exception e) {
-            responseJson.put("status", "failure");
-            responseJson.put("messages", Arrays.asList(e.getMessage()));
+            return NotificationResponses.failure(e);
         }
-        return new DefaultGoPluginApiResponse(200, GSON.toJson(responseJson));
     }
 
     protected void sendNotification() throws Exception {
-        Message msg = messageBuilderService.onStageStatusChanged(pluginRequest, request.pipeline);
-        if(msg != null) {
-            chat.postMessage(msg);
+        metrics.onStageState(request.pipeline.stage.state);
+        if(!deduplicator.firstSeen(request.pipeline)) {
+            LOG.debug(format("Skipping duplicate notification for stage {0} in state {1}", messageBuilderService.stageRelativeUri(request.pipeline), request.pipeline.stage.state));
+            return;
+        }
+        // record the result before enqueueing, a notification for the same stage may be filtered on it before this one
+        // is delivered, see RocketChatPlugin
+        StageResultStore.Transition transition = messageBuilderService.record(request.pipeline);
+        // only enqueue here, this runs on a GoCD server thread
+        deliveryQueue.submit(() -> deliver(transition));
+    }
+
+    protected void deliver(StageResultStore.Transition transition) {
+        try {
+            // one settings snapshot for the whole notification
+            long settingsStart = System.nanoTime();
+            PluginSettings settings = pluginRequest.getPluginSettings();
+            metrics.settingsFetch().recordSince(settingsStart);
+            if(settings == null) {
+                LOG.warn("Rocket chat plugin is not configured");
+                metrics.onDeliveryFailed();
+                return;
+            }
+            deliveryQueue.configure(DeliverySettings.fromPluginSettings(settings));
+            delivery.configure(settings);
+            long renderStart = System.nanoTime();
+            Message msg = messageBuilderService.onStageStatusChanged(settings, request.pipeline, transition);
+            metrics.render().recordSince(renderStart);
+            if(msg != null) {
+                delivery.deliver(request.pipeline.group, request.pipeline.name, request.pipeline.stage.name, msg,
+                        transition == StageResultStore.Transition.BROKE);
+            }
+        }
+        catch (Exception e) {
+            metrics.onDeliveryFailed();
+            LOG.error(format("Failed to deliver notification for stage {0}", messageBuilderService.stageRelativeUri(request.pipeline)), e);
         }
     }
 }
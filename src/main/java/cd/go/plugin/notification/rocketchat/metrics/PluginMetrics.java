@@ -0,0 +1,198 @@
+package cd.go.plugin.notification.rocketchat.metrics;
+
+import cd.go.plugin.notification.rocketchat.Request;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Counters, latency histograms and gauges of the plugin, readable over JMX once {@link #register()} was called.
+ */
+public class PluginMetrics implements PluginMetricsMXBean {
+    private static final Logger LOG = Logger.getLoggerFor(PluginMetrics.class);
+
+    public static final String OBJECT_NAME = "cd.go.plugin.notification.rocketchat:type=Metrics";
+    // stage states come from the server, do not let unexpected values grow the map without bound
+    private static final int MAX_STAGE_STATES = 32;
+    private static final String OTHER_STAGE_STATE = "other";
+
+    private final Map<Request, LongAdder> requests = new EnumMap<>(Request.class);
+    private final LongAdder unknownRequests = new LongAdder();
+    private final LongAdder requestFailures = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> stageStates = new ConcurrentHashMap<>();
+    private final LongAdder postSuccesses = new LongAdder();
+    private final LongAdder postFailures = new LongAdder();
+    private final LongAdder deliveryFailures = new LongAdder();
+
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram settingsFetchLatency = new LatencyHistogram();
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+    private final LatencyHistogram postLatency = new LatencyHistogram();
+
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile Supplier<String> circuitState = () -> null;
+
+    public PluginMetrics() {
+        for (Request request : Request.values()) {
+            requests.put(request, new LongAdder());
+        }
+    }
+
+    /**
+     * Exports these metrics as {@value #OBJECT_NAME}, replacing the metrics of a previously loaded plugin instance.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        }
+        catch (Exception e) {
+            LOG.warn(format("Could not register plugin metrics as {0}", OBJECT_NAME), e);
+        }
+    }
+
+    /**
+     * @param request null for request names the plugin does not know
+     */
+    public void onRequest(Request request) {
+        (request == null ? unknownRequests : requests.get(request)).increment();
+    }
+
+    public void onRequestFailed() {
+        requestFailures.increment();
+    }
+
+    public void onStageState(String state) {
+        String key = state == null ? OTHER_STAGE_STATE : state;
+        LongAdder counter = stageStates.get(key);
+        if(counter == null) {
+            if(stageStates.size() >= MAX_STAGE_STATES) {
+                key = OTHER_STAGE_STATE;
+            }
+            counter = stageStates.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public void onPost(boolean success, long startNanos) {
+        postLatency.recordSince(startNanos);
+        (success ? postSuccesses : postFailures).increment();
+    }
+
+    public void onDeliveryFailed() {
+        deliveryFailures.increment();
+    }
+
+    public LatencyHistogram parse() {
+        return parseLatency;
+    }
+
+    public LatencyHistogram settingsFetch() {
+        return settingsFetchLatency;
+    }
+
+    public LatencyHistogram render() {
+        return renderLatency;
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void circuitState(Supplier<String> state) {
+        this.circuitState = state;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<Request, LongAdder> entry : requests.entrySet()) {
+            counts.put(entry.getKey().requestName(), entry.getValue().sum());
+        }
+        counts.put("unknown", unknownRequests.sum());
+        return counts;
+    }
+
+    @Override
+    public long getRequestFailures() {
+        return requestFailures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageStateCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        stageStates.forEach((state, counter) -> counts.put(state, counter.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getPostSuccesses() {
+        return postSuccesses.sum();
+    }
+
+    @Override
+    public long getPostFailures() {
+        return postFailures.sum();
+    }
+
+    @Override
+    public long getDeliveryFailures() {
+        return deliveryFailures.sum();
+    }
+
+    @Override
+    public LatencySnapshot getParseLatency() {
+        return parseLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSettingsFetchLatency() {
+        return settingsFetchLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRenderLatency() {
+        return renderLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getPostLatency() {
+        return postLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> {
+            try {
+                values.put(name, gauge.getAsLong());
+            }
+            catch (RuntimeException e) {
+                // a gauge must not break reading the others
+                LOG.debug(format("Gauge {0} failed", name), e);
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public String getCircuitState() {
+        return circuitState.get();
+    }
+}
@@ -0,0 +1,56 @@
+package cd.go.plugin.notification.rocketchat.metrics;
+
+import java.util.Map;
+
+/**
+ * What the plugin exports over JMX, as {@value PluginMetrics#OBJECT_NAME}.
+ */
+public interface PluginMetricsMXBean {
+    /**
+     * @return requests received from the GoCD server, by request name
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * @return requests which the plugin failed to handle
+     */
+    long getRequestFailures();
+
+    /**
+     * @return stage notifications received, by stage state
+     */
+    Map<String, Long> getStageStateCounts();
+
+    long getPostSuccesses();
+
+    /**
+     * @return posts which failed after all retries
+     */
+    long getPostFailures();
+
+    /**
+     * @return notifications dropped because settings could not be read or the message could not be rendered or posted
+     */
+    long getDeliveryFailures();
+
+    LatencySnapshot getParseLatency();
+
+    LatencySnapshot getSettingsFetchLatency();
+
+    LatencySnapshot getRenderLatency();
+
+    /**
+     * @return time spent posting a message, including rate limiting and retries
+     */
+    LatencySnapshot getPostLatency();
+
+    /**
+     * @return current values of the registered gauges, such as the delivery queue depth
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return state of the circuit breaker of the configured Rocket.Chat server
+     */
+    String getCircuitState();
+}
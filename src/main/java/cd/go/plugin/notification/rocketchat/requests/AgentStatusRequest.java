@@ -18,8 +18,8 @@ package cd.go.plugin.notification.rocketchat.requests;
 
 import cd.go.plugin.notification.rocketchat.PluginRequest;
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
 import cd.go.plugin.notification.rocketchat.executors.AgentStatusRequestExecutor;
-import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
 import cd.go.plugin.notification.rocketchat.utils.DefaultDateTypeAdapter;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
@@ -29,7 +29,7 @@ import com.google.gson.annotations.SerializedName;
 import java.util.Date;
 
 public class AgentStatusRequest {
-    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+    private static final String DATE_PATTERN = DefaultDateTypeAdapter.GOCD_PATTERN;
 
     public static final Gson GSON = new GsonBuilder()
             .registerTypeAdapter(Date.class, new DefaultDateTypeAdapter(DATE_PATTERN))
@@ -42,8 +42,8 @@ public class AgentStatusRequest {
         return GSON.fromJson(json, AgentStatusRequest.class);
     }
 
-    public RequestExecutor executor(RocketChatService chatService, PluginRequest pluginRequest) {
-        return new AgentStatusRequestExecutor(this, pluginRequest);
+    public RequestExecutor executor(PluginRequest pluginRequest, AgentStatusAggregator aggregator) {
+        return new AgentStatusRequestExecutor(this, pluginRequest, aggregator);
     }
 
     public static class Agent {
@@ -76,5 +76,36 @@ public class AgentStatusRequest {
 
         @SerializedName("agent_state")
         private String agentState;
+
+        public Agent() {
+        }
+
+        public Agent(String uuid, String hostName, boolean isElastic, String configState, String agentState) {
+            this.uuid = uuid;
+            this.hostName = hostName;
+            this.isElastic = isElastic;
+            this.configState = configState;
+            this.agentState = agentState;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getHostName() {
+            return hostName;
+        }
+
+        public boolean isElastic() {
+            return isElastic;
+        }
+
+        public String getConfigState() {
+            return configState;
+        }
+
+        public String getAgentState() {
+            return agentState;
+        }
     }
 }
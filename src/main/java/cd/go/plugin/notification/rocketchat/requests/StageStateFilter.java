@@ -0,0 +1,192 @@
+package cd.go.plugin.notification.rocketchat.requests;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+
+/**
+ * Drops stage notifications in states nothing is posted for, before the request is bound or settings are looked up.
+ * <p>
+ * {@link #scan} reads the raw request only up to the names and state of the stage; everything before them, such as the
+ * build cause, is skipped token by token and nothing after them is read, unless the pipeline name comes after the stage.
+ * When the state cannot be found the notification is let through, so the full parser reports what is wrong with it, and
+ * so is a notification without the names a condition needs.
+ */
+public class StageStateFilter {
+    private volatile Set<String> states;
+    private volatile Map<String, BiPredicate<String, String>> conditions = Collections.emptyMap();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public StageStateFilter(Collection<String> states) {
+        configure(states);
+    }
+
+    public void configure(Collection<String> states) {
+        Set<String> lowerCase = new HashSet<>();
+        for (String state : states) {
+            lowerCase.add(state.toLowerCase(Locale.ROOT));
+        }
+        this.states = lowerCase;
+    }
+
+    /**
+     * Accepts an accepted state only for stages the condition holds for.
+     *
+     * @param condition tested with the pipeline and stage name
+     */
+    public void onlyWhen(String state, BiPredicate<String, String> condition) {
+        Map<String, BiPredicate<String, String>> conditions = new HashMap<>(this.conditions);
+        conditions.put(state.toLowerCase(Locale.ROOT), condition);
+        this.conditions = conditions;
+    }
+
+    /**
+     * @param state as returned by {@link #stageState}
+     * @return false when the notification can be answered right away
+     */
+    public boolean accepts(String state) {
+        return accepts(new Header(null, null, state));
+    }
+
+    /**
+     * @return false when the notification can be answered right away
+     */
+    public boolean accepts(Header header) {
+        if(header.state == null) {
+            return true;
+        }
+        String state = header.state.toLowerCase(Locale.ROOT);
+        BiPredicate<String, String> condition = conditions.get(state);
+        if(states.contains(state) && (condition == null || header.pipeline == null || header.stage == null
+                || condition.test(header.pipeline, header.stage))) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the stage state, the stage result when there is no state, or null when the request does not have either
+     * or is not valid JSON
+     */
+    public static String stageState(String json) {
+        return scan(json).state;
+    }
+
+    /**
+     * @return names and state of the stage, fields which cannot be found are null
+     */
+    public static Header scan(String json) {
+        if(json == null) {
+            return Header.NONE;
+        }
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            if(!enter(reader, "pipeline")) {
+                return Header.NONE;
+            }
+            String pipeline = null;
+            Header stage = null;
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if("name".equals(name) && reader.peek() == JsonToken.STRING) {
+                    pipeline = reader.nextString();
+                    if(stage != null) {
+                        return new Header(pipeline, stage.stage, stage.state);
+                    }
+                }
+                else if(stage == null && "stage".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    stage = stage(reader, pipeline);
+                    if(pipeline != null) {
+                        return stage;
+                    }
+                    // object members come in any order, read on for the pipeline name
+                    while (reader.hasNext()) {
+                        reader.nextName();
+                        reader.skipValue();
+                    }
+                    reader.endObject();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            return stage == null ? Header.NONE : stage;
+        }
+        catch (IOException | IllegalStateException e) {
+            return Header.NONE;
+        }
+    }
+
+    // positions the reader inside the object value of the named field
+    private static boolean enter(JsonReader reader, String name) throws IOException {
+        if(reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return false;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if(name.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                return true;
+            }
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    private static Header stage(JsonReader reader, String pipeline) throws IOException {
+        reader.beginObject();
+        String stage = null;
+        String state = null;
+        String result = null;
+        while (reader.hasNext() && (stage == null || state == null)) {
+            String name = reader.nextName();
+            if(reader.peek() != JsonToken.STRING) {
+                reader.skipValue();
+            }
+            else if("name".equals(name)) {
+                stage = reader.nextString();
+            }
+            else if("state".equals(name)) {
+                state = reader.nextString();
+            }
+            else if("result".equals(name)) {
+                result = reader.nextString();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        return new Header(pipeline, stage, state != null ? state : result);
+    }
+
+    public static final class Header {
+        static final Header NONE = new Header(null, null, null);
+
+        public final String pipeline;
+        public final String stage;
+        public final String state;
+
+        public Header(String pipeline, String stage, String state) {
+            this.pipeline = pipeline;
+            this.stage = stage;
+            this.state = state;
+        }
+    }
+}
@@ -19,8 +19,11 @@ package cd.go.plugin.notification.rocketchat.requests;
 import cd.go.plugin.notification.rocketchat.executors.StageStatusRequestExecutor;
 import cd.go.plugin.notification.rocketchat.PluginRequest;
 import cd.go.plugin.notification.rocketchat.RequestExecutor;
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryQueue;
+import cd.go.plugin.notification.rocketchat.delivery.MessageDelivery;
+import cd.go.plugin.notification.rocketchat.metrics.PluginMetrics;
 import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
-import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import cd.go.plugin.notification.rocketchat.state.NotificationDeduplicator;
 import cd.go.plugin.notification.rocketchat.utils.DefaultDateTypeAdapter;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
@@ -32,21 +35,24 @@ import java.util.List;
 import java.util.Map;
 
 public class StageStatusRequest {
-    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+    private static final String DATE_PATTERN = DefaultDateTypeAdapter.GOCD_PATTERN;
+    private static final DefaultDateTypeAdapter DATE_ADAPTER = new DefaultDateTypeAdapter(DATE_PATTERN);
+    private static final StageStatusRequestParser PARSER = new StageStatusRequestParser(DATE_ADAPTER);
 
+    // binds the whole payload, including the build cause which notifications do not use
     public static final Gson GSON = new GsonBuilder()
-            .registerTypeAdapter(Date.class, new DefaultDateTypeAdapter(DATE_PATTERN))
+            .registerTypeAdapter(Date.class, DATE_ADAPTER)
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
             .create();
 
     public Pipeline pipeline;
 
     public static StageStatusRequest fromJSON(String json) {
-        return GSON.fromJson(json, StageStatusRequest.class);
+        return PARSER.parse(json);
     }
 
-    public RequestExecutor executor(RocketChatService chatService, MessageBuilderService messageBuilderService, PluginRequest pluginRequest) {
-        return new StageStatusRequestExecutor(this, chatService, messageBuilderService, pluginRequest);
+    public RequestExecutor executor(MessageDelivery delivery, MessageBuilderService messageBuilderService, PluginRequest pluginRequest, DeliveryQueue deliveryQueue, NotificationDeduplicator deduplicator, PluginMetrics metrics) {
+        return new StageStatusRequestExecutor(this, delivery, messageBuilderService, pluginRequest, deliveryQueue, deduplicator, metrics);
     }
 
     public static class Pipeline {
@@ -0,0 +1,199 @@
+package cd.go.plugin.notification.rocketchat.requests;
+
+import cd.go.plugin.notification.rocketchat.utils.DefaultDateTypeAdapter;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads a stage status notification in one streaming pass.
+ * <p>
+ * Only the pipeline, stage and job fields used by the messages are bound. The build cause, which lists every material
+ * and modification and can be hundreds of kilobytes for fan-in pipelines, is skipped token by token without building
+ * strings or maps for it, so {@link StageStatusRequest.Pipeline#buildCause} stays {@code null}.
+ */
+class StageStatusRequestParser {
+    private final DefaultDateTypeAdapter dateAdapter;
+
+    StageStatusRequestParser(DefaultDateTypeAdapter dateAdapter) {
+        this.dateAdapter = dateAdapter;
+    }
+
+    StageStatusRequest parse(String json) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            // same leniency as Gson#fromJson
+            reader.setLenient(true);
+            if(reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonSyntaxException("Stage status request should be an object, got " + reader.peek());
+            }
+            StageStatusRequest request = new StageStatusRequest();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if("pipeline".equals(reader.nextName())) {
+                    request.pipeline = pipeline(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return request;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private StageStatusRequest.Pipeline pipeline(JsonReader reader) throws IOException {
+        if(skippedNull(reader)) {
+            return null;
+        }
+        StageStatusRequest.Pipeline pipeline = new StageStatusRequest.Pipeline();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    pipeline.name = string(reader);
+                    break;
+                case "label":
+                    pipeline.label = string(reader);
+                    break;
+                case "counter":
+                    pipeline.counter = string(reader);
+                    break;
+                case "group":
+                    pipeline.group = string(reader);
+                    break;
+                case "stage":
+                    pipeline.stage = stage(reader);
+                    break;
+                default:
+                    // build-cause and anything GoCD adds later
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return pipeline;
+    }
+
+    private StageStatusRequest.Stage stage(JsonReader reader) throws IOException {
+        if(skippedNull(reader)) {
+            return null;
+        }
+        StageStatusRequest.Stage stage = new StageStatusRequest.Stage();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    stage.name = string(reader);
+                    break;
+                case "counter":
+                    stage.counter = string(reader);
+                    break;
+                case "approval-type":
+                    stage.approvalType = string(reader);
+                    break;
+                case "approved-by":
+                    stage.approvedBy = string(reader);
+                    break;
+                case "state":
+                    stage.state = string(reader);
+                    break;
+                case "result":
+                    stage.result = string(reader);
+                    break;
+                case "create-time":
+                    stage.createTime = date(reader);
+                    break;
+                case "last-transition-time":
+                    stage.lastTransitionTime = date(reader);
+                    break;
+                case "jobs":
+                    stage.jobs = jobs(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return stage;
+    }
+
+    private List<StageStatusRequest.Job> jobs(JsonReader reader) throws IOException {
+        if(skippedNull(reader)) {
+            return null;
+        }
+        List<StageStatusRequest.Job> jobs = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            jobs.add(job(reader));
+        }
+        reader.endArray();
+        return jobs;
+    }
+
+    private StageStatusRequest.Job job(JsonReader reader) throws IOException {
+        if(skippedNull(reader)) {
+            return null;
+        }
+        StageStatusRequest.Job job = new StageStatusRequest.Job();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    job.name = string(reader);
+                    break;
+                case "schedule-time":
+                    job.scheduleTime = date(reader);
+                    break;
+                case "complete-time":
+                    job.completeTime = date(reader);
+                    break;
+                case "state":
+                    job.state = string(reader);
+                    break;
+                case "result":
+                    job.result = string(reader);
+                    break;
+                case "agent-uuid":
+                    job.agentUuid = string(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return job;
+    }
+
+    private Date date(JsonReader reader) throws IOException {
+        String value = string(reader);
+        return value == null ? null : dateAdapter.deserializeToDate(value);
+    }
+
+    // strings, numbers and booleans bind to String fields the same way Gson binds them
+    private static String string(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if(token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if(token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
+
+    private static boolean skippedNull(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
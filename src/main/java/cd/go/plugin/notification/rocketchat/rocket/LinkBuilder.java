@@ -0,0 +1,160 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URI;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Links into the GoCD UI for one Go server URL.
+ * <p>
+ * The server URL is validated and normalized once, when the builder is created. Links are then appended straight into
+ * the caller's {@link StringBuilder}, with pipeline, stage and job names percent-encoded as path segments, so names
+ * with spaces, brackets or non-ASCII characters still produce working links.
+ */
+public class LinkBuilder {
+    private static final Logger LOG = Logger.getLoggerFor(LinkBuilder.class);
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // RFC 3986 pchar minus the parentheses, which would end a markdown link
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            SAFE[c] = true;
+        }
+        for (char c : "-._~!$&'*+,;=:@".toCharArray()) {
+            SAFE[c] = true;
+        }
+    }
+
+    private final String serverUrl;
+    private final String stagePrefix;
+    private final String vsmPrefix;
+    private final String jobDetailPrefix;
+    private final String filesPrefix;
+
+    public LinkBuilder(String serverUrl) {
+        this.serverUrl = serverUrl;
+        String base = normalize(serverUrl);
+        this.stagePrefix = base + "/go/pipelines/";
+        this.vsmPrefix = base + "/go/pipelines/value_stream_map/";
+        this.jobDetailPrefix = base + "/go/tab/build/detail/";
+        this.filesPrefix = base + "/go/files/";
+    }
+
+    /**
+     * @return the Go server URL this builder was created for
+     */
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String stage(StageStatusRequest.Pipeline pipeline) {
+        return appendStage(new StringBuilder(128), pipeline).toString();
+    }
+
+    public String vsm(StageStatusRequest.Pipeline pipeline) {
+        return appendVsm(new StringBuilder(128), pipeline).toString();
+    }
+
+    public String jobConsole(StageStatusRequest.Pipeline pipeline, StageStatusRequest.Job job) {
+        return appendJobConsole(new StringBuilder(160), jobConsolePrefix(pipeline), job).toString();
+    }
+
+    /**
+     * The console log of a job as a plain file, the way the GoCD UI downloads it.
+     */
+    public String consoleLog(StageStatusRequest.Pipeline pipeline, StageStatusRequest.Job job) {
+        StringBuilder out = new StringBuilder(160).append(filesPrefix);
+        appendStageRun(out, pipeline).append('/');
+        return appendSegment(out, job.name).append("/cruise-output/console.log").toString();
+    }
+
+    public StringBuilder appendStage(StringBuilder out, StageStatusRequest.Pipeline pipeline) {
+        out.append(stagePrefix);
+        return appendStageRun(out, pipeline);
+    }
+
+    public StringBuilder appendVsm(StringBuilder out, StageStatusRequest.Pipeline pipeline) {
+        out.append(vsmPrefix);
+        appendSegment(out, pipeline.name).append('/');
+        return appendSegment(out, pipeline.counter);
+    }
+
+    /**
+     * The part of the job console links shared by all jobs of a stage run, for {@link #appendJobConsole}.
+     */
+    public String jobConsolePrefix(StageStatusRequest.Pipeline pipeline) {
+        StringBuilder prefix = new StringBuilder(128).append(jobDetailPrefix);
+        return appendStageRun(prefix, pipeline).append('/').toString();
+    }
+
+    public StringBuilder appendJobConsole(StringBuilder out, String jobConsolePrefix, StageStatusRequest.Job job) {
+        out.append(jobConsolePrefix);
+        return appendSegment(out, job.name).append("#tab-console");
+    }
+
+    private static StringBuilder appendStageRun(StringBuilder out, StageStatusRequest.Pipeline pipeline) {
+        appendSegment(out, pipeline.name).append('/');
+        appendSegment(out, pipeline.counter).append('/');
+        appendSegment(out, pipeline.stage.name).append('/');
+        return appendSegment(out, pipeline.stage.counter);
+    }
+
+    /**
+     * Appends a percent-encoded (UTF-8) path segment.
+     */
+    static StringBuilder appendSegment(StringBuilder out, String segment) {
+        if (segment == null) {
+            return out.append("null");
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < 128 && SAFE[c]) {
+                out.append(c);
+            } else if (c < 0x80) {
+                appendEscaped(out, c);
+            } else if (c < 0x800) {
+                appendEscaped(out, 0xC0 | (c >> 6));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < segment.length() && Character.isLowSurrogate(segment.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, segment.charAt(++i));
+                appendEscaped(out, 0xF0 | (codePoint >> 18));
+                appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (codePoint & 0x3F));
+            } else {
+                // lone surrogates are encoded as U+FFFD, like String#getBytes does
+                char encoded = Character.isSurrogate(c) ? '\uFFFD' : c;
+                appendEscaped(out, 0xE0 | (encoded >> 12));
+                appendEscaped(out, 0x80 | ((encoded >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (encoded & 0x3F));
+            }
+        }
+        return out;
+    }
+
+    private static void appendEscaped(StringBuilder out, int octet) {
+        out.append('%').append(HEX[(octet >> 4) & 0xF]).append(HEX[octet & 0xF]);
+    }
+
+    private static String normalize(String serverUrl) {
+        String base = StringUtils.stripEnd(StringUtils.trimToEmpty(serverUrl), "/");
+        try {
+            return new URI(base).normalize().toASCIIString();
+        } catch (Exception e) {
+            LOG.error(format("Go server URL {0} is not a valid URL, links in messages will be broken", serverUrl), e);
+            return base;
+        }
+    }
+}
@@ -1,17 +1,21 @@
 package cd.go.plugin.notification.rocketchat.rocket;
 
-import cd.go.plugin.notification.rocketchat.PluginRequest;
-import cd.go.plugin.notification.rocketchat.ServerRequestFailedException;
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.console.ConsoleTails;
 import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
-import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest.Job;
+import cd.go.plugin.notification.rocketchat.state.StageResultStore;
 import com.github.baloise.rocketchatrestclient.model.Attachment;
 import com.github.baloise.rocketchatrestclient.model.AttachmentField;
 import com.github.baloise.rocketchatrestclient.model.Message;
 import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.commons.lang3.math.NumberUtils;
 
-import java.net.URI;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static java.text.MessageFormat.format;
 
@@ -23,13 +27,79 @@ public class MessageBuilderService {
     private static final String STAGE_STATE_CANCELLED = "Cancelled";
     private static final String STAGE_STATE_BUILDING = "Building";
 
-    public Message onStageStatusChanged(PluginRequest pluginRequest, StageStatusRequest.Pipeline pipeline) {
-        // The request.pipeline object has all the details about the pipeline, materials, stages and jobs
-        if(pipeline.stage.state.equals(STAGE_STATE_FAILED)) {
-            return onStageFailed(pipeline, pluginRequest);
+    /**
+     * Stage states a message can be built for, notifications in any other state can be dropped unread. A passed stage
+     * is only worth a message when it was broken, see {@link #isBroken}.
+     */
+    public static final Set<String> NOTIFIED_STATES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(STAGE_STATE_FAILED, STAGE_STATE_PASSED)));
+
+    public static final String DEFAULT_FAILED_TEMPLATE = "Stage [{stage_run}]({stage_url}) has failed";
+    public static final String DEFAULT_FIXED_TEMPLATE = "Stage [{stage_run}]({stage_url}) is fixed";
+    // leaves room for the rest of a message within the 5000 characters Rocket.Chat accepts by default
+    public static final int DEFAULT_FAILED_JOBS_MAX_BYTES = 3000;
+
+    private static final MessageTemplate LABEL_TEMPLATE = MessageTemplate.compile("[{label}]({vsm_url})");
+    // the fences and line breaks around a console tail
+    private static final int CODE_BLOCK_LENGTH = "```\n\n```".length();
+    private static final StringBuilderPool BUFFERS = new StringBuilderPool(16, 256);
+
+    private final StageResultStore results;
+    private final ConsoleTails consoleTails;
+    private volatile LinkBuilder links;
+    private volatile MessageTemplate failedTemplate = MessageTemplate.compile(DEFAULT_FAILED_TEMPLATE);
+    private volatile MessageTemplate fixedTemplate = MessageTemplate.compile(DEFAULT_FIXED_TEMPLATE);
+
+    public MessageBuilderService() {
+        this(new StageResultStore());
+    }
+
+    public MessageBuilderService(StageResultStore results) {
+        this(results, new ConsoleTails());
+    }
+
+    public MessageBuilderService(StageResultStore results, ConsoleTails consoleTails) {
+        this.results = results;
+        this.consoleTails = consoleTails;
+    }
+
+    /**
+     * Records the result of the stage and builds its message right away, see {@link #record} and
+     * {@link #onStageStatusChanged(PluginSettings, StageStatusRequest.Pipeline, StageResultStore.Transition)}.
+     */
+    public Message onStageStatusChanged(PluginSettings settings, StageStatusRequest.Pipeline pipeline) {
+        return onStageStatusChanged(settings, pipeline, record(pipeline));
+    }
+
+    /**
+     * Records the result of a failed or passed stage. Called when the notification is accepted, in the order GoCD sends
+     * them, so the result is known to the next notification for the stage however long this one waits for delivery.
+     *
+     * @return how the result changed, {@link StageResultStore.Transition#IGNORED} for stages in any other state
+     */
+    public StageResultStore.Transition record(StageStatusRequest.Pipeline pipeline) {
+        if(!pipeline.stage.state.equals(STAGE_STATE_FAILED) && !pipeline.stage.state.equals(STAGE_STATE_PASSED)) {
+            return StageResultStore.Transition.IGNORED;
         }
-        else if(pipeline.stage.state.equals(STAGE_STATE_PASSED)) {
-            return onStagePassed(pipeline);
+        return results.record(pipeline.name, NumberUtils.toLong(pipeline.counter),
+                pipeline.stage.name, NumberUtils.toLong(pipeline.stage.counter), StageResultStore.resultOf(pipeline.stage.state));
+    }
+
+    /**
+     * @param transition as returned by {@link #record} for the stage
+     * @return a message when the stage broke or was fixed, null when its result did not change
+     */
+    public Message onStageStatusChanged(PluginSettings settings, StageStatusRequest.Pipeline pipeline, StageResultStore.Transition transition) {
+        // The request.pipeline object has all the details about the pipeline, materials, stages and jobs
+        if(pipeline.stage.state.equals(STAGE_STATE_FAILED) || pipeline.stage.state.equals(STAGE_STATE_PASSED)) {
+            switch (transition) {
+                case BROKE:
+                    return onStageFailed(pipeline, settings);
+                case FIXED:
+                    return onStageFixed(pipeline, settings);
+                default:
+                    LOG.debug(format("No message for stage {0}, {1}", stageRelativeUri(pipeline), transition));
+                    return null;
+            }
         }
         else if(pipeline.stage.state.equals(STAGE_STATE_BUILDING)) {
             return onStageBuilding(pipeline);
@@ -49,41 +119,57 @@ public class MessageBuilderService {
         return null;
     }
 
-    private Message onStagePassed(StageStatusRequest.Pipeline pipeline) {
-        return null;
+    private Message onStageFixed(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        MessageTemplate template = fixedTemplate;
+        if(!template.isFor(settings.getMessageTemplateFixed())) {
+            template = compileTemplate(settings.getMessageTemplateFixed(), DEFAULT_FIXED_TEMPLATE);
+            fixedTemplate = template;
+        }
+        return new Message(render(template, pipeline, settings));
     }
 
-    public String stageFullUrl(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest) {
-        try {
-            String host = pluginRequest.getPluginSettings().getGoServerUrl();
-            return new URI(String.format("%s/go/pipelines/%s/%s/%s/%s", host, pipeline.name, pipeline.counter, pipeline.stage.name, pipeline.stage.counter)).normalize().toASCIIString();
-        }
-        catch(Exception ex) {
-            LOG.error("Failed to form an URL to stage", ex);
-            return "";
+    /**
+     * @return whether the last result recorded for the stage is a failure
+     */
+    public boolean isBroken(String pipeline, String stage) {
+        return results.isBroken(pipeline, stage);
+    }
+
+    public String stageFullUrl(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        return links(settings).stage(pipeline);
+    }
+
+    public String vsmFullUrl(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        return links(settings).vsm(pipeline);
+    }
+
+    // settings snapshots are cached, so this is rebuilt only when the Go server URL changes
+    private LinkBuilder links(PluginSettings settings) {
+        LinkBuilder current = this.links;
+        if(current == null || !Objects.equals(current.getServerUrl(), settings.getGoServerUrl())) {
+            current = new LinkBuilder(settings.getGoServerUrl());
+            this.links = current;
         }
+        return current;
     }
 
-    public String vsmFullUrl(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest) {
+    private static MessageTemplate compileTemplate(String text, String defaultText) {
         try {
-            String host = pluginRequest.getPluginSettings().getGoServerUrl();
-            return new URI(String.format("%s/go/pipelines/value_stream_map/%s/%s", host, pipeline.name, pipeline.counter)).normalize().toASCIIString();
+            return MessageTemplate.compile(text);
         }
-        catch(Exception ex) {
-            LOG.error("Failed to form an URL to VSM", ex);
-            return "";
+        catch (IllegalArgumentException e) {
+            LOG.error(format("Invalid message template {0}, using {1}. {2}", text, defaultText, e.getMessage()));
+            return MessageTemplate.compile(defaultText).standingInFor(text);
         }
     }
 
-    private String jobConsoleFullUrl(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest, Job job) {
+    private String render(MessageTemplate template, StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        StringBuilder out = BUFFERS.acquire();
         try {
-            String host = pluginRequest.getPluginSettings().getGoServerUrl();
-            URI link = new URI(String.format("%s/go/tab/build/detail/%s/%s/%s/%s/%s#tab-console", host, pipeline.name, pipeline.counter, pipeline.stage.name, pipeline.stage.counter, job.name));
-            return link.normalize().toASCIIString();
+            return template.appendTo(out, pipeline, links(settings), settings.getFailedJobsMaxBytes()).toString();
         }
-        catch(Exception ex) {
-            LOG.error("Failed to form an URL to job console", ex);
-            return "";
+        finally {
+            BUFFERS.release(out);
         }
     }
 
@@ -91,51 +177,109 @@ public class MessageBuilderService {
         return pipeline.name + "/" + pipeline.counter + "/" + pipeline.stage.name + "/" + pipeline.stage.counter;
     }
 
-    private Message onStageFailed(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest) {
-        String topText = getTopMessage(pipeline, pluginRequest);
+    /**
+     * The message for a stage which broke, whatever its previous result.
+     */
+    public Message onStageFailed(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        String topText = getTopMessage(pipeline, settings);
         Message message = new Message(topText);
         Attachment buildAttachment = new Attachment();
         AttachmentField labelField =  new AttachmentField();
         labelField.setShort(true);
         labelField.setTitle("Label");
-        labelField.setValue(format("[{0}]({1})", pipeline.label, vsmFullUrl(pipeline, pluginRequest)));
+        labelField.setValue(render(LABEL_TEMPLATE, pipeline, settings));
         // Failed jobs:
         AttachmentField jobs = new AttachmentField();
         jobs.setTitle("Failed Jobs");
-        String failedJobsText = getFailedJobsText(pipeline, pluginRequest);
+        String failedJobsText = getFailedJobsText(pipeline, settings);
         jobs.setValue(failedJobsText);
 
         buildAttachment.setFields(new AttachmentField[] { labelField, jobs });
         message.addAttachment(buildAttachment);
+        addConsoleTails(message, pipeline, settings);
 
         return  message;
     }
 
-    public String getFailedJobsText(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest) {
-        List<Job> failedJobs = pipeline.stage.jobs.stream()
-                .filter(j -> "Failed".equals(j.result) || "Cancelled".equals(j.result))
-                .collect(Collectors.toList());
-        StringBuilder failedJobsText = new StringBuilder();
-        for(int i = 0; i < failedJobs.size(); i++) {
-            failedJobsText.append(" - [");
-            Job j = failedJobs.get(i);
-            failedJobsText.append(j.name);
-            failedJobsText.append("](");
-            failedJobsText.append(jobConsoleFullUrl(pipeline, pluginRequest, j));
-            failedJobsText.append(") ");
-            if(j.result.equals("Cancelled"))
-                failedJobsText.append("was cancelled");
-            if(j.result.equals("Failed"))
-                failedJobsText.append("failed");
-            if(i < failedJobs.size() -1) {
-                failedJobsText.append('\n');
+    /**
+     * Attaches the console tails, sharing between them what the rest of the message leaves of
+     * {@link PluginSettings#getMessageMaxSize()}. A tail longer than its share keeps its last lines.
+     */
+    private void addConsoleTails(Message message, StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        LinkBuilder links = links(settings);
+        Map<StageStatusRequest.Job, String> tails = consoleTails.fetch(pipeline, links, settings);
+        if(tails.isEmpty()) {
+            return;
+        }
+        int share = (settings.getMessageMaxSize() - size(message)) / tails.size();
+        for (Map.Entry<StageStatusRequest.Job, String> tail : tails.entrySet()) {
+            String title = tail.getKey().name + " console";
+            // a fence in the log would end the code block early
+            String text = lastLines(tail.getValue().replace("```", "'''"), share - title.length() - CODE_BLOCK_LENGTH);
+            if(text.isEmpty()) {
+                continue;
+            }
+            Attachment console = new Attachment();
+            console.setTitle(title);
+            console.setTitleLink(links.jobConsole(pipeline, tail.getKey()));
+            console.setText("```\n" + text + "\n```");
+            message.addAttachment(console);
+        }
+    }
+
+    private static String lastLines(String text, int maxLength) {
+        if(maxLength <= 0) {
+            return "";
+        }
+        if(text.length() <= maxLength) {
+            return text;
+        }
+        int start = text.length() - maxLength;
+        int newline = text.indexOf('\n', start - 1);
+        if(newline >= 0 && newline < text.length() - 1) {
+            return text.substring(newline + 1);
+        }
+        // one long line, do not start in the middle of a character
+        return text.substring(Character.isLowSurrogate(text.charAt(start)) ? start + 1 : start);
+    }
+
+    // counted like the coalescer counts messages, in characters
+    private static int size(Message message) {
+        int size = length(message.getText());
+        if(message.getAttachments() == null) {
+            return size;
+        }
+        for (Attachment attachment : message.getAttachments()) {
+            size += length(attachment.getTitle()) + length(attachment.getText());
+            if(attachment.getFields() != null) {
+                for (AttachmentField field : attachment.getFields()) {
+                    size += length(field.getTitle()) + length(field.getValue());
+                }
             }
         }
-        return failedJobsText.toString();
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
     }
 
+    public String getFailedJobsText(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        StringBuilder out = BUFFERS.acquire();
+        try {
+            return MessageTemplate.appendFailedJobs(out, pipeline, links(settings), settings.getFailedJobsMaxBytes()).toString();
+        }
+        finally {
+            BUFFERS.release(out);
+        }
+    }
 
-    public String getTopMessage(StageStatusRequest.Pipeline pipeline, PluginRequest pluginRequest) {
-        return String.format("Stage [%s](%s) has failed", stageRelativeUri(pipeline), stageFullUrl(pipeline, pluginRequest));
+    public String getTopMessage(StageStatusRequest.Pipeline pipeline, PluginSettings settings) {
+        MessageTemplate template = failedTemplate;
+        if(!template.isFor(settings.getMessageTemplateFailed())) {
+            template = compileTemplate(settings.getMessageTemplateFailed(), DEFAULT_FAILED_TEMPLATE);
+            failedTemplate = template;
+        }
+        return render(template, pipeline, settings);
     }
 }
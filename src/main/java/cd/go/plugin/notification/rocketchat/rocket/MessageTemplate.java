@@ -0,0 +1,290 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Message text with placeholders like {@code {pipeline}} or {@code {stage_url}}, see {@link Placeholder}. {@code {{}
+ * stands for a literal brace.
+ * <p>
+ * The text is parsed once, into the literals between the placeholders and the placeholder after each literal. Rendering
+ * walks that plan and appends the literals and values straight into the caller's {@link StringBuilder}, without
+ * scanning the text again.
+ */
+public class MessageTemplate {
+    public enum Placeholder {
+        PIPELINE("pipeline"),
+        PIPELINE_COUNTER("pipeline_counter"),
+        GROUP("group"),
+        LABEL("label"),
+        STAGE("stage"),
+        STAGE_COUNTER("stage_counter"),
+        // pipeline/counter/stage/counter
+        STAGE_RUN("stage_run"),
+        STAGE_URL("stage_url"),
+        VSM_URL("vsm_url"),
+        // one markdown line with a console link per failed or cancelled job, as many as fit the byte budget
+        FAILED_JOBS("failed_jobs"),
+        APPROVER("approver"),
+        // from scheduling the stage to its last transition, e.g. 1h 2m or 45s
+        DURATION("duration");
+
+        private final String key;
+
+        Placeholder(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        static Placeholder fromKey(String key) {
+            for (Placeholder placeholder : values()) {
+                if(placeholder.key.equals(key)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+
+    // " - and 742 more" and the line break before it
+    static final int OMITTED_JOBS_RESERVE = 32;
+
+    private final String text;
+    // literals[i] comes before placeholders[i], the last literal after the last placeholder
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+
+    private MessageTemplate(String text, String[] literals, Placeholder[] placeholders) {
+        this.text = text;
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the first unknown or unterminated placeholder
+     */
+    public static MessageTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if(c != '{') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if(i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                literal.append('{');
+                i += 2;
+                continue;
+            }
+            int end = text.indexOf('}', i);
+            if(end < 0) {
+                throw new IllegalArgumentException("unterminated placeholder at '" + text.substring(i) + "'");
+            }
+            String key = text.substring(i + 1, end).trim();
+            Placeholder placeholder = Placeholder.fromKey(key);
+            if(placeholder == null) {
+                throw new IllegalArgumentException("unknown placeholder {" + key + "}, use one of " + keys());
+            }
+            literals.add(literal.toString());
+            placeholders.add(placeholder);
+            literal.setLength(0);
+            i = end + 1;
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(text, literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+
+    /**
+     * @return whether this template was compiled from this text
+     */
+    public boolean isFor(String text) {
+        return Objects.equals(this.text, text);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return this template, answering {@link #isFor} with the given text, so invalid text is not parsed again
+     */
+    MessageTemplate standingInFor(String text) {
+        return new MessageTemplate(text, literals, placeholders);
+    }
+
+    public StringBuilder appendTo(StringBuilder out, StageStatusRequest.Pipeline pipeline, LinkBuilder links) {
+        return appendTo(out, pipeline, links, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param failedJobsMaxBytes UTF-8 size {@code {failed_jobs}} is kept within
+     */
+    public StringBuilder appendTo(StringBuilder out, StageStatusRequest.Pipeline pipeline, LinkBuilder links, int failedJobsMaxBytes) {
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            append(out, placeholders[i], pipeline, links, failedJobsMaxBytes);
+        }
+        return out.append(literals[placeholders.length]);
+    }
+
+    private static void append(StringBuilder out, Placeholder placeholder, StageStatusRequest.Pipeline pipeline, LinkBuilder links, int failedJobsMaxBytes) {
+        switch (placeholder) {
+            case PIPELINE:
+                appendText(out, pipeline.name);
+                break;
+            case PIPELINE_COUNTER:
+                appendText(out, pipeline.counter);
+                break;
+            case GROUP:
+                appendText(out, pipeline.group);
+                break;
+            case LABEL:
+                appendText(out, pipeline.label);
+                break;
+            case STAGE:
+                appendText(out, pipeline.stage.name);
+                break;
+            case STAGE_COUNTER:
+                appendText(out, pipeline.stage.counter);
+                break;
+            case STAGE_RUN:
+                out.append(pipeline.name).append('/').append(pipeline.counter).append('/')
+                        .append(pipeline.stage.name).append('/').append(pipeline.stage.counter);
+                break;
+            case STAGE_URL:
+                links.appendStage(out, pipeline);
+                break;
+            case VSM_URL:
+                links.appendVsm(out, pipeline);
+                break;
+            case FAILED_JOBS:
+                appendFailedJobs(out, pipeline, links, failedJobsMaxBytes);
+                break;
+            case APPROVER:
+                appendText(out, pipeline.stage.approvedBy);
+                break;
+            case DURATION:
+                appendDuration(out, pipeline.stage.createTime, pipeline.stage.lastTransitionTime);
+                break;
+        }
+    }
+
+    /**
+     * Appends a line per failed or cancelled job for as long as the lines fit in {@code maxBytes}, then only counts the
+     * remaining jobs and ends with {@code  - and 742 more}, taking back as many lines as it needs room. The jobs are
+     * walked once, a line which does not fit is rendered and taken back rather than measured up front.
+     */
+    static StringBuilder appendFailedJobs(StringBuilder out, StageStatusRequest.Pipeline pipeline, LinkBuilder links, int maxBytes) {
+        if(pipeline.stage.jobs == null) {
+            return out;
+        }
+        int start = out.length();
+        int bytes = 0;
+        int omitted = 0;
+        String jobConsolePrefix = null;
+        for (StageStatusRequest.Job job : pipeline.stage.jobs) {
+            boolean failed = "Failed".equals(job.result);
+            if(!failed && !"Cancelled".equals(job.result)) {
+                continue;
+            }
+            if(omitted > 0) {
+                omitted++;
+                continue;
+            }
+            if(jobConsolePrefix == null) {
+                jobConsolePrefix = links.jobConsolePrefix(pipeline);
+            }
+            int lineStart = out.length();
+            if(lineStart > start) {
+                out.append('\n');
+            }
+            out.append(" - [").append(job.name).append("](");
+            links.appendJobConsole(out, jobConsolePrefix, job);
+            out.append(failed ? ") failed" : ") was cancelled");
+            int lineBytes = utf8Length(out, lineStart, out.length());
+            if(bytes + lineBytes <= maxBytes) {
+                bytes += lineBytes;
+                continue;
+            }
+            out.setLength(lineStart);
+            omitted = 1;
+            while (bytes + OMITTED_JOBS_RESERVE > maxBytes && out.length() > start) {
+                // make room for the count, a line starts at the line break before it
+                int previousLineStart = out.lastIndexOf("\n");
+                previousLineStart = previousLineStart < start ? start : previousLineStart;
+                bytes -= utf8Length(out, previousLineStart, out.length());
+                out.setLength(previousLineStart);
+                omitted++;
+            }
+        }
+        if(omitted > 0) {
+            if(out.length() > start) {
+                out.append('\n');
+            }
+            out.append(" - and ").append(omitted).append(" more");
+        }
+        return out;
+    }
+
+    static int utf8Length(CharSequence text, int from, int to) {
+        int bytes = to - from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if(Character.isSurrogate(c)) {
+                // a surrogate pair takes 4 bytes, 2 for each half
+                bytes++;
+            }
+            else if(c >= 0x800) {
+                bytes += 2;
+            }
+            else if(c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    private static void appendText(StringBuilder out, String value) {
+        if(value != null) {
+            out.append(value);
+        }
+    }
+
+    static StringBuilder appendDuration(StringBuilder out, Date start, Date end) {
+        if(start == null || end == null || end.before(start)) {
+            return out;
+        }
+        long seconds = (end.getTime() - start.getTime()) / 1000;
+        long hours = seconds / 3600;
+        long minutes = seconds / 60 % 60;
+        if(hours > 0) {
+            return out.append(hours).append("h ").append(minutes).append('m');
+        }
+        if(minutes > 0) {
+            return out.append(minutes).append("m ").append(seconds % 60).append('s');
+        }
+        return out.append(seconds).append('s');
+    }
+
+    private static String keys() {
+        StringBuilder keys = new StringBuilder();
+        for (Placeholder placeholder : Placeholder.values()) {
+            if(keys.length() > 0) {
+                keys.append(", ");
+            }
+            keys.append('{').append(placeholder.key).append('}');
+        }
+        return keys.toString();
+    }
+}
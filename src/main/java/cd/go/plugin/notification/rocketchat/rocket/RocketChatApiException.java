@@ -0,0 +1,40 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import java.io.IOException;
+
+/**
+ * Rocket.Chat answered, but not with a 2xx status.
+ */
+public class RocketChatApiException extends IOException {
+    private final int statusCode;
+    private final long rateLimitReset;
+
+    public RocketChatApiException(int statusCode, String message) {
+        this(statusCode, message, -1);
+    }
+
+    /**
+     * @param rateLimitReset epoch millis from the {@code X-RateLimit-Reset} header, -1 when absent
+     */
+    public RocketChatApiException(int statusCode, String message, long rateLimitReset) {
+        super(message);
+        this.statusCode = statusCode;
+        this.rateLimitReset = rateLimitReset;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRateLimitReset() {
+        return rateLimitReset;
+    }
+
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+}
@@ -2,47 +2,292 @@ package cd.go.plugin.notification.rocketchat.rocket;
 import cd.go.plugin.notification.rocketchat.PluginRequest;
 import cd.go.plugin.notification.rocketchat.PluginSettings;
 import cd.go.plugin.notification.rocketchat.ServerRequestFailedException;
+import cd.go.plugin.notification.rocketchat.delivery.CircuitBreaker;
+import cd.go.plugin.notification.rocketchat.delivery.RateLimiter;
+import cd.go.plugin.notification.rocketchat.delivery.RetryPolicy;
+import cd.go.plugin.notification.rocketchat.metrics.PluginMetrics;
 import com.github.baloise.rocketchatrestclient.model.Message;
-import com.github.baloise.rocketchatrestclient.model.Room;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 import static java.text.MessageFormat.format;
 
-import com.github.baloise.rocketchatrestclient.RocketChatClient;
-
 import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
+/**
+ * Posts messages with the current settings.
+ * <p>
+ * Settings, transport, retry policy, rate limiter and circuit breakers form one immutable {@link Client}, swapped in
+ * as a whole when the settings change, so a post never mixes the room of one configuration with the server of another.
+ * Posts read the client without locking. A transport which is replaced is closed once the last post using it is done.
+ */
 public class RocketChatService {
     private static final Logger LOG = Logger.getLoggerFor(RocketChatService.class);
 
-    private RocketChatClient rc;
-    private RocketChatSettings settings;
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+
+    private final AtomicReference<Client> client;
+    private final PluginMetrics metrics;
+
+    public RocketChatService() {
+        this(new PluginMetrics());
+    }
+
+    public RocketChatService(PluginMetrics metrics) {
+        this.metrics = metrics;
+        this.client = new AtomicReference<>(new Client(null, null, null, RetryPolicy.DEFAULT,
+                new RateLimiter(RateLimiter.DEFAULT_PERMITS_PER_MINUTE, RateLimiter.DEFAULT_BURST),
+                DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD, DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS, new ConcurrentHashMap<>()));
+        metrics.circuitState(this::circuitState);
+    }
 
     public void configure(RocketChatSettings settings) {
-        if(this.settings == null || !this.settings.equals(settings)) {
-            this.settings = settings;
-            this.rc = new RocketChatClient(settings.getServerUrl(), settings.getUser(), settings.getPassword());
-            LOG.info("Initialized new rocket chat client");
-        }
+        update(current -> settings.equals(current.settings) ? current : current.with(null, settings, connectionFor(current, settings)));
+    }
+
+    protected RocketChatTransport newTransport(RocketChatSettings settings) {
+        return new RocketChatTransport(settings.getServerUrl(), settings.getUser(), settings.getPassword(),
+                settings.getConnectTimeoutMillis(), settings.getReadTimeoutMillis());
     }
 
     public void configure(PluginRequest pluginRequest) throws ServerRequestFailedException {
         // If you need access to settings like API keys, URLs, then call PluginRequest#getPluginSettings
-        PluginSettings pluginSettings = pluginRequest.getPluginSettings();
-        if(pluginSettings != null) {
-            RocketChatSettings settings = new RocketChatSettings(
-                    pluginSettings.getApiUrl(),
-                    pluginSettings.getApiUser(),
-                    pluginSettings.getApiKey(),
-                    pluginSettings.getRoom());
-            this.configure(settings);
-        }
-        else {
+        configure(pluginRequest.getPluginSettings());
+    }
+
+    public void configure(PluginSettings pluginSettings) {
+        if(pluginSettings == null) {
             LOG.warn("Rocket chat plugin is not configured");
+            return;
         }
+        // settings are cached, usually this is the instance the client was built from
+        if(client.get().source == pluginSettings) {
+            return;
+        }
+        RocketChatSettings settings = new RocketChatSettings(
+                pluginSettings.getApiUrl(),
+                pluginSettings.getApiUser(),
+                pluginSettings.getApiKey(),
+                pluginSettings.getRoom(),
+                pluginSettings.getConnectTimeoutMillis(),
+                pluginSettings.getReadTimeoutMillis());
+        update(current -> current.with(pluginSettings, settings, connectionFor(current, settings)));
     }
 
     public void postMessage(Message msg) throws IOException {
-        Room room = new Room(this.settings.getRoom(), false);
-        this.rc.getChatApi().postMessage(room, msg);
+        postMessage(null, msg);
+    }
+
+    /**
+     * @param room room to post to, null for the room from the settings
+     */
+    public void postMessage(String room, Message msg) throws IOException {
+        Client client = acquire();
+        long start = System.nanoTime();
+        boolean posted = false;
+        try {
+            postMessage(client, room == null ? client.settings.getRoom() : room, msg);
+            posted = true;
+        }
+        finally {
+            client.connection.release();
+            metrics.onPost(posted, start);
+        }
+    }
+
+    private void postMessage(Client client, String room, Message msg) throws IOException {
+        RocketChatSettings settings = client.settings;
+        RateLimiter limiter = client.rateLimiter;
+        client.retryPolicy.execute(client.circuitBreaker(), () -> {
+            limiter.acquire(settings.getUser(), room);
+            try {
+                client.connection.transport.postMessage(room, msg, (remaining, reset) ->
+                        limiter.observe(settings.getUser(), room, remaining, reset));
+            }
+            catch (RocketChatApiException e) {
+                if(e.isRateLimited()) {
+                    limiter.onRateLimited(settings.getUser(), room, e.getRateLimitReset());
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * @return the current client, its transport held open until {@link Connection#release()}
+     */
+    private Client acquire() {
+        while (true) {
+            Client current = client.get();
+            if(current.connection == null) {
+                throw new IllegalStateException("Rocket.Chat client is not configured");
+            }
+            if(current.connection.acquire()) {
+                return current;
+            }
+            // replaced and closed in the meantime, the next read sees its successor
+        }
+    }
+
+    private void update(UnaryOperator<Client> change) {
+        while (true) {
+            Client current = client.get();
+            Client next = change.apply(current);
+            if(next == current) {
+                return;
+            }
+            if(client.compareAndSet(current, next)) {
+                if(next.connection != current.connection) {
+                    LOG.info("Initialized new rocket chat client");
+                    if(current.connection != null) {
+                        current.connection.release();
+                    }
+                }
+                return;
+            }
+            if(next.connection != current.connection) {
+                // never published, so never used
+                next.connection.release();
+            }
+        }
+    }
+
+    private Connection connectionFor(Client current, RocketChatSettings settings) {
+        // a new transport logs in again, so only replace it when the server or the account changed
+        return current.settings != null && sameConnection(current.settings, settings)
+                ? current.connection
+                : new Connection(newTransport(settings));
+    }
+
+    private static boolean sameConnection(RocketChatSettings a, RocketChatSettings b) {
+        return Objects.equals(a.getServerUrl(), b.getServerUrl())
+                && Objects.equals(a.getUser(), b.getUser())
+                && Objects.equals(a.getPassword(), b.getPassword())
+                && a.getConnectTimeoutMillis() == b.getConnectTimeoutMillis()
+                && a.getReadTimeoutMillis() == b.getReadTimeoutMillis();
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return state of the circuit breaker of the configured server, null before the service is configured
+     */
+    public String circuitState() {
+        Client current = client.get();
+        return current.settings == null ? null : current.circuitBreaker().getState().name();
+    }
+
+    /**
+     * @return how many times the circuit breaker of the configured server opened, 0 before the service is configured
+     */
+    public long circuitOpenedCount() {
+        Client current = client.get();
+        return current.settings == null ? 0 : current.circuitBreaker().openedCount();
+    }
+
+    /**
+     * @return posts the circuit breaker of the configured server refused, 0 before the service is configured
+     */
+    public long circuitRejectedCount() {
+        Client current = client.get();
+        return current.settings == null ? 0 : current.circuitBreaker().rejectedCount();
+    }
+
+    public RateLimiter rateLimiter() {
+        return client.get().rateLimiter;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return client.get().circuitBreaker();
+    }
+
+    /**
+     * Everything a post needs, built in full before it is published.
+     */
+    private static final class Client {
+        // settings this client was built from, null when configured with RocketChatSettings
+        private final PluginSettings source;
+        private final RocketChatSettings settings;
+        private final Connection connection;
+        private final RetryPolicy retryPolicy;
+        private final RateLimiter rateLimiter;
+        private final int breakerFailureThreshold;
+        private final int breakerOpenSeconds;
+        // one breaker per Rocket.Chat server
+        private final Map<String, CircuitBreaker> breakers;
+
+        Client(PluginSettings source, RocketChatSettings settings, Connection connection, RetryPolicy retryPolicy, RateLimiter rateLimiter,
+               int breakerFailureThreshold, int breakerOpenSeconds, Map<String, CircuitBreaker> breakers) {
+            this.source = source;
+            this.settings = settings;
+            this.connection = connection;
+            this.retryPolicy = retryPolicy;
+            this.rateLimiter = rateLimiter;
+            this.breakerFailureThreshold = breakerFailureThreshold;
+            this.breakerOpenSeconds = breakerOpenSeconds;
+            this.breakers = breakers;
+        }
+
+        /**
+         * @param source plugin settings to take the delivery settings from, null to keep the current ones
+         */
+        Client with(PluginSettings source, RocketChatSettings settings, Connection connection) {
+            if(source == null) {
+                return new Client(null, settings, connection, retryPolicy, rateLimiter, breakerFailureThreshold, breakerOpenSeconds, breakers);
+            }
+            RateLimiter limiter = rateLimiter;
+            if(limiter.getPermitsPerMinute() != source.getRateLimitPerMinute() || limiter.getBurst() != source.getRateLimitBurst()) {
+                limiter = limiter.withLimits(source.getRateLimitPerMinute(), source.getRateLimitBurst());
+            }
+            Map<String, CircuitBreaker> breakers = this.breakers;
+            if(breakerFailureThreshold != source.getCircuitBreakerFailureThreshold() || breakerOpenSeconds != source.getCircuitBreakerOpenSeconds()) {
+                breakers = new ConcurrentHashMap<>();
+            }
+            return new Client(source, settings, connection, RetryPolicy.fromPluginSettings(source), limiter,
+                    source.getCircuitBreakerFailureThreshold(), source.getCircuitBreakerOpenSeconds(), breakers);
+        }
+
+        CircuitBreaker circuitBreaker() {
+            return breakers.computeIfAbsent(settings.getServerUrl(), serverUrl ->
+                    new CircuitBreaker(serverUrl, breakerFailureThreshold, breakerOpenSeconds, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * A transport and the posts using it. The client holding it counts as one user; once it is replaced and the last
+     * post is done the transport is closed, and it cannot be acquired anymore.
+     */
+    private static final class Connection {
+        private final RocketChatTransport transport;
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        Connection(RocketChatTransport transport) {
+            this.transport = transport;
+        }
+
+        boolean acquire() {
+            int current;
+            do {
+                current = users.get();
+                if(current == 0) {
+                    return false;
+                }
+            } while (!users.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if(users.decrementAndGet() == 0) {
+                transport.close();
+            }
+        }
     }
 }
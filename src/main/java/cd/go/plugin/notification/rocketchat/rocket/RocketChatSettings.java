@@ -7,12 +7,20 @@ public class RocketChatSettings {
     private final String user;
     private final String password;
     private final String room;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
 
     public RocketChatSettings(String serverUrl, String user, String password, String room) {
+        this(serverUrl, user, password, room, RocketChatTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS, RocketChatTransport.DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public RocketChatSettings(String serverUrl, String user, String password, String room, int connectTimeoutMillis, int readTimeoutMillis) {
         this.serverUrl = serverUrl;
         this.user = user;
         this.password = password;
         this.room = room;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
     }
 
     public String getServerUrl() {
@@ -39,10 +47,20 @@ public class RocketChatSettings {
         return Objects.equals(serverUrl, other.serverUrl)
                 && Objects.equals(user, other.user)
                 && Objects.equals(password, other.password)
-                && Objects.equals(room, other.room);
+                && Objects.equals(room, other.room)
+                && connectTimeoutMillis == other.connectTimeoutMillis
+                && readTimeoutMillis == other.readTimeoutMillis;
     }
 
     public String getRoom() {
         return room;
     }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
 }
@@ -0,0 +1,291 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import com.github.baloise.rocketchatrestclient.model.Attachment;
+import com.github.baloise.rocketchatrestclient.model.AttachmentField;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Posts messages to the Rocket.Chat REST API.
+ * <p>
+ * The client logs in once and reuses the {@code X-Auth-Token} and {@code X-User-Id} it got back until the server
+ * answers 401, then logs in again and repeats the post. Requests go through {@link HttpURLConnection}, whose keep-alive
+ * cache pools the connections to the server as long as every response body is read to the end, which this class does.
+ */
+public class RocketChatTransport implements Closeable {
+    private static final Logger LOG = Logger.getLoggerFor(RocketChatTransport.class);
+    private static final Gson GSON = new Gson();
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    public interface RateLimitListener {
+        /**
+         * @param remaining        value of {@code X-RateLimit-Remaining}, or -1 when absent
+         * @param resetEpochMillis value of {@code X-RateLimit-Reset}, or -1 when absent
+         */
+        void onResponse(long remaining, long resetEpochMillis);
+    }
+
+    private final String apiUrl;
+    private final String user;
+    private final String password;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    private volatile Credentials credentials;
+    private final AtomicLong logins = new AtomicLong();
+    // not synchronized: a virtual thread blocked on I/O inside a monitor pins its carrier thread on Java 21
+    private final ReentrantLock loginLock = new ReentrantLock();
+
+    public RocketChatTransport(String serverUrl, String user, String password, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.apiUrl = apiUrl(serverUrl);
+        this.user = user;
+        this.password = password;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public void postMessage(String room, Message msg, RateLimitListener listener) throws IOException {
+        byte[] body = GSON.toJson(payload(room, msg)).getBytes(Charsets.UTF_8);
+        Credentials used = credentials();
+        Response response = post("chat.postMessage", body, used);
+        if(response.status == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            LOG.info(format("Rocket.Chat rejected the auth token of {0}, logging in again", user));
+            response = post("chat.postMessage", body, login(used));
+        }
+        listener.onResponse(response.rateLimitRemaining, response.rateLimitReset);
+        if(!response.isSuccessful()) {
+            throw new RocketChatApiException(response.status,
+                    format("Rocket.Chat refused the message to {0} with {1}: {2}", room, response.status, response.error()),
+                    response.rateLimitReset);
+        }
+    }
+
+    /**
+     * @return how many times this transport had to log in
+     */
+    public long loginCount() {
+        return logins.get();
+    }
+
+    /**
+     * Logs out, so the auth token of a replaced transport does not stay valid on the server. Best effort, a failure is
+     * only logged.
+     */
+    @Override
+    public void close() {
+        loginLock.lock();
+        try {
+            Credentials current = this.credentials;
+            this.credentials = null;
+            if(current == null) {
+                return;
+            }
+            Response response = post("logout", new byte[0], current);
+            if(!response.isSuccessful()) {
+                LOG.debug(format("Rocket.Chat logout of {0} answered {1}: {2}", user, response.status, response.error()));
+            }
+        }
+        catch (IOException e) {
+            LOG.debug(format("Could not log out of Rocket.Chat as {0}", user), e);
+        }
+        finally {
+            loginLock.unlock();
+        }
+    }
+
+    private Credentials credentials() throws IOException {
+        Credentials current = this.credentials;
+        return current != null ? current : login(null);
+    }
+
+    private Credentials login(Credentials stale) throws IOException {
+        loginLock.lock();
+        try {
+            return loginLocked(stale);
+        }
+        finally {
+            loginLock.unlock();
+        }
+    }
+
+    private Credentials loginLocked(Credentials stale) throws IOException {
+        Credentials current = this.credentials;
+        if(current != null && current != stale) {
+            // another thread logged in already
+            return current;
+        }
+        JsonObject request = new JsonObject();
+        request.addProperty("user", user);
+        request.addProperty("password", password);
+        Response response = post("login", GSON.toJson(request).getBytes(Charsets.UTF_8), null);
+        if(!response.isSuccessful()) {
+            throw new RocketChatApiException(response.status,
+                    format("Could not log in to Rocket.Chat as {0}, server answered {1}: {2}", user, response.status, response.error()),
+                    response.rateLimitReset);
+        }
+        JsonObject data = response.json().getAsJsonObject("data");
+        if(data == null || !data.has("userId") || !data.has("authToken")) {
+            throw new IOException(format("Rocket.Chat login of {0} returned no auth token", user));
+        }
+        this.credentials = new Credentials(data.get("userId").getAsString(), data.get("authToken").getAsString());
+        logins.incrementAndGet();
+        return this.credentials;
+    }
+
+    private Response post(String method, byte[] body, Credentials credentials) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(apiUrl + method).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestProperty("Accept", "application/json");
+        if(credentials != null) {
+            connection.setRequestProperty("X-User-Id", credentials.userId);
+            connection.setRequestProperty("X-Auth-Token", credentials.authToken);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] responseBody = new byte[0];
+        if(in != null) {
+            // reading to the end and closing hands the connection back to the keep-alive cache
+            try (InputStream stream = in) {
+                responseBody = ByteStreams.toByteArray(stream);
+            }
+        }
+        return new Response(status, responseBody,
+                NumberUtils.toLong(connection.getHeaderField("X-RateLimit-Remaining"), -1),
+                NumberUtils.toLong(connection.getHeaderField("X-RateLimit-Reset"), -1));
+    }
+
+    static JsonObject payload(String room, Message msg) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("channel", channel(room));
+        payload.addProperty("text", msg.getText());
+        Attachment[] attachments = msg.getAttachments();
+        if(attachments != null) {
+            JsonArray array = new JsonArray();
+            for (Attachment attachment : attachments) {
+                JsonObject json = new JsonObject();
+                json.addProperty("title", attachment.getTitle());
+                json.addProperty("title_link", attachment.getTitleLink());
+                json.addProperty("text", attachment.getText());
+                json.addProperty("color", attachment.getColor());
+                if(attachment.getFields() != null) {
+                    JsonArray fields = new JsonArray();
+                    for (AttachmentField field : attachment.getFields()) {
+                        JsonObject fieldJson = new JsonObject();
+                        fieldJson.addProperty("short", field.isShort());
+                        fieldJson.addProperty("title", field.getTitle());
+                        fieldJson.addProperty("value", field.getValue());
+                        fields.add(fieldJson);
+                    }
+                    json.add("fields", fields);
+                }
+                array.add(json);
+            }
+            payload.add("attachments", array);
+        }
+        return payload;
+    }
+
+    // rooms are configured by name, private groups and direct messages may be given with their own prefix
+    static String channel(String room) {
+        return room.startsWith("#") || room.startsWith("@") ? room : "#" + room;
+    }
+
+    // accepts the server root as well as urls ending in /api or /api/v1
+    static String apiUrl(String serverUrl) {
+        String url = StringUtils.removeEnd(serverUrl.trim(), "/");
+        if(url.endsWith("/api/v1")) {
+            return url + "/";
+        }
+        if(url.endsWith("/api")) {
+            return url + "/v1/";
+        }
+        return url + "/api/v1/";
+    }
+
+    private static class Credentials {
+        private final String userId;
+        private final String authToken;
+
+        Credentials(String userId, String authToken) {
+            this.userId = userId;
+            this.authToken = authToken;
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final byte[] body;
+        private final long rateLimitRemaining;
+        private final long rateLimitReset;
+
+        Response(int status, byte[] body, long rateLimitRemaining, long rateLimitReset) {
+            this.status = status;
+            this.body = body;
+            this.rateLimitRemaining = rateLimitRemaining;
+            this.rateLimitReset = rateLimitReset;
+        }
+
+        boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+
+        JsonObject json() throws IOException {
+            try {
+                JsonElement element = new JsonParser().parse(new String(body, Charsets.UTF_8));
+                if(element.isJsonObject()) {
+                    return element.getAsJsonObject();
+                }
+            }
+            catch (RuntimeException e) {
+                // reported below
+            }
+            throw new IOException(format("Unexpected response from Rocket.Chat: {0}", StringUtils.abbreviate(new String(body, Charsets.UTF_8), 200)));
+        }
+
+        String error() {
+            try {
+                JsonObject json = json();
+                if(json.has("error")) {
+                    return json.get("error").getAsString();
+                }
+                if(json.has("message")) {
+                    return json.get("message").getAsString();
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                // not json, use the raw body
+            }
+            return StringUtils.abbreviate(new String(body, Charsets.UTF_8), 200);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A few {@link StringBuilder}s shared by everything that renders messages. Deliveries may run on a virtual thread each,
+ * so a builder per thread would rarely be reused; the pool is a fixed array of slots instead, taken and returned with
+ * one atomic operation and no allocation. When every slot is taken a new builder is made, and builders which grew past
+ * {@link #MAX_RETAINED_CAPACITY} are not kept.
+ */
+final class StringBuilderPool {
+    static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private final AtomicReferenceArray<StringBuilder> slots;
+    private final int initialCapacity;
+
+    StringBuilderPool(int size, int initialCapacity) {
+        this.slots = new AtomicReferenceArray<>(size);
+        this.initialCapacity = initialCapacity;
+    }
+
+    StringBuilder acquire() {
+        for (int i = 0; i < slots.length(); i++) {
+            if(slots.get(i) != null) {
+                StringBuilder pooled = slots.getAndSet(i, null);
+                if(pooled != null) {
+                    return pooled;
+                }
+            }
+        }
+        return new StringBuilder(initialCapacity);
+    }
+
+    void release(StringBuilder builder) {
+        if(builder.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        builder.setLength(0);
+        for (int i = 0; i < slots.length(); i++) {
+            if(slots.get(i) == null && slots.compareAndSet(i, null, builder)) {
+                return;
+            }
+        }
+    }
+}
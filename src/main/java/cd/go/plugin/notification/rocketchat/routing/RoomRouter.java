@@ -0,0 +1,207 @@
+package cd.go.plugin.notification.rocketchat.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the rooms a stage notification is posted to, from {@link RoutingRule}s compiled into an index: rules for an
+ * exact pipeline name sit in a hash map, rules with a glob or regex sit in a trie keyed by the literal start of their
+ * pattern. A lookup walks the pipeline name through the trie once and only tests the patterns met on the way, so its
+ * cost depends on the name and the rules that could match it, not on the number of rules.
+ * <p>
+ * A notification goes to the rooms of every matching rule, in rule order, or to the default room when no rule matches.
+ * Decisions are cached per group, pipeline and stage; a router is immutable otherwise and is replaced when the
+ * settings change, which drops the cache with it.
+ */
+public class RoomRouter {
+    static final int MAX_CACHED_ROUTES = 10000;
+
+    private final String rulesText;
+    private final String defaultRoom;
+    private final List<RoutingRule> rules;
+    private final Map<String, int[]> exact = new HashMap<>();
+    private final Node trie = new Node();
+    private final Map<RouteKey, List<String>> cache = new ConcurrentHashMap<>();
+
+    private RoomRouter(String rulesText, String defaultRoom, List<RoutingRule> rules) {
+        this.rulesText = rulesText;
+        this.defaultRoom = defaultRoom;
+        this.rules = rules;
+        Map<String, List<Integer>> byPipeline = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            RoutingRule rule = rules.get(i);
+            if(rule.isExactPipeline()) {
+                byPipeline.computeIfAbsent(rule.pipelinePrefix(), name -> new ArrayList<>()).add(i);
+            }
+            else {
+                trie.insert(rule.pipelinePrefix(), i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : byPipeline.entrySet()) {
+            exact.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        trie.freeze();
+    }
+
+    /**
+     * @throws IllegalArgumentException when the rules do not parse
+     */
+    public static RoomRouter compile(String rulesText, String defaultRoom) {
+        return new RoomRouter(rulesText, defaultRoom, RoutingRule.parseAll(rulesText));
+    }
+
+    /**
+     * @return whether this router was compiled from these settings
+     */
+    public boolean isFor(String rulesText, String defaultRoom) {
+        return Objects.equals(this.rulesText, rulesText) && Objects.equals(this.defaultRoom, defaultRoom);
+    }
+
+    /**
+     * @return rooms for a stage, never empty unless there is neither a matching rule nor a default room
+     */
+    public List<String> rooms(String group, String pipeline, String stage) {
+        RouteKey key = new RouteKey(group, pipeline, stage);
+        List<String> rooms = cache.get(key);
+        if(rooms == null) {
+            rooms = resolve(group, pipeline, stage);
+            if(cache.size() >= MAX_CACHED_ROUTES) {
+                // pipelines come and go, start over rather than track recency
+                cache.clear();
+            }
+            cache.put(key, rooms);
+        }
+        return rooms;
+    }
+
+    /**
+     * Same as {@link #rooms} without the cache.
+     */
+    public List<String> resolve(String group, String pipeline, String stage) {
+        int[] candidates = candidates(pipeline);
+        LinkedHashSet<String> rooms = new LinkedHashSet<>();
+        for (int index : candidates) {
+            RoutingRule rule = rules.get(index);
+            if(rule.matches(group, pipeline, stage)) {
+                rooms.addAll(rule.getRooms());
+            }
+        }
+        if(rooms.isEmpty()) {
+            return defaultRoom == null ? Collections.emptyList() : Collections.singletonList(defaultRoom);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(rooms));
+    }
+
+    public int ruleCount() {
+        return rules.size();
+    }
+
+    int cachedRoutes() {
+        return cache.size();
+    }
+
+    private int[] candidates(String pipeline) {
+        int[] exactRules = pipeline == null ? null : exact.get(pipeline);
+        int[] merged = exactRules == null ? Node.NONE : exactRules;
+        int sources = merged.length > 0 ? 1 : 0;
+        Node node = trie;
+        int length = pipeline == null ? 0 : pipeline.length();
+        for (int i = 0; ; i++) {
+            if(node.rules.length > 0) {
+                merged = concat(merged, node.rules);
+                sources++;
+            }
+            if(i == length || (node = node.child(pipeline.charAt(i))) == null) {
+                break;
+            }
+        }
+        if(sources > 1) {
+            // merged is a fresh copy here, restore rule order so the rooms of earlier rules come first
+            Arrays.sort(merged);
+        }
+        return merged;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if(a.length == 0) {
+            return b;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static class Node {
+        private static final int[] NONE = new int[0];
+
+        private Map<Character, Node> children = Collections.emptyMap();
+        private int[] rules = NONE;
+        private List<Integer> pending;
+
+        void insert(String prefix, int rule) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                if(node.children.isEmpty()) {
+                    node.children = new HashMap<>();
+                }
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            if(node.pending == null) {
+                node.pending = new ArrayList<>();
+            }
+            node.pending.add(rule);
+        }
+
+        void freeze() {
+            if(pending != null) {
+                rules = pending.stream().mapToInt(Integer::intValue).toArray();
+                pending = null;
+            }
+            for (Node child : children.values()) {
+                child.freeze();
+            }
+        }
+
+        Node child(char c) {
+            return children.get(c);
+        }
+    }
+
+    private static final class RouteKey {
+        private final String group;
+        private final String pipeline;
+        private final String stage;
+        private final int hash;
+
+        RouteKey(String group, String pipeline, String stage) {
+            this.group = group;
+            this.pipeline = pipeline;
+            this.stage = stage;
+            this.hash = Objects.hash(group, pipeline, stage);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof RouteKey)) {
+                return false;
+            }
+            RouteKey other = (RouteKey) o;
+            return Objects.equals(pipeline, other.pipeline) && Objects.equals(stage, other.stage) && Objects.equals(group, other.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package cd.go.plugin.notification.rocketchat.routing;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * One line of the routing rules setting:
+ * <pre>
+ * group=&lt;name&gt; pipeline=&lt;name, glob or /regex/&gt; stage=&lt;name&gt; =&gt; room[, room...]
+ * </pre>
+ * Every selector is optional, a missing one matches anything. Globs know {@code *} and {@code ?}, globs and regular
+ * expressions have to match the whole pipeline name. Blank lines and lines starting with {@code #} are ignored.
+ */
+public class RoutingRule {
+    private static final String ARROW = "=>";
+
+    private final String group;
+    private final String pipeline;
+    private final Pattern pipelinePattern;
+    // literal start of every pipeline name the pattern can match, used to index the rule
+    private final String pipelinePrefix;
+    private final String stage;
+    private final List<String> rooms;
+
+    private RoutingRule(String group, String pipeline, Pattern pipelinePattern, String pipelinePrefix, String stage, List<String> rooms) {
+        this.group = group;
+        this.pipeline = pipeline;
+        this.pipelinePattern = pipelinePattern;
+        this.pipelinePrefix = pipelinePrefix;
+        this.stage = stage;
+        this.rooms = rooms;
+    }
+
+    /**
+     * @return the rules in the order they are written
+     * @throws IllegalArgumentException naming the first line which is not a valid rule
+     */
+    public static List<RoutingRule> parseAll(String text) {
+        if(StringUtils.isBlank(text)) {
+            return Collections.emptyList();
+        }
+        List<RoutingRule> rules = new ArrayList<>();
+        String[] lines = text.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                rules.add(parse(line));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(format("Line {0}: {1}", i + 1, e.getMessage()), e);
+            }
+        }
+        return rules;
+    }
+
+    static RoutingRule parse(String line) {
+        int arrow = line.indexOf(ARROW);
+        if(arrow < 0) {
+            throw new IllegalArgumentException("expected '" + ARROW + " room' after the selectors");
+        }
+        LinkedHashSet<String> rooms = new LinkedHashSet<>();
+        for (String room : line.substring(arrow + ARROW.length()).split(",")) {
+            if(!room.trim().isEmpty()) {
+                rooms.add(room.trim());
+            }
+        }
+        if(rooms.isEmpty()) {
+            throw new IllegalArgumentException("no room after '" + ARROW + "'");
+        }
+
+        String group = null;
+        String pipeline = null;
+        String stage = null;
+        for (String selector : StringUtils.split(line.substring(0, arrow))) {
+            int equals = selector.indexOf('=');
+            String value = equals < 0 ? "" : selector.substring(equals + 1);
+            if(value.isEmpty()) {
+                throw new IllegalArgumentException("expected key=value but got '" + selector + "'");
+            }
+            switch (selector.substring(0, equals)) {
+                case "group":
+                    group = value;
+                    break;
+                case "pipeline":
+                    pipeline = value;
+                    break;
+                case "stage":
+                    stage = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown selector '" + selector.substring(0, equals) + "', use group, pipeline or stage");
+            }
+        }
+
+        List<String> roomList = Collections.unmodifiableList(new ArrayList<>(rooms));
+        if(pipeline == null) {
+            return new RoutingRule(group, null, null, "", stage, roomList);
+        }
+        if(pipeline.length() > 1 && pipeline.startsWith("/") && pipeline.endsWith("/")) {
+            String regex = pipeline.substring(1, pipeline.length() - 1);
+            try {
+                return new RoutingRule(group, pipeline, Pattern.compile(regex), regexPrefix(regex), stage, roomList);
+            }
+            catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("invalid pipeline regex " + pipeline + ": " + e.getDescription());
+            }
+        }
+        if(pipeline.indexOf('*') >= 0 || pipeline.indexOf('?') >= 0) {
+            return new RoutingRule(group, pipeline, globPattern(pipeline), globPrefix(pipeline), stage, roomList);
+        }
+        return new RoutingRule(group, pipeline, null, pipeline, stage, roomList);
+    }
+
+    private static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if(c == '*' || c == '?') {
+                if(i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if(literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String globPrefix(String glob) {
+        int i = 0;
+        while (i < glob.length() && glob.charAt(i) != '*' && glob.charAt(i) != '?') {
+            i++;
+        }
+        return glob.substring(0, i);
+    }
+
+    /**
+     * Leading plain characters of a regular expression, which every full match starts with. Only taken when there is
+     * no top level alternation; a character followed by a quantifier is not part of the prefix.
+     */
+    static String regexPrefix(String regex) {
+        if(hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        int start = regex.startsWith("^") ? 1 : 0;
+        int i = start;
+        while (i < regex.length() && isPlain(regex.charAt(i))) {
+            i++;
+        }
+        if(i < regex.length() && "?*{".indexOf(regex.charAt(i)) >= 0 && i > start) {
+            i--;
+        }
+        return regex.substring(start, i);
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\') {
+                i++;
+            }
+            else if(inClass) {
+                inClass = c != ']';
+            }
+            else if(c == '[') {
+                inClass = true;
+            }
+            else if(c == '(') {
+                depth++;
+            }
+            else if(c == ')') {
+                depth--;
+            }
+            else if(c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPlain(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    String pipelinePrefix() {
+        return pipelinePrefix;
+    }
+
+    boolean isExactPipeline() {
+        return pipeline != null && pipelinePattern == null;
+    }
+
+    boolean matches(String group, String pipeline, String stage) {
+        if(this.group != null && !this.group.equals(group)) {
+            return false;
+        }
+        if(this.stage != null && !this.stage.equals(stage)) {
+            return false;
+        }
+        if(this.pipeline == null) {
+            return true;
+        }
+        if(pipelinePattern == null) {
+            return this.pipeline.equals(pipeline);
+        }
+        return pipeline != null && pipelinePattern.matcher(pipeline).matches();
+    }
+
+    public List<String> getRooms() {
+        return rooms;
+    }
+}
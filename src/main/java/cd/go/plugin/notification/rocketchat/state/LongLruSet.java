@@ -0,0 +1,152 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+/**
+ * Fixed capacity set of {@code long} keys which forgets the least recently used key when full.
+ * <p>
+ * Everything lives in preallocated primitive arrays: a linear probing hash index pointing into a pool of nodes which are
+ * chained into a doubly linked recency list. Adding or touching a key does not allocate.
+ */
+class LongLruSet {
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long[] keys;
+    private final int[] prev;
+    private final int[] next;
+    // node index + 1, 0 marks an empty slot
+    private final int[] index;
+    private final int mask;
+
+    private int size;
+    private int head = NONE;
+    private int tail = NONE;
+
+    LongLruSet(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        // keep the load factor at or below 0.5
+        this.index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        this.mask = index.length - 1;
+    }
+
+    /**
+     * @return true when the key was not in the set; in both cases it becomes the most recently used key
+     */
+    boolean add(long key) {
+        int slot = slotOf(key);
+        if (index[slot] != 0) {
+            moveToFront(index[slot] - 1);
+            return false;
+        }
+        int node;
+        if (size == capacity) {
+            node = tail;
+            unlink(node);
+            removeSlot(slotOf(keys[node]));
+            // the slot for the new key may have moved while the evicted one was removed
+            slot = slotOf(key);
+        } else {
+            node = size++;
+        }
+        keys[node] = key;
+        index[slot] = node + 1;
+        linkFront(node);
+        return true;
+    }
+
+    boolean contains(long key) {
+        return index[slotOf(key)] != 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return keys from least to most recently used
+     */
+    long[] keysInAccessOrder() {
+        long[] ordered = new long[size];
+        int i = 0;
+        for (int node = tail; node != NONE; node = prev[node]) {
+            ordered[i++] = keys[node];
+        }
+        return ordered;
+    }
+
+    // slot holding the key, or the empty slot where it would go
+    private int slotOf(long key) {
+        int slot = spread(key) & mask;
+        while (index[slot] != 0 && keys[index[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void removeSlot(int slot) {
+        index[slot] = 0;
+        int hole = slot;
+        int probe = slot;
+        while (true) {
+            probe = (probe + 1) & mask;
+            if (index[probe] == 0) {
+                return;
+            }
+            int home = spread(keys[index[probe] - 1]) & mask;
+            // move the entry back into the hole unless its home slot lies cyclically in (hole, probe]
+            boolean stays = hole <= probe ? (hole < home && home <= probe) : (hole < home || home <= probe);
+            if (!stays) {
+                index[hole] = index[probe];
+                index[probe] = 0;
+                hole = probe;
+            }
+        }
+    }
+
+    private void moveToFront(int node) {
+        if (node != head) {
+            unlink(node);
+            linkFront(node);
+        }
+    }
+
+    private void linkFront(int node) {
+        prev[node] = NONE;
+        next[node] = head;
+        if (head != NONE) {
+            prev[head] = node;
+        }
+        head = node;
+        if (tail == NONE) {
+            tail = node;
+        }
+    }
+
+    private void unlink(int node) {
+        int before = prev[node];
+        int after = next[node];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+
+    private static int spread(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+}
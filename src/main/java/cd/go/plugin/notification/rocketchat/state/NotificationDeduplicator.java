@@ -0,0 +1,82 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the most recent stage notifications, so the ones GoCD sends again after a plugin reload or server restart
+ * are not posted twice. Memory use is fixed by the capacity, whatever the notification rate. Keys of new notifications
+ * are passed on to {@link StateSnapshots}, so they are remembered across restarts too.
+ */
+public class NotificationDeduplicator {
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private final LongLruSet seen;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile StateChanges changes = StateChanges.NONE;
+
+    public NotificationDeduplicator() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NotificationDeduplicator(int capacity) {
+        this.seen = new LongLruSet(capacity);
+    }
+
+    /**
+     * @return true the first time this pipeline run, stage run and state is seen
+     */
+    public boolean firstSeen(StageStatusRequest.Pipeline pipeline) {
+        long key = StageKeys.stageRun(pipeline);
+        boolean added;
+        synchronized (seen) {
+            added = seen.add(key);
+        }
+        (added ? misses : hits).incrementAndGet();
+        if (added) {
+            changes.notificationSeen(key);
+        }
+        return added;
+    }
+
+    void restore(long key) {
+        synchronized (seen) {
+            seen.add(key);
+        }
+    }
+
+    /**
+     * @return remembered keys from least to most recently used
+     */
+    long[] keys() {
+        synchronized (seen) {
+            return seen.keysInAccessOrder();
+        }
+    }
+
+    void track(StateChanges changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * @return duplicates suppressed so far
+     */
+    public long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return notifications seen for the first time so far
+     */
+    public long missCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (seen) {
+            return seen.size();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+
+/**
+ * 64-bit fingerprints of stage identities, hashed straight from the request fields without building key strings.
+ */
+public final class StageKeys {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL_MARKER = 0x9e3779b97f4a7c15L;
+
+    private StageKeys() {
+    }
+
+    /**
+     * Same identity as {@code MessageBuilderService#stageRelativeUri} plus the stage state.
+     */
+    public static long stageRun(StageStatusRequest.Pipeline pipeline) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, pipeline.name);
+        hash = mix(hash, pipeline.counter);
+        hash = mix(hash, pipeline.stage.name);
+        hash = mix(hash, pipeline.stage.counter);
+        hash = mix(hash, pipeline.stage.state);
+        return finish(hash);
+    }
+
+    static long mix(long hash, String value) {
+        if (value == null) {
+            return (hash ^ NULL_MARKER) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // field separator, so "ab"+"c" and "a"+"bc" differ
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    // murmur3 fmix64, spreads the FNV state over all bits
+    static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
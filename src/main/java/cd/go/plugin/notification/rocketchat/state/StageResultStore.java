@@ -0,0 +1,233 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Last known result of every stage, by pipeline and stage name, to tell a stage that broke from one that is still red.
+ * <p>
+ * A stage is identified by a 64-bit fingerprint of its names and its state is packed into one {@code long}: pipeline
+ * counter, stage counter and result. Both live in open addressing tables of {@link AtomicLongArray}s, 16 bytes per slot
+ * at a load factor of at most one half, so 50,000 stages take about 2 MB. Reads do not lock; updates are serialized,
+ * and a growing table is built aside and published in one write.
+ * <p>
+ * Counters are kept so a notification which arrives after a newer run of the same stage does not flip the result back.
+ * Recorded results are passed on to {@link StateSnapshots}, which restores them after a restart.
+ */
+public class StageResultStore {
+    public enum Transition {
+        /** failed after passing, or with no earlier result */
+        BROKE,
+        STILL_FAILING,
+        FIXED,
+        STILL_PASSING,
+        /** older than the last recorded run */
+        STALE,
+        /** not a passed or failed result */
+        IGNORED
+    }
+
+    public static final byte PASSED = 1;
+    public static final byte FAILED = 2;
+    static final int INITIAL_CAPACITY = 1 << 12;
+    // beyond that many stages the store starts over rather than grow without bound
+    static final int MAX_SIZE = 1 << 20;
+    // key 0 marks an empty slot, a stage hashing to it is stored under this one instead
+    private static final long ZERO_KEY = 0x5bd1e9955bd1e995L;
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private volatile StateChanges changes = StateChanges.NONE;
+    private int size;
+
+    public static byte resultOf(String state) {
+        if("Passed".equalsIgnoreCase(state)) {
+            return PASSED;
+        }
+        if("Failed".equalsIgnoreCase(state)) {
+            return FAILED;
+        }
+        return 0;
+    }
+
+    /**
+     * Records the result of a stage run.
+     *
+     * @param result {@link #PASSED} or {@link #FAILED}, anything else is {@link Transition#IGNORED}
+     */
+    public Transition record(String pipeline, long pipelineCounter, String stage, long stageCounter, byte result) {
+        if(result != PASSED && result != FAILED) {
+            return Transition.IGNORED;
+        }
+        long key = key(pipeline, stage);
+        long value = pack(pipelineCounter, stageCounter, result);
+        long previous = put(key, value);
+        if(previous != 0 && run(value) < run(previous)) {
+            return Transition.STALE;
+        }
+        // outside the lock, replaying keeps the newest run whatever order the changes are logged in
+        changes.stageResult(key, value);
+        return transition(resultIn(previous), result);
+    }
+
+    /**
+     * Puts a recorded entry back, unless the stage has a newer run already.
+     */
+    void restore(long key, long value) {
+        if(key != 0 && (resultIn(value) == PASSED || resultIn(value) == FAILED)) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * @return keys and values of all stages, interleaved
+     */
+    synchronized long[] entries() {
+        Table current = table;
+        long[] entries = new long[size * 2];
+        int i = 0;
+        for (int slot = 0; slot < current.capacity && i < entries.length; slot++) {
+            long key = current.keys.get(slot);
+            if(key != 0) {
+                entries[i++] = key;
+                entries[i++] = current.values.get(slot);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Grows the table ahead of putting back that many more entries.
+     */
+    synchronized void reserve(int entries) {
+        Table current = table;
+        int capacity = current.capacity;
+        while (capacity < MAX_SIZE * 2 && (size + (long) entries) * 2 > capacity) {
+            capacity *= 2;
+        }
+        if(capacity > current.capacity) {
+            table = current.resize(capacity);
+        }
+    }
+
+    void track(StateChanges changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * Stores the value unless the stage has a newer run.
+     *
+     * @return the value before, 0 when the stage was not known
+     */
+    private synchronized long put(long key, long value) {
+        Table current = table;
+        int slot = current.slotOf(key);
+        long previous = current.values.get(slot);
+        if(current.keys.get(slot) == key) {
+            if(run(value) >= run(previous)) {
+                current.values.set(slot, value);
+            }
+            return previous;
+        }
+        if(size + 1 > MAX_SIZE) {
+            clear();
+            current = table;
+            slot = current.slotOf(key);
+        }
+        else if((size + 1) * 2 > current.capacity) {
+            current = current.resize(current.capacity * 2);
+            table = current;
+            slot = current.slotOf(key);
+        }
+        // value before key, a reader which finds the key finds its value
+        current.values.set(slot, value);
+        current.keys.set(slot, key);
+        size++;
+        return 0;
+    }
+
+    /**
+     * @return the last recorded result, {@link #PASSED}, {@link #FAILED} or 0 when there is none
+     */
+    public byte lastResult(String pipeline, String stage) {
+        long key = key(pipeline, stage);
+        Table current = table;
+        int slot = current.slotOf(key);
+        return current.keys.get(slot) == key ? resultIn(current.values.get(slot)) : 0;
+    }
+
+    public boolean isBroken(String pipeline, String stage) {
+        return lastResult(pipeline, stage) == FAILED;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        table = new Table(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private static Transition transition(byte previous, byte result) {
+        if(result == FAILED) {
+            return previous == FAILED ? Transition.STILL_FAILING : Transition.BROKE;
+        }
+        return previous == FAILED ? Transition.FIXED : Transition.STILL_PASSING;
+    }
+
+    static long key(String pipeline, String stage) {
+        long hash = StageKeys.finish(StageKeys.mix(StageKeys.mix(0xcbf29ce484222325L, pipeline), stage));
+        return hash == 0 ? ZERO_KEY : hash;
+    }
+
+    // pipeline counter in the upper 32 bits, then 24 bits of stage counter and 8 bits of result
+    static long pack(long pipelineCounter, long stageCounter, byte result) {
+        return (Math.min(pipelineCounter, 0xffffffffL) << 32) | (Math.min(stageCounter, 0xffffffL) << 8) | (result & 0xff);
+    }
+
+    private static long run(long value) {
+        return value >>> 8;
+    }
+
+    private static byte resultIn(long value) {
+        return (byte) value;
+    }
+
+    private static class Table {
+        private final int capacity;
+        private final int mask;
+        private final AtomicLongArray keys;
+        private final AtomicLongArray values;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicLongArray(capacity);
+        }
+
+        /**
+         * @return the slot holding the key, or the empty slot it would go to
+         */
+        int slotOf(long key) {
+            int slot = (int) key & mask;
+            long found;
+            while ((found = keys.get(slot)) != 0 && found != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        Table resize(int newCapacity) {
+            Table grown = new Table(newCapacity);
+            for (int i = 0; i < capacity; i++) {
+                long key = keys.get(i);
+                if(key != 0) {
+                    int slot = grown.slotOf(key);
+                    grown.values.set(slot, values.get(i));
+                    grown.keys.set(slot, key);
+                }
+            }
+            return grown;
+        }
+    }
+}
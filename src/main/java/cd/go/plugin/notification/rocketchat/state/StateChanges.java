@@ -0,0 +1,20 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+/**
+ * Receives every change of the in-memory state which should survive a restart.
+ */
+interface StateChanges {
+    StateChanges NONE = new StateChanges() {
+        @Override
+        public void stageResult(long key, long value) {
+        }
+
+        @Override
+        public void notificationSeen(long key) {
+        }
+    };
+
+    void stageResult(long key, long value);
+
+    void notificationSeen(long key);
+}
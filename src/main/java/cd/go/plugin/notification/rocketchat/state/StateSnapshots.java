@@ -0,0 +1,464 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps the last stage results and the notifications already seen across plugin reloads and server restarts.
+ * <p>
+ * State is a full snapshot plus a log of the changes since. Every change is appended to the memory-mapped log as a
+ * fixed size record {@code [int type][int checksum][long key][long value]}, type written last, so a record torn by a
+ * crash is either invisible or fails its checksum and ends the replay. When the log is full, changes roll over to a
+ * second log and a new snapshot {@code [header][stage keys and values][seen keys][crc32]} is written aside on a
+ * background thread and renamed over the old one, so the thread logging a change never waits for the disk. Snapshot
+ * and logs carry a generation: the rolled log is one ahead of the snapshot until the new snapshot is written, and a
+ * crash in between replays both logs. Should the second log fill up too before that, further changes are only caught
+ * by the next snapshot, which follows right away.
+ * <p>
+ * Restoring maps both files and puts the entries straight back into the stores, without parsing or allocating per entry.
+ * Checkpoints force the log to disk; between them a crash of the process loses nothing, a crash of the machine loses the
+ * changes since the last one.
+ */
+public class StateSnapshots implements StateChanges, Closeable {
+    private static final Logger LOG = Logger.getLoggerFor(StateSnapshots.class);
+
+    public static final int DEFAULT_LOG_RECORDS = 1 << 16;
+    static final String SNAPSHOT_FILE = "state.snapshot";
+    static final String LOG_FILE = "state.log";
+    static final String SECOND_LOG_FILE = "state.log.1";
+
+    private static final int MAGIC = 0x52435354;
+    private static final int VERSION = 1;
+    // magic + version + generation + stage count + seen count
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    // magic + version + generation
+    static final int LOG_HEADER_SIZE = 4 + 4 + 8;
+    // type + checksum + key + value
+    static final int RECORD_SIZE = 4 + 4 + 8 + 8;
+    private static final int TYPE_STAGE_RESULT = 1;
+    private static final int TYPE_SEEN = 2;
+
+    private final File directory;
+    private final StageResultStore results;
+    private final NotificationDeduplicator deduplicator;
+    private final int logRecords;
+    // held while a snapshot is written, apart from the lock on this which appending takes
+    final Object compaction = new Object();
+
+    private MappedByteBuffer log;
+    // the other log, holding the changes before the roll over until the snapshot is written
+    private MappedByteBuffer spare;
+    private int logPosition;
+    // of the snapshot
+    private long generation;
+    // changes go to a log one generation ahead of the snapshot, the spare log is still needed
+    private boolean compacting;
+    // changes were dropped while both logs were full
+    private boolean missed;
+    private boolean dirty;
+    private boolean closed;
+    private boolean checkpointing;
+    private int restored;
+    private ScheduledExecutorService timer;
+
+    private StateSnapshots(File directory, StageResultStore results, NotificationDeduplicator deduplicator, int logRecords) {
+        this.directory = directory;
+        this.results = results;
+        this.deduplicator = deduplicator;
+        this.logRecords = logRecords;
+    }
+
+    public static StateSnapshots open(File directory, StageResultStore results, NotificationDeduplicator deduplicator) throws IOException {
+        return open(directory, results, deduplicator, DEFAULT_LOG_RECORDS);
+    }
+
+    /**
+     * Restores the state saved in the directory into the stores, then logs their changes.
+     */
+    public static StateSnapshots open(File directory, StageResultStore results, NotificationDeduplicator deduplicator, int logRecords) throws IOException {
+        if (logRecords < 1) {
+            throw new IllegalArgumentException("State log needs room for at least 1 record");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create state directory " + directory);
+        }
+        StateSnapshots snapshots = new StateSnapshots(directory, results, deduplicator, logRecords);
+        long start = System.nanoTime();
+        synchronized (snapshots) {
+            snapshots.restore();
+        }
+        // a crash while compacting left two logs, fold them into a snapshot before logging more
+        snapshots.compact();
+        LOG.info(format("Restored {0} state entries from {1} in {2} ms", snapshots.restored, directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        results.track(snapshots);
+        deduplicator.track(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * Checkpoints every {@code periodMillis} on a daemon thread until closed.
+     */
+    public synchronized void checkpointEvery(long periodMillis) {
+        if (!closed && !checkpointing) {
+            checkpointing = true;
+            timer().scheduleWithFixedDelay(this::checkpointQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forces logged changes to disk, and writes a new snapshot once the log is half full.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (this) {
+            if (log == null) {
+                return;
+            }
+            if (!compacting && loggedRecords() * 2 > logRecords) {
+                roll();
+            }
+            else if (dirty) {
+                log.force();
+                dirty = false;
+            }
+        }
+        compact();
+    }
+
+    /**
+     * @return entries put back into the stores when opened
+     */
+    public synchronized int restoredCount() {
+        return restored;
+    }
+
+    synchronized int loggedRecords() {
+        return (logPosition - LOG_HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    @Override
+    public void stageResult(long key, long value) {
+        append(TYPE_STAGE_RESULT, key, value);
+    }
+
+    @Override
+    public void notificationSeen(long key) {
+        append(TYPE_SEEN, key, 0);
+    }
+
+    /**
+     * Waits for a snapshot being written, and writes one if changes were dropped while it was.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            results.track(StateChanges.NONE);
+            deduplicator.track(StateChanges.NONE);
+            closed = true;
+            stopping = timer;
+            timer = null;
+        }
+        if (stopping != null) {
+            // periodic checkpoints are cancelled, a compaction already submitted still runs
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        compactQuietly();
+        synchronized (this) {
+            if (log != null) {
+                log.force();
+                log = null;
+            }
+        }
+    }
+
+    private synchronized void append(int type, long key, long value) {
+        if (log == null || closed) {
+            return;
+        }
+        try {
+            if (logPosition + RECORD_SIZE > log.capacity()) {
+                if (compacting) {
+                    if (!missed) {
+                        LOG.warn(format("State log in {0} filled up while a snapshot is written, changes will be saved by the next snapshot", directory));
+                        missed = true;
+                    }
+                    return;
+                }
+                roll();
+                timer().execute(this::compactQuietly);
+            }
+            writeRecord(logPosition, type, key, value);
+            logPosition += RECORD_SIZE;
+            dirty = true;
+        }
+        catch (Exception e) {
+            LOG.error("Could not save plugin state, it will not be restored after a restart", e);
+            log = null;
+        }
+    }
+
+    private ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-state-%d").build());
+        }
+        return timer;
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        }
+        catch (Exception e) {
+            LOG.error("Could not checkpoint plugin state", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        }
+        catch (Exception e) {
+            LOG.error("Could not save plugin state, it will not be restored after a restart", e);
+            synchronized (this) {
+                log = null;
+            }
+        }
+    }
+
+    /**
+     * Continues logging in the spare log, one generation ahead of the snapshot.
+     */
+    private void roll() {
+        MappedByteBuffer rolled = spare;
+        spare = log;
+        log = rolled;
+        compacting = true;
+        resetLog(generation + 1);
+    }
+
+    /**
+     * Writes the snapshot the rolled log continues from, then the spare log is free again. Stores are read without the
+     * lock on this, changes logged meanwhile are in the rolled log and replaying them again does not hurt.
+     */
+    private void compact() throws IOException {
+        synchronized (compaction) {
+            while (true) {
+                long next;
+                synchronized (this) {
+                    if (log == null || !compacting) {
+                        return;
+                    }
+                    next = generation + 1;
+                }
+                writeSnapshot(next, results.entries(), deduplicator.keys());
+                synchronized (this) {
+                    generation = next;
+                    compacting = false;
+                    if (!missed) {
+                        return;
+                    }
+                    // the snapshot may have been read before the dropped changes, take another
+                    missed = false;
+                    roll();
+                }
+            }
+        }
+    }
+
+    private void restore() throws IOException {
+        File snapshotFile = new File(directory, SNAPSHOT_FILE);
+        boolean damaged = false;
+        if (snapshotFile.isFile()) {
+            try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r"); FileChannel channel = raf.getChannel()) {
+                MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!restoreSnapshot(snapshot)) {
+                    LOG.warn(format("State snapshot {0} is damaged, starting without the state saved in it", snapshotFile));
+                    restored = 0;
+                    damaged = true;
+                }
+            }
+        }
+
+        MappedByteBuffer first = mapLog(new File(directory, LOG_FILE));
+        MappedByteBuffer second = mapLog(new File(directory, SECOND_LOG_FILE));
+        if (damaged) {
+            // the logs continue a snapshot which is lost, replace it with an empty one no log belongs to
+            generation = Math.max(logGeneration(first), logGeneration(second)) + 1;
+            writeSnapshot(generation, new long[0], new long[0]);
+        }
+        MappedByteBuffer current = logOf(generation, first, second);
+        MappedByteBuffer rolled = logOf(generation + 1, first, second);
+        if (current != null) {
+            log = current;
+            replayLog();
+        }
+        if (rolled != null) {
+            log = rolled;
+            replayLog();
+            compacting = true;
+        }
+        if (log == null) {
+            log = first;
+            resetLog(generation);
+            log.force();
+        }
+        spare = log == first ? second : first;
+    }
+
+    private MappedByteBuffer mapLog(File file) throws IOException {
+        int size = LOG_HEADER_SIZE + logRecords * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+    }
+
+    private static MappedByteBuffer logOf(long generation, MappedByteBuffer first, MappedByteBuffer second) {
+        if (logGeneration(first) == generation) {
+            return first;
+        }
+        return logGeneration(second) == generation ? second : null;
+    }
+
+    /**
+     * @return generation of the log, -1 when it has none
+     */
+    private static long logGeneration(ByteBuffer log) {
+        return hasHeader(log) ? log.getLong(8) : -1;
+    }
+
+    private boolean restoreSnapshot(ByteBuffer snapshot) {
+        if (snapshot.capacity() < SNAPSHOT_HEADER_SIZE + 4 || snapshot.getInt(0) != MAGIC || snapshot.getInt(4) != VERSION) {
+            return false;
+        }
+        int stages = snapshot.getInt(16);
+        int seen = snapshot.getInt(20);
+        long end = SNAPSHOT_HEADER_SIZE + 16L * stages + 8L * seen;
+        if (stages < 0 || seen < 0 || end + 4 != snapshot.capacity() || snapshot.getInt((int) end) != checksum(snapshot, 0, (int) end)) {
+            return false;
+        }
+        generation = snapshot.getLong(8);
+        results.reserve(stages);
+        int position = SNAPSHOT_HEADER_SIZE;
+        for (int i = 0; i < stages; i++, position += 16) {
+            results.restore(snapshot.getLong(position), snapshot.getLong(position + 8));
+        }
+        for (int i = 0; i < seen; i++, position += 8) {
+            deduplicator.restore(snapshot.getLong(position));
+        }
+        restored = stages + seen;
+        return true;
+    }
+
+    private static boolean hasHeader(ByteBuffer log) {
+        return log.getInt(0) == MAGIC && log.getInt(4) == VERSION;
+    }
+
+    private void replayLog() {
+        int position = LOG_HEADER_SIZE;
+        while (position + RECORD_SIZE <= log.capacity()) {
+            int type = log.getInt(position);
+            long key = log.getLong(position + 8);
+            long value = log.getLong(position + 16);
+            if (type == 0) {
+                break;
+            }
+            if (log.getInt(position + 4) != checksum(type, key, value)) {
+                LOG.warn(format("State log in {0} has a torn record at offset {1}, ignoring the rest of it", directory, position));
+                break;
+            }
+            if (type == TYPE_STAGE_RESULT) {
+                results.restore(key, value);
+            }
+            else if (type == TYPE_SEEN) {
+                deduplicator.restore(key);
+            }
+            restored++;
+            position += RECORD_SIZE;
+        }
+        logPosition = position;
+        clearRecord(logPosition);
+    }
+
+    private void writeSnapshot(long generation, long[] stages, long[] seen) throws IOException {
+        int end = SNAPSHOT_HEADER_SIZE + 8 * stages.length + 8 * seen.length;
+
+        File temporary = new File(directory, SNAPSHOT_FILE + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temporary, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(end + 4);
+            MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_WRITE, 0, end + 4);
+            snapshot.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(stages.length / 2).putInt(seen.length);
+            snapshot.asLongBuffer().put(stages).put(seen);
+            snapshot.putInt(end, checksum(snapshot, 0, end));
+            snapshot.force();
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void resetLog(long generation) {
+        log.putInt(0, MAGIC);
+        log.putInt(4, VERSION);
+        log.putLong(8, generation);
+        logPosition = LOG_HEADER_SIZE;
+        clearRecord(logPosition);
+        dirty = true;
+    }
+
+    private void writeRecord(int position, int type, long key, long value) {
+        log.putLong(position + 8, key);
+        log.putLong(position + 16, value);
+        log.putInt(position + 4, checksum(type, key, value));
+        clearRecord(position + RECORD_SIZE);
+        // publish the record only once it is complete
+        log.putInt(position, type);
+    }
+
+    private void clearRecord(int position) {
+        if (position + 4 <= log.capacity()) {
+            log.putInt(position, 0);
+        }
+    }
+
+    // snapshots are written on the compacting thread, a CRC32 each
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset);
+        body.limit(offset + length);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(int type, long key, long value) {
+        long hash = StageKeys.finish(key * 0x100000001b3L ^ StageKeys.finish(value + type));
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -5,34 +5,46 @@ import com.google.gson.internal.bind.util.ISO8601Utils;
 
 import java.lang.reflect.Type;
 import java.sql.Timestamp;
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.Date;
 import java.util.Locale;
 
+/**
+ * Immutable and thread-safe, so one instance can back a Gson shared by all request threads without locking.
+ * <p>
+ * Timestamps in GoCD's own {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ} format, which is every timestamp GoCD sends, are parsed
+ * by hand without allocating or throwing. Anything else goes through the configured pattern and then the ISO 8601
+ * parser, as before.
+ */
 public class DefaultDateTypeAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
-    private final DateFormat enUsFormat;
-    private final DateFormat localFormat;
+    public static final String GOCD_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
-    public DefaultDateTypeAdapter(String datePattern) {
-        this(new SimpleDateFormat(datePattern, Locale.US), new SimpleDateFormat(datePattern));
-    }
+    // "2016-04-06T12:50:03.317+0000"
+    private static final int GOCD_LENGTH = 28;
+    private static final long NOT_PARSED = Long.MIN_VALUE;
 
-    DefaultDateTypeAdapter(DateFormat enUsFormat, DateFormat localFormat) {
-        this.enUsFormat = enUsFormat;
-        this.localFormat = localFormat;
+    private final String datePattern;
+    private final DateTimeFormatter formatter;
+    private final boolean fastPath;
+
+    public DefaultDateTypeAdapter(String datePattern) {
+        this.datePattern = datePattern;
+        this.formatter = DateTimeFormatter.ofPattern(datePattern, Locale.US);
+        this.fastPath = GOCD_PATTERN.equals(datePattern);
     }
 
-    // These methods need to be synchronized since JDK DateFormat classes are not thread-safe
-    // See issue 162
     @Override
     public JsonElement serialize(Date src, Type typeOfSrc, JsonSerializationContext context) {
-        synchronized (localFormat) {
-            String dateFormatAsString = enUsFormat.format(src);
-            return new JsonPrimitive(dateFormatAsString);
-        }
+        // the zone is looked up on every call, like SimpleDateFormat did
+        return new JsonPrimitive(formatter.format(src.toInstant().atZone(ZoneId.systemDefault())));
     }
 
     @Override
@@ -41,7 +53,7 @@ public class DefaultDateTypeAdapter implements JsonSerializer<Date>, JsonDeseria
         if (!(json instanceof JsonPrimitive)) {
             throw new JsonParseException("The date should be a string value");
         }
-        Date date = deserializeToDate(json);
+        Date date = deserializeToDate(json.getAsString());
         if (typeOfT == Date.class) {
             return date;
         } else if (typeOfT == Timestamp.class) {
@@ -53,32 +65,99 @@ public class DefaultDateTypeAdapter implements JsonSerializer<Date>, JsonDeseria
         }
     }
 
-    private Date deserializeToDate(JsonElement json) {
-        synchronized (localFormat) {
-            if (json.getAsString().isEmpty()) {
-                return null;
-            }
-            try {
-                return localFormat.parse(json.getAsString());
-            } catch (ParseException ignored) {
-            }
-            try {
-                return enUsFormat.parse(json.getAsString());
-            } catch (ParseException ignored) {
+    public Date deserializeToDate(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (fastPath) {
+            long millis = parseGoCdMillis(value);
+            if (millis != NOT_PARSED) {
+                return new Date(millis);
             }
-            try {
-                return ISO8601Utils.parse(json.getAsString(), new ParsePosition(0));
-            } catch (ParseException e) {
-                throw new JsonSyntaxException(json.getAsString(), e);
+        }
+        try {
+            return new Date(toEpochMillis(formatter.parse(value)));
+        } catch (DateTimeException ignored) {
+            // not in the pattern, or parsed without the fields of a point in time, like a pattern without the time
+        }
+        try {
+            return ISO8601Utils.parse(value, new ParsePosition(0));
+        } catch (ParseException e) {
+            throw new JsonSyntaxException(value, e);
+        }
+    }
+
+    /**
+     * @return epoch millis of a {@code yyyy-MM-dd'T'HH:mm:ss.SSS+hhmm} timestamp, or {@link #NOT_PARSED} for anything
+     * else, including out of range fields, which are left to the lenient parsers
+     */
+    static long parseGoCdMillis(String value) {
+        if (value.length() != GOCD_LENGTH
+                || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != '.') {
+            return NOT_PARSED;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = digits(value, 20, 3);
+        char sign = value.charAt(23);
+        int offsetHours = digits(value, 24, 2);
+        int offsetMinutes = digits(value, 26, 2);
+        if ((year | month | day | hour | minute | second | millis | offsetHours | offsetMinutes) < 0
+                || (sign != '+' && sign != '-')
+                || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59 || offsetHours > 23 || offsetMinutes > 59) {
+            return NOT_PARSED;
+        }
+        long offsetSeconds = (offsetHours * 60L + offsetMinutes) * 60L * (sign == '-' ? -1 : 1);
+        long epochSeconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSeconds * 1000L + millis;
+    }
+
+    // non-negative value of count ASCII digits, or -1
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
             }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar, see http://howardhinnant.github.io/date_algorithms.html
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static long toEpochMillis(TemporalAccessor parsed) {
+        if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return Instant.from(parsed).toEpochMilli();
         }
+        return LocalDateTime.from(parsed).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(DefaultDateTypeAdapter.class.getSimpleName());
-        sb.append('(').append(localFormat.getClass().getSimpleName()).append(')');
-        return sb.toString();
+        return DefaultDateTypeAdapter.class.getSimpleName() + '(' + datePattern + ')';
     }
-}
\ No newline at end of file
+}
@@ -20,12 +20,16 @@ import cd.go.plugin.notification.rocketchat.executors.GetViewRequestExecutor;
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.util.Properties;
 
 public class Util {
+    // overrides where the plugin keeps its durable state, relative paths are resolved against the GoCD server directory
+    public static final String DATA_DIRECTORY_PROPERTY = "rocketchat.plugin.data.dir";
+
     public static String readResource(String resourceFile) {
         try (InputStreamReader reader = new InputStreamReader(GetViewRequestExecutor.class.getResourceAsStream(resourceFile), Charsets.UTF_8)) {
             return CharStreams.toString(reader);
@@ -44,4 +48,12 @@ public class Util {
             throw new RuntimeException(e);
         }
     }
+
+    public static File pluginDataDirectory() {
+        String configured = System.getProperty(DATA_DIRECTORY_PROPERTY);
+        if (configured != null && !configured.trim().isEmpty()) {
+            return new File(configured.trim());
+        }
+        return new File("plugin-data", pluginId());
+    }
 }
@@ -0,0 +1,97 @@
+package cd.go.plugin.notification.rocketchat;
+
+import com.google.common.base.Ticker;
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.request.GoApiRequest;
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PluginRequestTest {
+    private GoApplicationAccessor accessor;
+    private FakeTicker ticker;
+    private PluginRequest pluginRequest;
+
+    @Before
+    public void setUp() {
+        accessor = mock(GoApplicationAccessor.class);
+        when(accessor.submit(any(GoApiRequest.class))).thenAnswer(invocation -> DefaultGoApiResponse.success("{\"room\": \"builds\"}"));
+        ticker = new FakeTicker();
+        pluginRequest = new PluginRequest(accessor, ticker, TimeUnit.SECONDS.toNanos(60), TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void shouldFetchSettingsOnceWithinTtl() throws Exception {
+        PluginSettings first = pluginRequest.getPluginSettings();
+        ticker.advance(59, TimeUnit.SECONDS);
+        PluginSettings second = pluginRequest.getPluginSettings();
+
+        assertThat(second, sameInstance(first));
+        assertThat(second.getRoom(), is("builds"));
+        verify(accessor, times(1)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldFetchSettingsAgainAfterTtl() throws Exception {
+        pluginRequest.getPluginSettings();
+        ticker.advance(61, TimeUnit.SECONDS);
+        pluginRequest.getPluginSettings();
+
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldFetchSettingsAgainAfterInvalidation() throws Exception {
+        pluginRequest.getPluginSettings();
+        pluginRequest.invalidatePluginSettings();
+        pluginRequest.getPluginSettings();
+
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldNotCacheSettingsFetchedBeforeTheServerSavesThem() throws Exception {
+        pluginRequest.getPluginSettings();
+        pluginRequest.invalidatePluginSettings();
+        // fetched after validating, before saving
+        pluginRequest.getPluginSettings();
+        when(accessor.submit(any(GoApiRequest.class))).thenAnswer(invocation -> DefaultGoApiResponse.success("{\"room\": \"deployments\"}"));
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        assertThat(pluginRequest.getPluginSettings().getRoom(), is("deployments"));
+        ticker.advance(10, TimeUnit.SECONDS);
+        PluginSettings cached = pluginRequest.getPluginSettings();
+        assertThat(pluginRequest.getPluginSettings(), sameInstance(cached));
+        verify(accessor, times(4)).submit(any(GoApiRequest.class));
+    }
+
+    @Test(expected = ServerRequestFailedException.class)
+    public void shouldFailWhenServerDoesNotReturnSettings() throws Exception {
+        when(accessor.submit(any(GoApiRequest.class))).thenReturn(new DefaultGoApiResponse(500));
+        pluginRequest.getPluginSettings();
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long amount, TimeUnit unit) {
+            nanos += unit.toNanos(amount);
+        }
+    }
+}
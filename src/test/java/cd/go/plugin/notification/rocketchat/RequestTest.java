@@ -0,0 +1,28 @@
+package cd.go.plugin.notification.rocketchat;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class RequestTest {
+    @Test
+    public void shouldFindEveryRequestByItsName() {
+        for (Request request : Request.values()) {
+            assertThat(Request.fromString(request.requestName()), is(request));
+        }
+    }
+
+    @Test
+    public void shouldIgnoreCaseOfRequestName() {
+        assertThat(Request.fromString("Stage-Status"), is(Request.REQUEST_STAGE_STATUS));
+        assertThat(Request.fromString("GO.PLUGIN-SETTINGS.GET-VIEW"), is(Request.PLUGIN_SETTINGS_GET_VIEW));
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownRequestName() {
+        assertThat(Request.fromString("go.cd.elastic-agent.create-agent"), is(nullValue()));
+        assertThat(Request.fromString(null), is(nullValue()));
+    }
+}
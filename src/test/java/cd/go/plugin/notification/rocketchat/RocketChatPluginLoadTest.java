@@ -0,0 +1,198 @@
+package cd.go.plugin.notification.rocketchat;
+
+import cd.go.plugin.notification.rocketchat.metrics.LatencyHistogram;
+import cd.go.plugin.notification.rocketchat.metrics.LatencySnapshot;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatStub;
+import cd.go.plugin.notification.rocketchat.utils.Util;
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.exceptions.UnhandledRequestTypeException;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.request.GoApiRequest;
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Drives {@link RocketChatPlugin#handle} from many threads with recorded stage status notifications, against a
+ * {@link RocketChatStub}, and reports the throughput and latency GoCD server threads see as well as how long it takes
+ * until every message arrived.
+ * <p>
+ * Every pipeline run sends Building and Failed for one pipeline and Passed for another which never broke, so one
+ * notification in three is posted. The defaults keep the test short, raise them with the {@code loadtest.threads} and
+ * {@code loadtest.runs} system properties, e.g. through {@code ./gradlew loadTest}.
+ */
+public class RocketChatPluginLoadTest {
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 8);
+    private static final int RUNS_PER_THREAD = Integer.getInteger("loadtest.runs", 150);
+    private static final long DELIVERY_TIMEOUT_SECONDS = 120;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RocketChatStub stub;
+    private RocketChatPlugin plugin;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(Util.DATA_DIRECTORY_PROPERTY, folder.newFolder().getAbsolutePath());
+        stub = RocketChatStub.start();
+        plugin = new RocketChatPlugin();
+        String settings = settings(stub.url());
+        plugin.initializeGoApplicationAccessor(new GoApplicationAccessor() {
+            @Override
+            public GoApiResponse submit(GoApiRequest request) {
+                return DefaultGoApiResponse.success(settings);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        stub.close();
+        System.clearProperty(Util.DATA_DIRECTORY_PROPERTY);
+    }
+
+    @Test
+    public void shouldPostEveryBrokenStage() throws Exception {
+        Report report = run(THREADS, RUNS_PER_THREAD);
+
+        assertThat(report.failedRequests, is(0));
+        assertThat(stub.postCount(), is(report.expectedPosts));
+    }
+
+    @Test
+    public void shouldPostEveryBrokenStageWhenRocketChatIsSlowAndFailing() throws Exception {
+        stub.latencyMillis(5).errorRate(0.05).rateLimitRate(0.02).rateLimitResetMillis(50);
+
+        Report report = run(Math.max(THREADS / 2, 1), RUNS_PER_THREAD / 3);
+
+        assertThat(report.failedRequests, is(0));
+        assertThat(stub.postCount(), is(report.expectedPosts));
+    }
+
+    private Report run(int threads, int runsPerThread) throws Exception {
+        // the first delivery applies the queue settings, wait for it so nothing is dropped by the default queue
+        handle(notification("warmup", 1, "Failed"));
+        awaitPosts(1);
+        int before = stub.postCount();
+
+        List<List<String>> notifications = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            List<String> bodies = new ArrayList<>();
+            for (int run = 1; run <= runsPerThread; run++) {
+                bodies.add(notification("load-" + thread + "-" + run, run, "Building"));
+                bodies.add(notification("load-" + thread + "-" + run, run, "Failed"));
+                bodies.add(notification("green-" + thread + "-" + run, run, "Passed"));
+            }
+            notifications.add(bodies);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> failures = new ArrayList<>();
+        for (List<String> bodies : notifications) {
+            failures.add(executor.submit(() -> {
+                start.await();
+                int failed = 0;
+                for (String body : bodies) {
+                    long requestStart = System.nanoTime();
+                    GoPluginApiResponse response = handle(body);
+                    latency.recordSince(requestStart);
+                    if(response.responseCode() != 200 || response.responseBody().contains("failure")) {
+                        failed++;
+                    }
+                }
+                return failed;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        Report report = new Report();
+        for (Future<Integer> failed : failures) {
+            report.failedRequests += failed.get();
+        }
+        long handled = System.nanoTime();
+        executor.shutdown();
+
+        report.expectedPosts = before + threads * runsPerThread;
+        awaitPosts(report.expectedPosts);
+        long delivered = System.nanoTime();
+
+        LatencySnapshot snapshot = latency.snapshot();
+        System.out.println(format("{0} threads, {1} notifications: {2} requests/s, handle p50 {3} us, p99 {4} us, max {5} us; " +
+                        "{6} messages delivered in {7} ms ({8} errors and {9} rate limited answers injected)",
+                threads, snapshot.getCount(), snapshot.getCount() * TimeUnit.SECONDS.toNanos(1) / Math.max(handled - started, 1),
+                snapshot.getP50Micros(), snapshot.getP99Micros(), snapshot.getMaxMicros(),
+                report.expectedPosts - before, TimeUnit.NANOSECONDS.toMillis(delivered - started), stub.errorCount(), stub.rateLimitedCount()));
+        return report;
+    }
+
+    private GoPluginApiResponse handle(String body) throws UnhandledRequestTypeException {
+        DefaultGoPluginApiRequest request = new DefaultGoPluginApiRequest(Constants.EXTENSION_TYPE, Constants.API_VERSION, Request.REQUEST_STAGE_STATUS.requestName());
+        request.setRequestBody(body);
+        return plugin.handle(request);
+    }
+
+    private void awaitPosts(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DELIVERY_TIMEOUT_SECONDS);
+        while (stub.postCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static String notification(String pipeline, int counter, String state) throws IOException {
+        String recorded = Resources.toString(Resources.getResource("payloads/stage-status-" + state.toLowerCase() + ".json"), Charsets.UTF_8);
+        JsonObject json = new JsonParser().parse(recorded).getAsJsonObject();
+        JsonObject pipelineJson = json.getAsJsonObject("pipeline");
+        pipelineJson.addProperty("name", pipeline);
+        pipelineJson.addProperty("counter", String.valueOf(counter));
+        pipelineJson.addProperty("label", String.valueOf(counter));
+        return json.toString();
+    }
+
+    private static String settings(String apiUrl) {
+        JsonObject settings = new JsonObject();
+        settings.addProperty("go_server_url", "https://gocd.example.com");
+        settings.addProperty("api_url", apiUrl);
+        settings.addProperty("api_user", "bot");
+        settings.addProperty("api_key", "secret");
+        settings.addProperty("room", "builds");
+        settings.addProperty("delivery_queue_capacity", "100000");
+        settings.addProperty("delivery_workers", "8");
+        settings.addProperty("delivery_overflow_policy", "caller_runs");
+        settings.addProperty("retry_max_attempts", "10");
+        settings.addProperty("retry_initial_backoff_ms", "10");
+        settings.addProperty("circuit_breaker_failure_threshold", "1000");
+        settings.addProperty("rate_limit_per_minute", "1000000");
+        settings.addProperty("rate_limit_burst", "10000");
+        return settings.toString();
+    }
+
+    private static class Report {
+        private int failedRequests;
+        private int expectedPosts;
+    }
+}
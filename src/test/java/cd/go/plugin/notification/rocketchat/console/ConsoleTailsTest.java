@@ -0,0 +1,171 @@
+package cd.go.plugin.notification.rocketchat.console;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import cd.go.plugin.notification.rocketchat.rocket.LinkBuilder;
+import com.google.common.base.Strings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ConsoleTailsTest {
+    private static final String STAGE_RUN = "up42/7/test/2";
+
+    private GoServerStub stub;
+    private ConsoleTails tails;
+    private PluginSettings settings;
+    private LinkBuilder links;
+    private StageStatusRequest.Pipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = GoServerStub.start();
+        tails = new ConsoleTails(2);
+        settings = new PluginSettings();
+        settings.setGoServerUrl(stub.url());
+        settings.setConsoleTailBytes("64");
+        links = new LinkBuilder(stub.url());
+        pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = "up42";
+        pipeline.counter = "7";
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = "test";
+        pipeline.stage.counter = "2";
+        pipeline.stage.jobs = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        tails.shutdown();
+        stub.close();
+    }
+
+    @Test
+    public void shouldFetchNothingWhenDisabled() {
+        job("unit", "Failed", "boom");
+        settings.setConsoleTailBytes("0");
+
+        assertThat(tails.fetch(pipeline, links, settings).isEmpty(), is(true));
+        assertThat(stub.requestCount(), is(0));
+    }
+
+    @Test
+    public void shouldFetchTheTailOfFailedJobsFromTheFirstWholeLine() {
+        job("unit", "Failed", Strings.repeat("compiling a rather long line\n", 100) + "Tests run: 12, Failures: 1\nBUILD FAILED\n");
+        job("lint", "Passed", "fine");
+
+        Map<StageStatusRequest.Job, String> fetched = tails.fetch(pipeline, links, settings);
+
+        assertThat(fetched.size(), is(1));
+        assertThat(fetched.get(pipeline.stage.jobs.get(0)), is("Tests run: 12, Failures: 1\nBUILD FAILED"));
+        assertThat(stub.bytesSent(), is(64L));
+    }
+
+    @Test
+    public void shouldKeepAShortLogWhole() {
+        job("unit", "Failed", "BUILD FAILED\n");
+
+        assertThat(tails.fetch(pipeline, links, settings).get(pipeline.stage.jobs.get(0)), is("BUILD FAILED"));
+    }
+
+    @Test
+    public void shouldDropThePartialFirstLineWhenTheRangeIsNotSaid() {
+        stub.contentRange(false);
+        job("unit", "Failed", Strings.repeat("compiling a rather long line\n", 100) + "Tests run: 12, Failures: 1\nBUILD FAILED\n");
+
+        assertThat(tails.fetch(pipeline, links, settings).get(pipeline.stage.jobs.get(0)), is("Tests run: 12, Failures: 1\nBUILD FAILED"));
+    }
+
+    @Test
+    public void shouldSendTheApiToken() {
+        job("unit", "Failed", "boom");
+        settings.setGoApiToken(" secret ");
+
+        tails.fetch(pipeline, links, settings);
+
+        assertThat(stub.lastAuthorization(), is("Bearer secret"));
+    }
+
+    @Test
+    public void shouldKeepTheTailOfASmallLogSentWhole() {
+        stub.ranges(false);
+        job("unit", "Failed", Strings.repeat("compiling a rather long line\n", 100) + "BUILD FAILED\n");
+
+        assertThat(tails.fetch(pipeline, links, settings).get(pipeline.stage.jobs.get(0)), is("compiling a rather long line\nBUILD FAILED"));
+    }
+
+    @Test
+    public void shouldNotDownloadALargeLogSentWhole() {
+        stub.ranges(false);
+        job("unit", "Failed", Strings.repeat("x", ConsoleTails.MAX_UNRANGED_BYTES * 8));
+
+        assertThat(tails.fetch(pipeline, links, settings).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCacheTailsByJob() {
+        job("unit", "Failed", "boom");
+
+        tails.fetch(pipeline, links, settings);
+        Map<StageStatusRequest.Job, String> fetched = tails.fetch(pipeline, links, settings);
+
+        assertThat(fetched.get(pipeline.stage.jobs.get(0)), is("boom"));
+        assertThat(stub.requestCount(), is(1));
+    }
+
+    @Test
+    public void shouldSkipMissingLogs() {
+        StageStatusRequest.Job job = new StageStatusRequest.Job();
+        job.name = "gone";
+        job.result = "Failed";
+        pipeline.stage.jobs.add(job);
+
+        assertThat(tails.fetch(pipeline, links, settings).get(job), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFetchTheFirstFailedJobsWithinTheConcurrencyCap() {
+        stub.latencyMillis(50);
+        for (int i = 0; i < 10; i++) {
+            job("job-" + i, "Failed", "boom " + i);
+        }
+
+        Map<StageStatusRequest.Job, String> fetched = tails.fetch(pipeline, links, settings);
+
+        assertThat(fetched.size(), is(ConsoleTails.MAX_JOBS));
+        assertThat(fetched.get(pipeline.stage.jobs.get(4)), is("boom 4"));
+        assertThat(stub.requestCount(), is(ConsoleTails.MAX_JOBS));
+        assertThat(stub.maxConcurrentRequests(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void shouldStopWaitingAtTheDeadline() {
+        stub.latencyMillis(2000);
+        settings.setConsoleTailDeadlineMillis("200");
+        job("unit", "Failed", "boom");
+        job("it", "Failed", "boom");
+
+        long start = System.nanoTime();
+        Map<StageStatusRequest.Job, String> fetched = tails.fetch(pipeline, links, settings);
+
+        assertThat(fetched.isEmpty(), is(true));
+        assertThat((System.nanoTime() - start) / 1_000_000, lessThan(1000L));
+    }
+
+    private void job(String name, String result, String log) {
+        StageStatusRequest.Job job = new StageStatusRequest.Job();
+        job.name = name;
+        job.result = result;
+        pipeline.stage.jobs.add(job);
+        stub.consoleLog(STAGE_RUN, name, log);
+    }
+}
@@ -0,0 +1,168 @@
+package cd.go.plugin.notification.rocketchat.console;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the artifact files of a GoCD server on a local port, serving console logs under {@code /go/files/}.
+ * <p>
+ * Answers suffix ranges like {@code bytes=-4096} with 206 unless ranges are turned off, and counts requests, the bytes
+ * it sent and the most requests it served at once.
+ */
+public class GoServerStub implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // path under /go/files/ to content
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile boolean ranges = true;
+    private volatile boolean contentRange = true;
+    private volatile String lastAuthorization;
+
+    private GoServerStub(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static GoServerStub start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        ExecutorService executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("go-server-stub-%d").build());
+        GoServerStub stub = new GoServerStub(server, executor);
+        server.setExecutor(executor);
+        server.createContext("/go/files/", stub::file);
+        server.start();
+        return stub;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param stageRun pipeline/counter/stage/counter
+     */
+    public GoServerStub consoleLog(String stageRun, String job, String log) {
+        files.put(stageRun + "/" + job + "/cruise-output/console.log", log.getBytes(Charsets.UTF_8));
+        return this;
+    }
+
+    public GoServerStub latencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param ranges false to answer every request with the whole file, like a proxy which drops the range
+     */
+    public GoServerStub ranges(boolean ranges) {
+        this.ranges = ranges;
+        return this;
+    }
+
+    /**
+     * @param contentRange false to leave the Content-Range header off partial responses
+     */
+    public GoServerStub contentRange(boolean contentRange) {
+        this.contentRange = contentRange;
+        return this;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    public int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    public String lastAuthorization() {
+        return lastAuthorization;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void file(HttpExchange exchange) throws IOException {
+        ByteStreams.exhaust(exchange.getRequestBody());
+        requests.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(concurrent, Math::max);
+        lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+        delay();
+        byte[] content = files.get(exchange.getRequestURI().getPath().substring("/go/files/".length()));
+        if(content == null) {
+            respond(exchange, 404, new byte[0], 0, 0);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if(!ranges || range == null || !range.startsWith("bytes=-")) {
+            respond(exchange, 200, content, 0, content.length);
+            return;
+        }
+        if(content.length == 0) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes */0");
+            respond(exchange, 416, content, 0, 0);
+            return;
+        }
+        int from = Math.max(content.length - Integer.parseInt(range.substring("bytes=-".length())), 0);
+        if(contentRange) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (content.length - 1) + "/" + content.length);
+        }
+        respond(exchange, 206, content, from, content.length);
+    }
+
+    private void delay() {
+        long millis = latencyMillis;
+        if(millis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] content, int from, int to) throws IOException {
+        // done serving once the response goes out, the client may ask for the next log as soon as it has read this one
+        inFlight.decrementAndGet();
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, to - from == 0 ? -1 : to - from);
+        // counted up front, the client can be done with the bytes before the write returns here
+        bytesSent.addAndGet(to - from);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, from, to - from);
+        }
+        catch (IOException e) {
+            // the client hung up on a log it did not want
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.requests.AgentStatusRequest;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AgentStatusAggregatorTest {
+    private final List<Message> flushed = new CopyOnWriteArrayList<>();
+    private AgentStatusAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        aggregator = new AgentStatusAggregator(flushed::add, Clock.fixed(Instant.parse("2024-03-01T14:05:42Z"), ZoneId.of("Europe/Warsaw")));
+        aggregator.configure(TimeUnit.MINUTES.toMillis(5), Arrays.asList("LostContact", "Disabled"));
+    }
+
+    @Test
+    public void shouldIgnoreStatesWhichAreNotWatched() {
+        assertThat(aggregator.add(agent("a", "Building", "Enabled")), is(false));
+        aggregator.flushAll();
+
+        assertThat(flushed.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldIgnoreEverythingWithoutWatchedStates() {
+        aggregator.configure(TimeUnit.MINUTES.toMillis(5), Collections.emptyList());
+
+        assertThat(aggregator.add(agent("a", "LostContact", "Enabled")), is(false));
+    }
+
+    @Test
+    public void shouldSummarizeTransitionsPerState() {
+        for (int i = 0; i < 12; i++) {
+            aggregator.add(agent("agent-" + i, "lostcontact", "enabled"));
+        }
+        aggregator.add(agent("agent-20", "Idle", "Disabled"));
+        aggregator.flushAll();
+
+        assertThat(flushed.size(), is(1));
+        Message summary = flushed.get(0);
+        assertThat(summary.getText(), is("12 agents LostContact since 15:05 (12 elastic)\n1 agent Disabled since 15:05 (1 elastic)"));
+        assertThat(summary.getAttachments().length, is(2));
+        assertThat(summary.getAttachments()[1].getText(), is("agent-20.example.com"));
+    }
+
+    @Test
+    public void shouldCountFlappingAgentOnce() {
+        aggregator.add(agent("a", "LostContact", "Enabled"));
+        aggregator.add(agent("a", "LostContact", "Enabled"));
+        aggregator.flushAll();
+
+        assertThat(flushed.get(0).getText(), is("1 agent LostContact since 15:05 (1 elastic)"));
+    }
+
+    @Test
+    public void shouldListOnlyTheFirstHosts() {
+        for (int i = 0; i < AgentStatusAggregator.MAX_HOSTS_LISTED + 5; i++) {
+            aggregator.add(agent("agent-" + i, "LostContact", "Enabled"));
+        }
+        aggregator.flushAll();
+
+        String hosts = flushed.get(0).getAttachments()[0].getText();
+        assertThat(hosts.startsWith("agent-0.example.com, agent-1.example.com"), is(true));
+        assertThat(hosts.endsWith("agent-19.example.com and 5 more"), is(true));
+    }
+
+    @Test
+    public void shouldStartANewWindowAfterFlush() {
+        aggregator.add(agent("a", "LostContact", "Enabled"));
+        aggregator.flushAll();
+        aggregator.flushAll();
+        aggregator.add(agent("a", "LostContact", "Enabled"));
+        aggregator.flushAll();
+
+        assertThat(flushed.size(), is(2));
+    }
+
+    @Test
+    public void shouldFlushWhenTheWindowCloses() throws Exception {
+        aggregator.configure(50, Collections.singletonList("LostContact"));
+        aggregator.add(agent("a", "LostContact", "Enabled"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushed.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(flushed.size(), is(1));
+    }
+
+    private static AgentStatusRequest.Agent agent(String uuid, String agentState, String configState) {
+        return new AgentStatusRequest.Agent(uuid, uuid + ".example.com", true, configState, agentState);
+    }
+}
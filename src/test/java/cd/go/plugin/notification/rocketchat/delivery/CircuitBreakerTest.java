@@ -0,0 +1,94 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private long now;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now;
+            }
+        };
+        breaker = new CircuitBreaker("https://chat.example.com", 3, TimeUnit.SECONDS.toNanos(30), ticker);
+    }
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() throws Exception {
+        failCalls(3);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertRejected();
+        assertThat(breaker.rejectedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldResetFailureCountOnSuccess() throws Exception {
+        failCalls(2);
+        breaker.acquirePermission();
+        breaker.onSuccess();
+        failCalls(2);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldLetOnlyOneProbeThroughWhenHalfOpen() throws Exception {
+        failCalls(3);
+        now += TimeUnit.SECONDS.toNanos(30);
+
+        breaker.acquirePermission();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertRejected();
+    }
+
+    @Test
+    public void shouldCloseWhenProbeSucceeds() throws Exception {
+        failCalls(3);
+        now += TimeUnit.SECONDS.toNanos(30);
+        breaker.acquirePermission();
+        breaker.onSuccess();
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        breaker.acquirePermission();
+    }
+
+    @Test
+    public void shouldReopenWhenProbeFails() throws Exception {
+        failCalls(3);
+        now += TimeUnit.SECONDS.toNanos(30);
+        breaker.acquirePermission();
+        breaker.onFailure();
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.openedCount(), is(2L));
+        assertRejected();
+    }
+
+    private void failCalls(int times) throws CircuitOpenException {
+        for (int i = 0; i < times; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure();
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.acquirePermission();
+            fail("expected the circuit to reject the call");
+        } catch (CircuitOpenException expected) {
+        }
+    }
+}
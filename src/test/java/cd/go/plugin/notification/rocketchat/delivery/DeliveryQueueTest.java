@@ -0,0 +1,170 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class DeliveryQueueTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private DeliveryQueue queue;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (queue != null) {
+            queue.shutdown();
+            queue.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldDeliverOffTheSubmittingThread() throws Exception {
+        queue = new DeliveryQueue(new DeliverySettings(10, 1, OverflowPolicy.DROP_NEWEST));
+        String submitter = Thread.currentThread().getName();
+        CountDownLatch done = new CountDownLatch(1);
+
+        queue.submit(() -> {
+            delivered.add(Thread.currentThread().getName());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertThat(delivered.get(0).equals(submitter), is(false));
+        assertThat(delivered.get(0).startsWith("rocketchat-delivery-"), is(true));
+    }
+
+    @Test
+    public void shouldDropNewestWhenFull() throws Exception {
+        queue = new DeliveryQueue(new DeliverySettings(1, 1, OverflowPolicy.DROP_NEWEST));
+        blockWorker();
+        queue.submit(record("queued"));
+        queue.submit(record("rejected"));
+
+        release.countDown();
+        drain();
+
+        assertThat(delivered, contains("queued"));
+        assertThat(queue.droppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldDropOldestWhenFull() throws Exception {
+        queue = new DeliveryQueue(new DeliverySettings(1, 1, OverflowPolicy.DROP_OLDEST));
+        blockWorker();
+        queue.submit(record("evicted"));
+        queue.submit(record("kept"));
+
+        release.countDown();
+        drain();
+
+        assertThat(delivered, contains("kept"));
+        assertThat(queue.droppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldRunOnCallerWhenFullAndConfiguredTo() throws Exception {
+        queue = new DeliveryQueue(new DeliverySettings(1, 1, OverflowPolicy.CALLER_RUNS));
+        blockWorker();
+        queue.submit(record("queued"));
+        queue.submit(record("inline"));
+
+        assertThat(delivered, contains("inline"));
+        release.countDown();
+        drain();
+        assertThat(delivered, contains("inline", "queued"));
+        assertThat(queue.droppedCount(), is(0L));
+    }
+
+    @Test
+    public void shouldKeepPendingDeliveriesWhenReconfigured() throws Exception {
+        queue = new DeliveryQueue(new DeliverySettings(10, 1, OverflowPolicy.DROP_NEWEST));
+        blockWorker();
+        queue.submit(record("before"));
+
+        queue.configure(new DeliverySettings(20, 2, OverflowPolicy.DROP_OLDEST));
+        queue.submit(record("after"));
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(delivered.size(), is(2));
+        assertThat(queue.getSettings().getWorkers(), is(2));
+    }
+
+    @Test
+    public void shouldGiveEveryDeliveryItsOwnVirtualThread() throws Exception {
+        assumeTrue("needs Java 21", VirtualThreads.available());
+        queue = new DeliveryQueue(new DeliverySettings(100, 1, OverflowPolicy.DROP_NEWEST, DeliveryThreads.VIRTUAL));
+        CountDownLatch running = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            queue.submit(() -> {
+                delivered.add(Thread.currentThread().getName());
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // all of them blocked at once, one worker would have run only the first
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertThat(queue.usesVirtualThreads(), is(true));
+        assertThat(queue.size(), is(0));
+        assertThat(delivered.get(0).startsWith("rocketchat-delivery-virtual-"), is(true));
+    }
+
+    @Test
+    public void shouldFallBackToWorkersWithoutVirtualThreads() throws Exception {
+        assumeFalse("runs before Java 21", VirtualThreads.available());
+        queue = new DeliveryQueue(new DeliverySettings(10, 1, OverflowPolicy.DROP_NEWEST, DeliveryThreads.VIRTUAL));
+        blockWorker();
+        queue.submit(record("queued"));
+
+        assertThat(queue.usesVirtualThreads(), is(false));
+        assertThat(queue.size(), is(1));
+    }
+
+    private void blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        queue.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private Runnable record(String name) {
+        return () -> delivered.add(name);
+    }
+
+    private void drain() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        queue.submit(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,196 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.github.baloise.rocketchatrestclient.model.Attachment;
+import com.github.baloise.rocketchatrestclient.model.AttachmentField;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Strings;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MessageCoalescerTest {
+    private final List<Message> flushed = new CopyOnWriteArrayList<>();
+    private MessageCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        coalescer = new MessageCoalescer((room, message) -> flushed.add(message));
+        coalescer.configure(TimeUnit.HOURS.toMillis(1), 5000);
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutWindow() {
+        coalescer.configure(0, 5000);
+        assertThat(coalescer.isEnabled(), is(false));
+    }
+
+    @Test
+    public void shouldFlushSingleMessageUnchanged() {
+        Message message = failure("pipe", "stage", "job1");
+        coalescer.add("builds", "pipe", message);
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(1));
+        assertThat(flushed.get(0), sameInstance(message));
+    }
+
+    @Test
+    public void shouldFlushOneDigestWithAnAttachmentPerPipeline() {
+        coalescer.add("builds", "pipe-a", failure("pipe-a", "build", "job1"));
+        coalescer.add("builds", "pipe-b", failure("pipe-b", "build", "job1"));
+        coalescer.add("builds", "pipe-a", failure("pipe-a", "test", "job2"));
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(1));
+        Message digest = flushed.get(0);
+        assertThat(digest.getText(), is("3 stages have failed"));
+        Attachment[] attachments = digest.getAttachments();
+        assertThat(attachments.length, is(2));
+        assertThat(attachments[0].getText(), is("Stage pipe-a/build has failed\nStage pipe-a/test has failed"));
+        assertThat(attachments[0].getFields().length, is(2));
+        assertThat(attachments[1].getText(), is("Stage pipe-b/build has failed"));
+    }
+
+    @Test
+    public void shouldKeepConsoleTailsWhole() {
+        Message withTail = failure("pipe-a", "build", "job1");
+        Attachment console = new Attachment();
+        console.setTitle("job1 console");
+        console.setTitleLink("https://ci.example.com/go/tab/build/detail/pipe-a/1/build/1/job1#tab-console");
+        console.setText("```\nBUILD FAILED\n```");
+        withTail.addAttachment(console);
+        coalescer.add("builds", "pipe-a", withTail);
+        coalescer.add("builds", "pipe-b", failure("pipe-b", "build", "job1"));
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(1));
+        Attachment[] attachments = flushed.get(0).getAttachments();
+        assertThat(attachments.length, is(3));
+        assertThat(attachments[0].getText(), is("Stage pipe-a/build has failed"));
+        assertThat(attachments[0].getFields().length, is(1));
+        assertThat(attachments[1], sameInstance(console));
+        assertThat(attachments[1].getTitle(), is("job1 console"));
+        assertThat(attachments[2].getText(), is("Stage pipe-b/build has failed"));
+    }
+
+    @Test
+    public void shouldCountConsoleTailsTowardsTheMaximumSize() {
+        coalescer.configure(TimeUnit.HOURS.toMillis(1), 200);
+        Message withTail = failure("pipe-a", "build", "job1");
+        Attachment console = new Attachment();
+        console.setTitle("job1 console");
+        // fits on its own, but not with another pipeline
+        console.setText("```\n" + Strings.repeat("x", 120) + "\n```");
+        withTail.addAttachment(console);
+        coalescer.add("builds", "pipe-a", withTail);
+        coalescer.add("builds", "pipe-b", failure("pipe-b", "build", "job1"));
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(2));
+        assertThat(flushed.get(0).getAttachments().length, is(2));
+    }
+
+    @Test
+    public void shouldKeepRoomsApart() {
+        coalescer.add("builds", "pipe-a", failure("pipe-a", "build", "job1"));
+        coalescer.add("releases", "pipe-b", failure("pipe-b", "build", "job1"));
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(2));
+    }
+
+    @Test
+    public void shouldSplitDigestsExceedingMaximumSize() {
+        coalescer.configure(TimeUnit.HOURS.toMillis(1), 100);
+        for (int i = 0; i < 4; i++) {
+            coalescer.add("builds", "pipe-" + i, failure("pipe-" + i, "build", "a-job-with-quite-a-long-name"));
+        }
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(4));
+        assertThat(flushed.get(0).getText(), is("1 stage has failed"));
+    }
+
+    @Test
+    public void shouldSplitAPipelineExceedingMaximumSize() {
+        coalescer.configure(TimeUnit.HOURS.toMillis(1), 100);
+        for (int i = 0; i < 4; i++) {
+            coalescer.add("builds", "pipe", failure("pipe", "stage-" + i, "a-job-with-quite-a-long-name"));
+        }
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(4));
+        int stages = 0;
+        for (Message digest : flushed) {
+            assertThat(size(digest), lessThanOrEqualTo(100));
+            stages += digest.getAttachments()[0].getText().split("\n").length;
+        }
+        assertThat(stages, is(4));
+    }
+
+    @Test
+    public void shouldCutAMessageTooLargeOnItsOwn() {
+        coalescer.configure(TimeUnit.HOURS.toMillis(1), 200);
+        Message huge = failure("pipe-a", "build", Strings.repeat("job", 100));
+        Attachment console = new Attachment();
+        console.setTitle("job console");
+        console.setText(Strings.repeat("x", 150));
+        huge.addAttachment(console);
+        coalescer.add("builds", "pipe-a", huge);
+        coalescer.add("builds", "pipe-b", failure("pipe-b", "build", "job1"));
+        coalescer.flushAll();
+
+        assertThat(flushed.size(), is(2));
+        Message digest = flushed.get(0);
+        assertThat(size(digest), lessThanOrEqualTo(200));
+        assertThat(digest.getAttachments().length, is(1));
+        assertThat(digest.getAttachments()[0].getFields()[0].getValue(), endsWith("..."));
+        assertThat(huge.getAttachments()[0].getFields()[0].getValue(), is(" - " + Strings.repeat("job", 100) + " failed"));
+    }
+
+    @Test
+    public void shouldFlushWhenWindowCloses() throws Exception {
+        coalescer.configure(50, 5000);
+        coalescer.add("builds", "pipe-a", failure("pipe-a", "build", "job1"));
+        coalescer.add("builds", "pipe-b", failure("pipe-b", "build", "job1"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushed.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(flushed.size(), is(1));
+        assertThat(flushed.get(0).getAttachments().length, is(2));
+    }
+
+    private static int size(Message message) {
+        int size = 0;
+        for (Attachment attachment : message.getAttachments()) {
+            size += attachment.getText() == null ? 0 : attachment.getText().length();
+            size += attachment.getTitle() == null ? 0 : attachment.getTitle().length();
+            for (AttachmentField field : attachment.getFields() == null ? new AttachmentField[0] : attachment.getFields()) {
+                size += field.getTitle().length() + field.getValue().length();
+            }
+        }
+        return size;
+    }
+
+    private static Message failure(String pipeline, String stage, String job) {
+        Message message = new Message("Stage " + pipeline + "/" + stage + " has failed");
+        AttachmentField jobs = new AttachmentField();
+        jobs.setTitle("Failed Jobs");
+        jobs.setValue(" - " + job + " failed");
+        Attachment attachment = new Attachment();
+        attachment.setFields(new AttachmentField[]{jobs});
+        message.addAttachment(attachment);
+        return message;
+    }
+}
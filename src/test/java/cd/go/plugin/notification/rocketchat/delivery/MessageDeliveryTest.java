@@ -0,0 +1,158 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatService;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MessageDeliveryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RocketChatService chat;
+    private Outbox outbox;
+
+    @Before
+    public void setUp() throws IOException {
+        chat = mock(RocketChatService.class);
+        outbox = Outbox.open(folder.newFolder());
+    }
+
+    @Test
+    public void shouldAcknowledgeDeliveredMessages() throws Exception {
+        new MessageDelivery(chat, outbox).send(new Message("hello"));
+
+        verify(chat).postMessage(any(String.class), any(Message.class));
+        assertThat(outbox.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldKeepFailedMessagesAndReplayThemOnceRocketChatRecovers() throws Exception {
+        MessageDelivery delivery = new MessageDelivery(chat, outbox);
+        doThrow(new IOException("Rocket.Chat is down")).when(chat).postMessage(any(String.class), any(Message.class));
+        try {
+            delivery.send(new Message("missed"));
+            fail("expected the post to fail");
+        } catch (IOException expected) {
+        }
+        assertThat(outbox.pendingCount(), is(1));
+
+        doNothing().when(chat).postMessage(any(String.class), any(Message.class));
+        delivery.send(new Message("next"));
+
+        verify(chat, times(3)).postMessage(any(String.class), any(Message.class));
+        assertThat(outbox.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldNotPostAgainWhenOnlyTheAcknowledgementFailed() throws Exception {
+        Outbox failingAcks = spy(outbox);
+        IOException full = new IOException("No space left on device");
+        // fails after the post and again when the replay right after it tries once more
+        doThrow(full).doThrow(full).doCallRealMethod().when(failingAcks).acknowledge(anyLong());
+        MessageDelivery delivery = new MessageDelivery(chat, failingAcks);
+
+        delivery.send(new Message("posted"));
+        verify(chat, times(1)).postMessage(any(String.class), any(Message.class));
+        assertThat(failingAcks.pendingCount(), is(1));
+        delivery.send(new Message("next"));
+
+        verify(chat, times(2)).postMessage(any(String.class), any(Message.class));
+        assertThat(failingAcks.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldPostWithoutOutbox() throws Exception {
+        new MessageDelivery(chat, null).send(new Message("hello"));
+
+        verify(chat).postMessage(any(String.class), any(Message.class));
+    }
+
+    @Test
+    public void shouldPostToEveryRoutedRoom() throws Exception {
+        MessageDelivery delivery = new MessageDelivery(chat, outbox);
+        delivery.configure(settings("pipeline=deploy-* stage=prod => #ops, #releases\ngroup=payments => #payments"));
+
+        Message msg = new Message("failed");
+        delivery.deliver("payments", "deploy-api", "prod", msg);
+        delivery.deliver("web", "build-ui", "test", msg);
+
+        verify(chat).postMessage("#ops", msg);
+        verify(chat).postMessage("#releases", msg);
+        verify(chat).postMessage("#payments", msg);
+        verify(chat).postMessage("builds", msg);
+        verify(chat, times(4)).postMessage(any(String.class), any(Message.class));
+    }
+
+    @Test
+    public void shouldReplayToTheRoomTheMessageWasRoutedTo() throws Exception {
+        MessageDelivery delivery = new MessageDelivery(chat, outbox);
+        delivery.configure(settings("pipeline=deploy-* => #ops"));
+        doThrow(new IOException("Rocket.Chat is down")).when(chat).postMessage(any(String.class), any(Message.class));
+        try {
+            delivery.deliver("payments", "deploy-api", "prod", new Message("missed"));
+            fail("expected the post to fail");
+        } catch (IOException expected) {
+        }
+
+        doNothing().when(chat).postMessage(any(String.class), any(Message.class));
+        delivery.replayPending();
+
+        verify(chat, times(2)).postMessage(eq("#ops"), any(Message.class));
+        assertThat(outbox.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldReplayMessagesJournaledWithoutRoomToTheDefaultRoom() throws Exception {
+        outbox.append("{\"text\":\"from an older version\"}".getBytes(Charsets.UTF_8));
+
+        new MessageDelivery(chat, outbox).replayPending();
+
+        verify(chat).postMessage(isNull(String.class), any(Message.class));
+        assertThat(outbox.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldCoalesceOnlyBrokenStages() throws Exception {
+        MessageDelivery delivery = new MessageDelivery(chat, outbox);
+        PluginSettings settings = settings(null);
+        settings.setCoalesceWindowSeconds("60");
+        delivery.configure(settings);
+
+        Message fixed = new Message("is fixed");
+        delivery.deliver("web", "build-ui", "test", new Message("has failed"), true);
+        delivery.deliver("web", "build-api", "test", new Message("has failed"), true);
+        delivery.deliver("web", "deploy", "prod", fixed, false);
+
+        verify(chat).postMessage("builds", fixed);
+        verify(chat, times(1)).postMessage(any(String.class), any(Message.class));
+    }
+
+    private static PluginSettings settings(String routingRules) {
+        PluginSettings settings = new PluginSettings();
+        settings.setRoom("builds");
+        settings.setRoutingRules(routingRules);
+        return settings;
+    }
+}
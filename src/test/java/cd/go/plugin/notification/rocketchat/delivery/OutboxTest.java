@@ -0,0 +1,123 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class OutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReplayUnacknowledgedMessagesAfterReopen() throws Exception {
+        File directory = folder.newFolder();
+        Outbox outbox = Outbox.open(directory);
+        long delivered = outbox.append(bytes("delivered"));
+        outbox.append(bytes("lost"));
+        outbox.acknowledge(delivered);
+        outbox.close();
+
+        Outbox reopened = Outbox.open(directory);
+        List<Outbox.Entry> pending = reopened.pending();
+
+        assertThat(pending.size(), is(1));
+        assertThat(new String(pending.get(0).getPayload(), Charsets.UTF_8), is("lost"));
+    }
+
+    @Test
+    public void shouldContinueIdsAfterReopen() throws Exception {
+        File directory = folder.newFolder();
+        Outbox outbox = Outbox.open(directory);
+        long first = outbox.append(bytes("first"));
+        outbox.close();
+
+        Outbox reopened = Outbox.open(directory);
+        long second = reopened.append(bytes("second"));
+        reopened.acknowledge(first);
+
+        assertThat(second, greaterThan(first));
+        assertThat(reopened.pendingCount(), is(1));
+    }
+
+    @Test
+    public void shouldIgnoreTornRecordAtTheEndOfSegment() throws Exception {
+        File directory = folder.newFolder();
+        Outbox outbox = Outbox.open(directory);
+        outbox.append(bytes("complete"));
+        outbox.append(bytes("torn"));
+        outbox.close();
+
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // corrupt the last byte of the second record payload
+            int secondRecord = 4 + 4 + 1 + 8 + "complete".length();
+            file.seek(secondRecord + 4 + 4 + 1 + 8 + 3);
+            file.write('X');
+        }
+
+        Outbox reopened = Outbox.open(directory);
+        assertThat(reopened.pendingCount(), is(1));
+        long next = reopened.append(bytes("after"));
+        reopened.close();
+
+        List<Outbox.Entry> pending = Outbox.open(directory).pending();
+        assertThat(pending.size(), is(2));
+        assertThat(pending.get(1).getId(), is(next));
+    }
+
+    @Test
+    public void shouldDeleteAcknowledgedSegments() throws Exception {
+        Outbox outbox = Outbox.open(folder.newFolder(), 256, 8);
+        for (int i = 0; i < 1000; i++) {
+            outbox.acknowledge(outbox.append(bytes("message " + i)));
+        }
+
+        assertThat(outbox.segmentCount(), is(1));
+        assertThat(outbox.pendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldCopyForwardSparseSegments() throws Exception {
+        File directory = folder.newFolder();
+        Outbox outbox = Outbox.open(directory, 256, 8);
+        outbox.append(bytes("stuck"));
+        for (int i = 0; i < 1000; i++) {
+            outbox.acknowledge(outbox.append(bytes("message " + i)));
+        }
+
+        assertThat(outbox.segmentCount(), lessThanOrEqualTo(2));
+        assertThat(outbox.evictedCount(), is(0L));
+        outbox.close();
+
+        List<Outbox.Entry> pending = Outbox.open(directory, 256, 8).pending();
+        assertThat(pending.size(), is(1));
+        assertThat(new String(pending.get(0).getPayload(), Charsets.UTF_8), is("stuck"));
+    }
+
+    @Test
+    public void shouldEvictOldestMessagesWhenCapIsReached() throws Exception {
+        Outbox outbox = Outbox.open(folder.newFolder(), 256, 3);
+        for (int i = 0; i < 100; i++) {
+            outbox.append(bytes("undelivered message " + i));
+        }
+
+        assertThat(outbox.segmentCount(), is(3));
+        assertThat(outbox.evictedCount(), greaterThan(0L));
+        assertThat(outbox.pendingCount() + outbox.evictedCount(), is(100L));
+        assertThat(new String(outbox.pending().get(outbox.pendingCount() - 1).getPayload(), Charsets.UTF_8), is("undelivered message 99"));
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(Charsets.UTF_8);
+    }
+}
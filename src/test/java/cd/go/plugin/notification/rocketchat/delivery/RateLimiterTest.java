@@ -0,0 +1,95 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RateLimiterTest {
+    private long now;
+    private RateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now;
+            }
+        };
+        // sleeping just moves the fake clock forward
+        limiter = new RateLimiter(60, 2, ticker, nanos -> now += nanos);
+    }
+
+    @Test
+    public void shouldLetBurstThroughWithoutWaiting() throws Exception {
+        assertThat(limiter.acquire("bot", "builds"), is(0L));
+        assertThat(limiter.acquire("bot", "builds"), is(0L));
+        assertThat(limiter.throttledCount(), is(0L));
+    }
+
+    @Test
+    public void shouldDelayPostsBeyondTheBurst() throws Exception {
+        limiter.acquire("bot", "builds");
+        limiter.acquire("bot", "builds");
+
+        long waited = limiter.acquire("bot", "builds");
+
+        assertThat(waited, is(TimeUnit.SECONDS.toNanos(1)));
+        assertThat(limiter.throttledCount(), is(1L));
+        assertThat(limiter.waitedNanos(), is(waited));
+    }
+
+    @Test
+    public void shouldKeepCountingWithNewLimits() throws Exception {
+        limiter.acquire("bot", "builds");
+        limiter.acquire("bot", "builds");
+        limiter.acquire("bot", "builds");
+
+        RateLimiter slower = limiter.withLimits(30, 1);
+        slower.acquire("bot", "builds");
+        slower.acquire("bot", "builds");
+
+        assertThat(slower.getPermitsPerMinute(), is(30));
+        assertThat(slower.throttledCount(), is(2L));
+        assertThat(slower.waitedNanos(), is(TimeUnit.SECONDS.toNanos(3)));
+        assertThat(slower.maxWaitNanos(), is(TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    @Test
+    public void shouldKeepSeparateBucketsPerRoomAndUser() throws Exception {
+        limiter.acquire("bot", "builds");
+        limiter.acquire("bot", "builds");
+
+        assertThat(limiter.acquire("bot", "releases"), is(0L));
+        assertThat(limiter.acquire("other-bot", "builds"), is(0L));
+    }
+
+    @Test
+    public void shouldWaitForResetWhenServerReportsNoRemainingCalls() throws Exception {
+        limiter.observe("bot", "builds", 0, System.currentTimeMillis() + 5000);
+
+        long waited = limiter.acquire("bot", "builds");
+
+        assertThat(waited, allOf(greaterThan(TimeUnit.SECONDS.toNanos(4)), lessThanOrEqualTo(TimeUnit.SECONDS.toNanos(5))));
+    }
+
+    @Test
+    public void shouldNotUseMoreTokensThanServerReportsRemaining() throws Exception {
+        limiter.observe("bot", "builds", 1, -1);
+
+        assertThat(limiter.acquire("bot", "builds"), is(0L));
+        assertThat(limiter.acquire("bot", "builds"), greaterThan(0L));
+    }
+
+    @Test
+    public void shouldBackOffAfterTooManyRequests() throws Exception {
+        limiter.onRateLimited("bot", "builds", -1);
+
+        assertThat(limiter.acquire("bot", "builds"), greaterThan(0L));
+    }
+}
@@ -0,0 +1,158 @@
+package cd.go.plugin.notification.rocketchat.delivery;
+
+import cd.go.plugin.notification.rocketchat.rocket.RocketChatApiException;
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    private final List<Long> sleeps = new ArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private RetryPolicy policy;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        policy = new RetryPolicy(4, 100, sleeps::add);
+        breaker = new CircuitBreaker("https://chat.example.com", 10, 30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldRetryTransientFailuresWithGrowingBackoff() throws Exception {
+        policy.execute(breaker, () -> {
+            if (calls.incrementAndGet() < 4) {
+                throw new SocketTimeoutException("connect timed out");
+            }
+        });
+
+        assertThat(calls.get(), is(4));
+        assertThat(sleeps.size(), is(3));
+        assertThat(sleeps.get(0), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(100L)));
+        assertThat(sleeps.get(1), allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(200L)));
+        assertThat(sleeps.get(2), allOf(greaterThanOrEqualTo(200L), lessThanOrEqualTo(400L)));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldRetryServerErrorsAndRateLimits() throws Exception {
+        policy.execute(breaker, () -> {
+            int call = calls.incrementAndGet();
+            if (call == 1) {
+                throw new RocketChatApiException(503, "Service Unavailable");
+            }
+            if (call == 2) {
+                throw new RocketChatApiException(429, "Too Many Requests");
+            }
+        });
+
+        assertThat(calls.get(), is(3));
+        assertThat(sleeps.size(), is(1));
+    }
+
+    @Test
+    public void shouldNotOpenTheCircuitOnRateLimits() throws Exception {
+        CircuitBreaker fragile = new CircuitBreaker("https://chat.example.com", 2, 30, TimeUnit.SECONDS);
+        for (int i = 0; i < 5; i++) {
+            try {
+                policy.execute(fragile, () -> {
+                    calls.incrementAndGet();
+                    throw new RocketChatApiException(429, "Too Many Requests");
+                });
+                fail("expected the rate limit to be rethrown");
+            } catch (RocketChatApiException expected) {
+            }
+        }
+
+        assertThat(calls.get(), is(20));
+        assertThat(fragile.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(sleeps.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldNotRetryClientErrors() throws Exception {
+        try {
+            policy.execute(breaker, () -> {
+                calls.incrementAndGet();
+                throw new RocketChatApiException(400, "error-invalid-channel");
+            });
+            fail("expected the client error to be rethrown");
+        } catch (RocketChatApiException expected) {
+        }
+
+        assertThat(calls.get(), is(1));
+        assertThat(sleeps.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxAttempts() throws Exception {
+        try {
+            policy.execute(breaker, () -> {
+                calls.incrementAndGet();
+                throw new IOException("Connection reset");
+            });
+            fail("expected the last failure to be rethrown");
+        } catch (IOException expected) {
+        }
+
+        assertThat(calls.get(), is(4));
+    }
+
+    @Test
+    public void shouldFailFastWhileCircuitIsOpen() throws Exception {
+        CircuitBreaker fragile = new CircuitBreaker("https://chat.example.com", 2, 30, TimeUnit.SECONDS);
+        try {
+            policy.execute(fragile, () -> {
+                calls.incrementAndGet();
+                throw new IOException("Connection refused");
+            });
+            fail("expected the circuit to open");
+        } catch (CircuitOpenException expected) {
+        }
+
+        assertThat(calls.get(), is(2));
+        assertThat(fragile.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void shouldEndAHalfOpenProbeWhichThrowsARuntimeException() throws Exception {
+        long[] now = {0};
+        CircuitBreaker fragile = new CircuitBreaker("https://chat.example.com", 1, TimeUnit.SECONDS.toNanos(30), new Ticker() {
+            @Override
+            public long read() {
+                return now[0];
+            }
+        });
+        try {
+            policy.execute(fragile, () -> {
+                throw new IOException("Connection refused");
+            });
+            fail("expected the circuit to open");
+        } catch (CircuitOpenException expected) {
+        }
+        now[0] += TimeUnit.SECONDS.toNanos(31);
+        try {
+            policy.execute(fragile, () -> {
+                throw new IllegalStateException("bug in the transport");
+            });
+            fail("expected the runtime exception to be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(fragile.getState(), is(CircuitBreaker.State.OPEN));
+        now[0] += TimeUnit.SECONDS.toNanos(31);
+        policy.execute(fragile, calls::incrementAndGet);
+        assertThat(calls.get(), is(1));
+        assertThat(fragile.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+}
@@ -16,18 +16,29 @@
 
 package cd.go.plugin.notification.rocketchat.executors;
 
+import cd.go.plugin.notification.rocketchat.PluginRequest;
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import cd.go.plugin.notification.rocketchat.delivery.AgentStatusAggregator;
+import cd.go.plugin.notification.rocketchat.requests.AgentStatusRequest;
+import com.github.baloise.rocketchatrestclient.model.Message;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class AgentStatusRequestExecutorTest {
 
     @Test
     public void shouldRenderASuccessResponseIfNotificationWasSent() throws Exception {
-        GoPluginApiResponse response = new AgentStatusRequestExecutor(null, null) {
+        GoPluginApiResponse response = new AgentStatusRequestExecutor(null, null, null) {
             @Override
             protected void sendNotification() {
                 // do nothing!
@@ -40,7 +51,7 @@ public class AgentStatusRequestExecutorTest {
 
     @Test
     public void shouldRenderAnErrorResponseIfNotificationWasNotSent() throws Exception {
-        GoPluginApiResponse response = new AgentStatusRequestExecutor(null, null) {
+        GoPluginApiResponse response = new AgentStatusRequestExecutor(null, null, null) {
             @Override
             protected void sendNotification() {
                 throw new RuntimeException("Boom!");
@@ -50,4 +61,23 @@ public class AgentStatusRequestExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals("{\"status\":\"failure\",\"messages\":[\"Boom!\"]}", response.responseBody(), true);
     }
+
+    @Test
+    public void shouldAggregateTransitionsIntoWatchedStates() throws Exception {
+        PluginSettings settings = new PluginSettings();
+        settings.setAgentStatusStates("LostContact");
+        PluginRequest pluginRequest = mock(PluginRequest.class);
+        when(pluginRequest.getPluginSettings()).thenReturn(settings);
+        List<Message> summaries = new ArrayList<>();
+        AgentStatusAggregator aggregator = new AgentStatusAggregator(summaries::add);
+
+        AgentStatusRequest request = new AgentStatusRequest();
+        request.agent = new AgentStatusRequest.Agent("uuid", "agent-1", false, "Enabled", "LostContact");
+        GoPluginApiResponse response = new AgentStatusRequestExecutor(request, pluginRequest, aggregator).execute();
+        aggregator.flushAll();
+
+        JSONAssert.assertEquals("{\"status\":\"success\"}", response.responseBody(), true);
+        assertThat(summaries.size(), is(1));
+        assertThat(summaries.get(0).getText(), startsWith("1 agent LostContact since "));
+    }
 }
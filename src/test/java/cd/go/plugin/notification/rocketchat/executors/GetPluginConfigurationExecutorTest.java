@@ -74,6 +74,164 @@ public class GetPluginConfigurationExecutorTest {
                 "    \"required\": true,\n" +
                 "    \"secure\": false,\n" +
                 "    \"display-order\": \"4\"\n" +
+                "  },\n" +
+                "  \"delivery_queue_capacity\": {\n" +
+                "    \"display-name\": \"Delivery queue capacity\",\n" +
+                "    \"default-value\": \"1000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"5\"\n" +
+                "  },\n" +
+                "  \"delivery_workers\": {\n" +
+                "    \"display-name\": \"Delivery workers\",\n" +
+                "    \"default-value\": \"2\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"6\"\n" +
+                "  },\n" +
+                "  \"delivery_overflow_policy\": {\n" +
+                "    \"display-name\": \"Delivery queue overflow policy\",\n" +
+                "    \"default-value\": \"drop_oldest\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"7\"\n" +
+                "  },\n" +
+                "  \"retry_max_attempts\": {\n" +
+                "    \"display-name\": \"Retry attempts per message\",\n" +
+                "    \"default-value\": \"3\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"8\"\n" +
+                "  },\n" +
+                "  \"retry_initial_backoff_ms\": {\n" +
+                "    \"display-name\": \"Initial retry backoff (ms)\",\n" +
+                "    \"default-value\": \"500\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"9\"\n" +
+                "  },\n" +
+                "  \"circuit_breaker_failure_threshold\": {\n" +
+                "    \"display-name\": \"Circuit breaker failure threshold\",\n" +
+                "    \"default-value\": \"5\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"10\"\n" +
+                "  },\n" +
+                "  \"circuit_breaker_open_seconds\": {\n" +
+                "    \"display-name\": \"Circuit breaker open duration (seconds)\",\n" +
+                "    \"default-value\": \"30\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"11\"\n" +
+                "  },\n" +
+                "  \"rate_limit_per_minute\": {\n" +
+                "    \"display-name\": \"Posts per minute per room\",\n" +
+                "    \"default-value\": \"60\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"12\"\n" +
+                "  },\n" +
+                "  \"rate_limit_burst\": {\n" +
+                "    \"display-name\": \"Post burst per room\",\n" +
+                "    \"default-value\": \"10\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"13\"\n" +
+                "  },\n" +
+                "  \"coalesce_window_seconds\": {\n" +
+                "    \"display-name\": \"Digest window per room (seconds, 0 to disable)\",\n" +
+                "    \"default-value\": \"0\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"14\"\n" +
+                "  },\n" +
+                "  \"message_max_size\": {\n" +
+                "    \"display-name\": \"Maximum message size\",\n" +
+                "    \"default-value\": \"5000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"15\"\n" +
+                "  },\n" +
+                "  \"connect_timeout_ms\": {\n" +
+                "    \"display-name\": \"Rocket.Chat connect timeout (ms)\",\n" +
+                "    \"default-value\": \"5000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"16\"\n" +
+                "  },\n" +
+                "  \"read_timeout_ms\": {\n" +
+                "    \"display-name\": \"Rocket.Chat read timeout (ms)\",\n" +
+                "    \"default-value\": \"10000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"17\"\n" +
+                "  },\n" +
+                "  \"routing_rules\": {\n" +
+                "    \"display-name\": \"Routing rules\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"18\"\n" +
+                "  },\n" +
+                "  \"agent_status_states\": {\n" +
+                "    \"display-name\": \"Agent states to report (comma separated, blank to disable)\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"19\"\n" +
+                "  },\n" +
+                "  \"agent_status_window_seconds\": {\n" +
+                "    \"display-name\": \"Agent status summary window (seconds)\",\n" +
+                "    \"default-value\": \"300\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"20\"\n" +
+                "  },\n" +
+                "  \"delivery_threads\": {\n" +
+                "    \"display-name\": \"Delivery threads\",\n" +
+                "    \"default-value\": \"platform\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"21\"\n" +
+                "  },\n" +
+                "  \"message_template_failed\": {\n" +
+                "    \"display-name\": \"Message when a stage breaks\",\n" +
+                "    \"default-value\": \"Stage [{stage_run}]({stage_url}) has failed\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"22\"\n" +
+                "  },\n" +
+                "  \"message_template_fixed\": {\n" +
+                "    \"display-name\": \"Message when a stage is fixed\",\n" +
+                "    \"default-value\": \"Stage [{stage_run}]({stage_url}) is fixed\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"23\"\n" +
+                "  },\n" +
+                "  \"failed_jobs_max_bytes\": {\n" +
+                "    \"display-name\": \"Failed jobs list size (bytes)\",\n" +
+                "    \"default-value\": \"3000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"24\"\n" +
+                "  },\n" +
+                "  \"console_tail_bytes\": {\n" +
+                "    \"display-name\": \"Console log tail per failed job (bytes, 0 to disable)\",\n" +
+                "    \"default-value\": \"0\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"25\"\n" +
+                "  },\n" +
+                "  \"console_tail_deadline_ms\": {\n" +
+                "    \"display-name\": \"Console log fetch deadline per notification (ms)\",\n" +
+                "    \"default-value\": \"3000\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": false,\n" +
+                "    \"display-order\": \"26\"\n" +
+                "  },\n" +
+                "  \"go_api_token\": {\n" +
+                "    \"display-name\": \"GoCD access token for console logs\",\n" +
+                "    \"required\": false,\n" +
+                "    \"secure\": true,\n" +
+                "    \"display-order\": \"27\"\n" +
                 "  }\n" +
                 "}";
 
@@ -31,4 +31,11 @@ public class NotificationInterestedInExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals("{\"notifications\":[\"stage-status\"]}", response.responseBody(), true);
     }
+
+    @Test
+    public void shouldAskForAgentStatusWhenEnabled() throws Exception {
+        GoPluginApiResponse response = new NotificationInterestedInExecutor(() -> true).execute();
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"notifications\":[\"stage-status\",\"agent-status\"]}", response.responseBody(), true);
+    }
 }
@@ -16,18 +16,37 @@
 
 package cd.go.plugin.notification.rocketchat.executors;
 
+import cd.go.plugin.notification.rocketchat.delivery.DeliveryQueue;
+import cd.go.plugin.notification.rocketchat.delivery.DeliverySettings;
+import cd.go.plugin.notification.rocketchat.delivery.OverflowPolicy;
+import cd.go.plugin.notification.rocketchat.metrics.PluginMetrics;
+import cd.go.plugin.notification.rocketchat.requests.StageStateFilter;
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import cd.go.plugin.notification.rocketchat.rocket.MessageBuilderService;
+import cd.go.plugin.notification.rocketchat.state.NotificationDeduplicator;
+import cd.go.plugin.notification.rocketchat.state.StageResultStore;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class StageStatusRequestExecutorTest {
 
     @Test
     public void shouldRenderASuccessResponseIfNotificationWasSent() throws Exception {
-        GoPluginApiResponse response = new StageStatusRequestExecutor(null, null, null, null) {
+        GoPluginApiResponse response = new StageStatusRequestExecutor(null, null, null, null, null, null, null) {
             @Override
             protected void sendNotification() {
                 // do nothing!
@@ -40,7 +59,7 @@ public class StageStatusRequestExecutorTest {
 
     @Test
     public void shouldRenderAnErrorResponseIfNotificationWasNotSent() throws Exception {
-        GoPluginApiResponse response = new StageStatusRequestExecutor(null, null, null, null) {
+        GoPluginApiResponse response = new StageStatusRequestExecutor(null, null, null, null, null, null, null) {
             @Override
             protected void sendNotification() {
                 throw new RuntimeException("Boom!");
@@ -50,4 +69,86 @@ public class StageStatusRequestExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals("{\"status\":\"failure\",\"messages\":[\"Boom!\"]}", response.responseBody(), true);
     }
+
+    @Test
+    public void shouldOnlyEnqueueTheDeliveryOnTheServerThread() throws Exception {
+        DeliveryQueue deliveryQueue = mock(DeliveryQueue.class);
+        GoPluginApiResponse response = new StageStatusRequestExecutor(stageRequest("1"), null, new MessageBuilderService(), null, deliveryQueue, new NotificationDeduplicator(), new PluginMetrics()) {
+            @Override
+            protected void deliver(StageResultStore.Transition transition) {
+                throw new AssertionError("should not deliver inline");
+            }
+        }.execute();
+
+        verify(deliveryQueue).submit(any(Runnable.class));
+        JSONAssert.assertEquals("{\"status\":\"success\"}", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldNotEnqueueTheSameStageRunTwice() throws Exception {
+        DeliveryQueue deliveryQueue = mock(DeliveryQueue.class);
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        MessageBuilderService messageBuilder = new MessageBuilderService();
+        PluginMetrics metrics = new PluginMetrics();
+
+        new StageStatusRequestExecutor(stageRequest("1"), null, messageBuilder, null, deliveryQueue, deduplicator, metrics).execute();
+        GoPluginApiResponse response = new StageStatusRequestExecutor(stageRequest("1"), null, messageBuilder, null, deliveryQueue, deduplicator, metrics).execute();
+        new StageStatusRequestExecutor(stageRequest("2"), null, messageBuilder, null, deliveryQueue, deduplicator, metrics).execute();
+
+        verify(deliveryQueue, times(2)).submit(any(Runnable.class));
+        assertThat(deduplicator.hitCount(), is(1L));
+        assertThat(metrics.getStageStateCounts().get("Failed"), is(3L));
+        JSONAssert.assertEquals("{\"status\":\"success\"}", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldLetAFixThroughWhileItsFailureIsStillQueued() throws Exception {
+        DeliveryQueue deliveryQueue = new DeliveryQueue(new DeliverySettings(10, 1, OverflowPolicy.DROP_OLDEST));
+        CountDownLatch paused = new CountDownLatch(1);
+        deliveryQueue.submit(() -> {
+            try {
+                paused.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        MessageBuilderService messageBuilder = new MessageBuilderService();
+        StageStateFilter filter = new StageStateFilter(MessageBuilderService.NOTIFIED_STATES);
+        filter.onlyWhen("Passed", messageBuilder::isBroken);
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        List<StageResultStore.Transition> delivered = new CopyOnWriteArrayList<>();
+
+        for (StageStatusRequest request : Arrays.asList(stageRequest("1"), stageRequest("2", "Passed"))) {
+            assertThat(filter.accepts(new StageStateFilter.Header("up42", "build", request.pipeline.stage.state)), is(true));
+            new StageStatusRequestExecutor(request, null, messageBuilder, null, deliveryQueue, deduplicator, new PluginMetrics()) {
+                @Override
+                protected void deliver(StageResultStore.Transition transition) {
+                    delivered.add(transition);
+                }
+            }.execute();
+        }
+        paused.countDown();
+        deliveryQueue.shutdown();
+        deliveryQueue.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(delivered, is(Arrays.asList(StageResultStore.Transition.BROKE, StageResultStore.Transition.FIXED)));
+        assertThat(messageBuilder.isBroken("up42", "build"), is(false));
+    }
+
+    private static StageStatusRequest stageRequest(String stageCounter) {
+        return stageRequest(stageCounter, "Failed");
+    }
+
+    private static StageStatusRequest stageRequest(String stageCounter, String state) {
+        StageStatusRequest request = new StageStatusRequest();
+        request.pipeline = new StageStatusRequest.Pipeline();
+        request.pipeline.name = "up42";
+        request.pipeline.counter = "7";
+        request.pipeline.stage = new StageStatusRequest.Stage();
+        request.pipeline.stage.name = "build";
+        request.pipeline.stage.counter = stageCounter;
+        request.pipeline.stage.state = state;
+        return request;
+    }
 }
@@ -68,4 +68,97 @@ public class ValidateConfigurationExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals("[]", response.responseBody(), true);
     }
+
+    @Test
+    public void shouldRejectInvalidDeliverySettings() throws Exception {
+        ValidatePluginSettings settings = new ValidatePluginSettings();
+        settings.put("api_url", "https://api.example.com");
+        settings.put("api_user", "bob");
+        settings.put("api_key", "p@ssw0rd");
+        settings.put("room", "general");
+        settings.put("go_server_url", "https://ci.example.com");
+        settings.put("delivery_queue_capacity", "-5");
+        settings.put("delivery_workers", "two");
+        settings.put("delivery_overflow_policy", "block");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Delivery queue capacity must be a positive integer.\",\n" +
+                "    \"key\": \"delivery_queue_capacity\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"message\": \"Delivery workers must be a positive integer.\",\n" +
+                "    \"key\": \"delivery_workers\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"message\": \"Delivery queue overflow policy must be one of: drop_newest, drop_oldest, caller_runs.\",\n" +
+                "    \"key\": \"delivery_overflow_policy\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldRejectConsoleTailsLongerThanALogReadWhole() throws Exception {
+        ValidatePluginSettings settings = new ValidatePluginSettings();
+        settings.put("api_url", "https://api.example.com");
+        settings.put("api_user", "bob");
+        settings.put("api_key", "p@ssw0rd");
+        settings.put("room", "general");
+        settings.put("go_server_url", "https://ci.example.com");
+        settings.put("console_tail_bytes", "2000000000");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Console log tail per failed job (bytes, 0 to disable) must not be larger than 262144.\",\n" +
+                "    \"key\": \"console_tail_bytes\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldRejectInvalidRoutingRules() throws Exception {
+        ValidatePluginSettings settings = new ValidatePluginSettings();
+        settings.put("api_url", "https://api.example.com");
+        settings.put("api_user", "bob");
+        settings.put("api_key", "p@ssw0rd");
+        settings.put("room", "general");
+        settings.put("go_server_url", "https://ci.example.com");
+        settings.put("routing_rules", "group=payments => #payments\npipeline=deploy-*");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Routing rules are invalid. Line 2: expected '=> room' after the selectors\",\n" +
+                "    \"key\": \"routing_rules\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldRejectUnknownPlaceholdersInMessageTemplates() throws Exception {
+        ValidatePluginSettings settings = new ValidatePluginSettings();
+        settings.put("api_url", "https://api.example.com");
+        settings.put("api_user", "bob");
+        settings.put("api_key", "p@ssw0rd");
+        settings.put("room", "general");
+        settings.put("go_server_url", "https://ci.example.com");
+        settings.put("message_template_failed", "{pipeline} broke, ask {author}");
+        settings.put("message_template_fixed", "{pipeline} is green again after {duration}");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Message when a stage breaks is invalid: unknown placeholder {author}, use one of {pipeline}, " +
+                "{pipeline_counter}, {group}, {label}, {stage}, {stage_counter}, {stage_run}, {stage_url}, {vsm_url}, {failed_jobs}, " +
+                "{approver}, {duration}\",\n" +
+                "    \"key\": \"message_template_failed\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), true);
+    }
 }
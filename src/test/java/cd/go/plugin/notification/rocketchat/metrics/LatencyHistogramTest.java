@@ -0,0 +1,49 @@
+package cd.go.plugin.notification.rocketchat.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldPlaceEveryValueInABucketWhichContainsIt() {
+        for (long value : new long[]{0, 1, 3, 4, 5, 7, 8, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(LatencyHistogram.upperBoundOf(bucket), greaterThanOrEqualTo(value));
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.upperBoundOf(bucket - 1), is(lessThanOrEqualTo(value - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinAQuarterOfTheTrueValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount(), is(1000L));
+        assertThat(snapshot.getMeanMicros(), is(500L));
+        assertThat(snapshot.getP50Micros(), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(625L)));
+        assertThat(snapshot.getP99Micros(), allOf(greaterThanOrEqualTo(990L), lessThanOrEqualTo(1238L)));
+        assertThat(snapshot.getMaxMicros(), is(1000L));
+    }
+
+    @Test
+    public void shouldReportZerosWhenEmpty() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getP95Micros(), is(0L));
+    }
+}
@@ -0,0 +1,75 @@
+package cd.go.plugin.notification.rocketchat.metrics;
+
+import cd.go.plugin.notification.rocketchat.Request;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PluginMetricsTest {
+
+    @Test
+    public void shouldCountRequestsByType() {
+        PluginMetrics metrics = new PluginMetrics();
+
+        metrics.onRequest(Request.REQUEST_STAGE_STATUS);
+        metrics.onRequest(Request.REQUEST_STAGE_STATUS);
+        metrics.onRequest(null);
+
+        assertThat(metrics.getRequestCounts().get("stage-status"), is(2L));
+        assertThat(metrics.getRequestCounts().get("agent-status"), is(0L));
+        assertThat(metrics.getRequestCounts().get("unknown"), is(1L));
+    }
+
+    @Test
+    public void shouldBoundTheNumberOfStageStates() {
+        PluginMetrics metrics = new PluginMetrics();
+
+        for (int i = 0; i < 100; i++) {
+            metrics.onStageState("state-" + i);
+        }
+        metrics.onStageState("state-0");
+
+        assertThat(metrics.getStageStateCounts().size(), is(33));
+        assertThat(metrics.getStageStateCounts().get("state-0"), is(2L));
+        assertThat(metrics.getStageStateCounts().get("other"), is(68L));
+    }
+
+    @Test
+    public void shouldSkipFailingGauges() {
+        PluginMetrics metrics = new PluginMetrics();
+        metrics.gauge("depth", () -> 3);
+        metrics.gauge("broken", () -> {
+            throw new IllegalStateException("not ready");
+        });
+
+        assertThat(metrics.getGauges().size(), is(1));
+        assertThat(metrics.getGauges().get("depth"), is(3L));
+    }
+
+    @Test
+    public void shouldExportOverJmx() throws Exception {
+        PluginMetrics metrics = new PluginMetrics();
+        metrics.gauge("deliveryQueueDepth", () -> 7);
+        metrics.circuitState(() -> "OPEN");
+        metrics.onPost(false, System.nanoTime());
+        // a reloaded plugin replaces the previous registration
+        new PluginMetrics().register();
+        metrics.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PluginMetrics.OBJECT_NAME);
+
+        assertThat(server.getAttribute(name, "PostFailures"), is(1L));
+        assertThat(server.getAttribute(name, "CircuitState"), is("OPEN"));
+        assertThat(((CompositeData) server.getAttribute(name, "PostLatency")).get("count"), is(1L));
+        TabularData gauges = (TabularData) server.getAttribute(name, "Gauges");
+        assertThat(gauges.get(new Object[]{"deliveryQueueDepth"}).get("value"), is(7L));
+    }
+}
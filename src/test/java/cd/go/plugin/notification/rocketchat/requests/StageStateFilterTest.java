@@ -0,0 +1,107 @@
+package cd.go.plugin.notification.rocketchat.requests;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StageStateFilterTest {
+    private static final String BUILD_CAUSE = "\"build-cause\":[{\"material\":{\"type\":\"git\",\"state\":\"not the stage\"}," +
+            "\"modifications\":[{\"revision\":\"abc\",\"data\":{}}]}]";
+
+    @Test
+    public void shouldFindStageStateAfterTheBuildCause() {
+        String json = "{\"pipeline\":{\"name\":\"p\"," + BUILD_CAUSE + ",\"stage\":{\"name\":\"s\",\"state\":\"Passed\",\"result\":\"Passed\",\"jobs\":[]}}}";
+
+        assertThat(StageStateFilter.stageState(json), is("Passed"));
+    }
+
+    @Test
+    public void shouldUseResultWithoutState() {
+        String json = "{\"pipeline\":{\"stage\":{\"result\":\"Failed\",\"jobs\":[{\"state\":\"Completed\"}]}}}";
+
+        assertThat(StageStateFilter.stageState(json), is("Failed"));
+    }
+
+    @Test
+    public void shouldNotFindStateInBrokenOrIncompleteRequests() {
+        assertThat(StageStateFilter.stageState(null), is(nullValue()));
+        assertThat(StageStateFilter.stageState("[]"), is(nullValue()));
+        assertThat(StageStateFilter.stageState("{\"pipeline\":{\"name\":\"p\"}}"), is(nullValue()));
+        assertThat(StageStateFilter.stageState("{\"pipeline\":{\"stage\":{\"state\":null}}}"), is(nullValue()));
+        assertThat(StageStateFilter.stageState("{\"pipeline\":{\"stage\":{\"name\":"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldOnlyAcceptConfiguredStates() {
+        StageStateFilter filter = new StageStateFilter(Collections.singleton("Failed"));
+
+        assertThat(filter.accepts("Failed"), is(true));
+        assertThat(filter.accepts("failed"), is(true));
+        assertThat(filter.accepts("Passed"), is(false));
+        assertThat(filter.accepts("Building"), is(false));
+        assertThat(filter.rejectedCount(), is(2L));
+    }
+
+    @Test
+    public void shouldAcceptUnknownState() {
+        StageStateFilter filter = new StageStateFilter(Collections.singleton("Failed"));
+
+        assertThat(filter.accepts((String) null), is(true));
+    }
+
+    @Test
+    public void shouldFollowConfiguration() {
+        StageStateFilter filter = new StageStateFilter(Collections.singleton("Failed"));
+        filter.configure(Collections.singleton("Passed"));
+
+        assertThat(filter.accepts("Passed"), is(true));
+        assertThat(filter.accepts("Failed"), is(false));
+    }
+
+    @Test
+    public void shouldScanPipelineAndStageNames() {
+        String json = "{\"pipeline\":{\"name\":\"up42\"," + BUILD_CAUSE + ",\"stage\":{\"name\":\"build\",\"state\":\"Passed\"}}}";
+
+        StageStateFilter.Header header = StageStateFilter.scan(json);
+
+        assertThat(header.pipeline, is("up42"));
+        assertThat(header.stage, is("build"));
+        assertThat(header.state, is("Passed"));
+    }
+
+    @Test
+    public void shouldScanThePipelineNameAfterTheStage() {
+        String json = "{\"pipeline\":{\"stage\":{\"name\":\"build\",\"state\":\"Passed\",\"jobs\":[{\"name\":\"unit\"}]}," +
+                BUILD_CAUSE + ",\"name\":\"up42\"}}";
+
+        StageStateFilter.Header header = StageStateFilter.scan(json);
+
+        assertThat(header.pipeline, is("up42"));
+        assertThat(header.stage, is("build"));
+        assertThat(header.state, is("Passed"));
+    }
+
+    @Test
+    public void shouldAcceptConditionalStateWithoutThePipelineName() {
+        StageStateFilter filter = new StageStateFilter(Arrays.asList("Failed", "Passed"));
+        filter.onlyWhen("Passed", (pipeline, stage) -> false);
+
+        assertThat(filter.accepts(StageStateFilter.scan("{\"pipeline\":{\"stage\":{\"name\":\"build\",\"state\":\"Passed\"}}}")), is(true));
+        assertThat(filter.rejectedCount(), is(0L));
+    }
+
+    @Test
+    public void shouldAcceptConditionalStateOnlyForMatchingStages() {
+        StageStateFilter filter = new StageStateFilter(Arrays.asList("Failed", "Passed"));
+        filter.onlyWhen("Passed", (pipeline, stage) -> "up42".equals(pipeline) && "build".equals(stage));
+
+        assertThat(filter.accepts(new StageStateFilter.Header("up42", "build", "Passed")), is(true));
+        assertThat(filter.accepts(new StageStateFilter.Header("up42", "test", "Passed")), is(false));
+        assertThat(filter.accepts(new StageStateFilter.Header("up42", "test", "Failed")), is(true));
+    }
+}
@@ -16,6 +16,7 @@
 
 package cd.go.plugin.notification.rocketchat.requests;
 
+import com.google.gson.JsonSyntaxException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -23,6 +24,10 @@ import org.skyscreamer.jsonassert.JSONAssert;
 
 import java.util.TimeZone;
 
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
 public class StageStatusRequestTest {
     @Before
     public void setUp() {
@@ -36,7 +41,42 @@ public class StageStatusRequestTest {
 
     @Test
     public void shouldDeserializeFromJSONWithoutLoosingAnyData() throws Exception {
-        String json = "{\n" +
+        String json = payload();
+
+        StageStatusRequest request = StageStatusRequest.GSON.fromJson(json, StageStatusRequest.class);
+        String serializedAgain = StageStatusRequest.GSON.toJson(request);
+        JSONAssert.assertEquals(json, serializedAgain, true);
+    }
+
+    @Test
+    public void shouldReadEverythingButTheBuildCauseWhenStreaming() throws Exception {
+        StageStatusRequest expected = StageStatusRequest.GSON.fromJson(payload(), StageStatusRequest.class);
+        expected.pipeline.buildCause = null;
+
+        StageStatusRequest request = StageStatusRequest.fromJSON(payload());
+
+        assertThat(request.pipeline.buildCause, is(nullValue()));
+        JSONAssert.assertEquals(StageStatusRequest.GSON.toJson(expected), StageStatusRequest.GSON.toJson(request), true);
+    }
+
+    @Test
+    public void shouldIgnoreUnknownFieldsAndNulls() throws Exception {
+        StageStatusRequest request = StageStatusRequest.fromJSON("{\"pipeline\":{\"name\":\"up42\",\"counter\":42,\"new-field\":{\"a\":[1,2]}," +
+                "\"stage\":{\"name\":\"build\",\"create-time\":null,\"jobs\":[{\"name\":\"unit\",\"result\":null}]}},\"extra\":true}");
+
+        assertThat(request.pipeline.name, is("up42"));
+        assertThat(request.pipeline.counter, is("42"));
+        assertThat(request.pipeline.stage.createTime, is(nullValue()));
+        assertThat(request.pipeline.stage.jobs.get(0).name, is("unit"));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void shouldReportMalformedPayloadsLikeGson() {
+        StageStatusRequest.fromJSON("{\"pipeline\":{\"stage\":[]}}");
+    }
+
+    private static String payload() {
+        return "{\n" +
                 "  \"pipeline\": {\n" +
                 "    \"name\": \"pipeline-name\",\n" +
                 "    \"counter\": \"1\",\n" +
@@ -210,9 +250,5 @@ public class StageStatusRequestTest {
                 "    }\n" +
                 "  }\n" +
                 "}";
-
-        StageStatusRequest request = StageStatusRequest.fromJSON(json);
-        String serializedAgain = StageStatusRequest.GSON.toJson(request);
-        JSONAssert.assertEquals(json, serializedAgain, true);
     }
 }
@@ -0,0 +1,71 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URLDecoder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LinkBuilderTest {
+    private StageStatusRequest.Pipeline pipeline;
+    private StageStatusRequest.Job job;
+
+    @Before
+    public void setUp() {
+        pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = "up42";
+        pipeline.counter = "3";
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = "test";
+        pipeline.stage.counter = "1";
+        job = new StageStatusRequest.Job();
+        job.name = "unit";
+    }
+
+    @Test
+    public void shouldIgnoreTrailingSlashesOfTheServerUrl() {
+        LinkBuilder links = new LinkBuilder("https://gocd.example.com:8154/");
+
+        assertThat(links.stage(pipeline), is("https://gocd.example.com:8154/go/pipelines/up42/3/test/1"));
+        assertThat(links.vsm(pipeline), is("https://gocd.example.com:8154/go/pipelines/value_stream_map/up42/3"));
+        assertThat(links.jobConsole(pipeline, job), is("https://gocd.example.com:8154/go/tab/build/detail/up42/3/test/1/unit#tab-console"));
+    }
+
+    @Test
+    public void shouldEncodeNamesWhichAreNotValidPathSegments() {
+        job.name = "unit tests [linux] (x64)";
+
+        String link = new LinkBuilder("https://gocd.example.com").jobConsole(pipeline, job);
+
+        assertThat(link, is("https://gocd.example.com/go/tab/build/detail/up42/3/test/1/unit%20tests%20%5Blinux%5D%20%28x64%29#tab-console"));
+        assertThat(URI.create(link).getPath(), is("/go/tab/build/detail/up42/3/test/1/unit tests [linux] (x64)"));
+    }
+
+    @Test
+    public void shouldEncodeNonAsciiNamesAsUtf8() throws Exception {
+        String name = "zażółć-🚀/ok";
+
+        String encoded = LinkBuilder.appendSegment(new StringBuilder(), name).toString();
+
+        assertThat(encoded, is("za%C5%BC%C3%B3%C5%82%C4%87-%F0%9F%9A%80%2Fok"));
+        assertThat(URLDecoder.decode(encoded, Charsets.UTF_8.name()), is(name));
+    }
+
+    @Test
+    public void shouldShareTheJobConsolePrefixOfAStageRun() {
+        LinkBuilder links = new LinkBuilder("http://go");
+        String prefix = links.jobConsolePrefix(pipeline);
+        StringBuilder out = new StringBuilder();
+
+        links.appendJobConsole(out, prefix, job).append(' ');
+        job.name = "lint";
+        links.appendJobConsole(out, prefix, job);
+
+        assertThat(out.toString(), is("http://go/go/tab/build/detail/up42/3/test/1/unit#tab-console http://go/go/tab/build/detail/up42/3/test/1/lint#tab-console"));
+    }
+}
@@ -1,34 +1,33 @@
 package cd.go.plugin.notification.rocketchat.rocket;
 
-import cd.go.plugin.notification.rocketchat.PluginRequest;
 import cd.go.plugin.notification.rocketchat.PluginSettings;
-import cd.go.plugin.notification.rocketchat.ServerRequestFailedException;
+import cd.go.plugin.notification.rocketchat.console.GoServerStub;
 import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
 import com.github.baloise.rocketchatrestclient.model.Attachment;
 import com.github.baloise.rocketchatrestclient.model.AttachmentField;
 import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Strings;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 
+import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class MessageBuilderServiceTest {
 
-    private PluginRequest pluginRequest;
+    private PluginSettings settings;
     StageStatusRequest.Pipeline pipeline;
     private MessageBuilderService service;
 
     @Before
-    public void setUp() throws ServerRequestFailedException {
-        pluginRequest = mock(PluginRequest.class);
-        PluginSettings settings = new PluginSettings();
+    public void setUp() {
+        settings = new PluginSettings();
         settings.setGoServerUrl("http://go.ai-traders.com");
-        when(pluginRequest.getPluginSettings()).thenReturn(settings);
 
         pipeline = new StageStatusRequest.Pipeline();
         pipeline.name = "pipe";
@@ -59,19 +58,19 @@ public class MessageBuilderServiceTest {
 
     @Test
     public void shouldBuildFullStageUri() {
-        String uri = service.stageFullUrl(pipeline, pluginRequest);
+        String uri = service.stageFullUrl(pipeline, settings);
         assertThat(uri, is("http://go.ai-traders.com/go/pipelines/pipe/3/stage/1"));
     }
 
     @Test
     public void shouldBuildTopMessageWithLinkToStage() {
-        String message = service.getTopMessage(pipeline, pluginRequest);
+        String message = service.getTopMessage(pipeline, settings);
         assertThat(message, is("Stage [pipe/3/stage/1](http://go.ai-traders.com/go/pipelines/pipe/3/stage/1) has failed"));
     }
 
     @Test
     public void shouldAttachBuildDetailsToFinalMessage() {
-        Message message = service.onStageStatusChanged(pluginRequest, pipeline);
+        Message message = service.onStageStatusChanged(settings, pipeline);
         Attachment first = message.getAttachments()[0];
         AttachmentField label = first.getFields()[0];
         assertThat(label.getTitle(), is("Label"));
@@ -80,8 +79,125 @@ public class MessageBuilderServiceTest {
 
     @Test
     public void shouldBuildFailedJobsText() {
-        String text = service.getFailedJobsText(pipeline, pluginRequest);
+        String text = service.getFailedJobsText(pipeline, settings);
         assertThat(text, is(" - [job1](http://go.ai-traders.com/go/tab/build/detail/pipe/3/stage/1/job1#tab-console) failed\n" +
         " - [job2](http://go.ai-traders.com/go/tab/build/detail/pipe/3/stage/1/job2#tab-console) was cancelled"));
     }
+
+    @Test
+    public void shouldOnlyPostWhenStageBreaksOrIsFixed() {
+        assertThat(service.onStageStatusChanged(settings, pipeline) != null, is(true));
+
+        pipeline.counter = "4";
+        assertThat(service.onStageStatusChanged(settings, pipeline), is(nullValue()));
+        assertThat(service.isBroken("pipe", "stage"), is(true));
+
+        pipeline.counter = "5";
+        pipeline.stage.state = "Passed";
+        Message fixed = service.onStageStatusChanged(settings, pipeline);
+        assertThat(fixed.getText(), is("Stage [pipe/5/stage/1](http://go.ai-traders.com/go/pipelines/pipe/5/stage/1) is fixed"));
+
+        pipeline.counter = "6";
+        assertThat(service.onStageStatusChanged(settings, pipeline), is(nullValue()));
+        assertThat(service.isBroken("pipe", "stage"), is(false));
+    }
+
+    @Test
+    public void shouldIgnoreResultsOfOlderRuns() {
+        pipeline.counter = "5";
+        service.onStageStatusChanged(settings, pipeline);
+
+        pipeline.counter = "4";
+        pipeline.stage.state = "Passed";
+        assertThat(service.onStageStatusChanged(settings, pipeline), is(nullValue()));
+        assertThat(service.isBroken("pipe", "stage"), is(true));
+    }
+
+    @Test
+    public void shouldRenderMessagesFromTheConfiguredTemplates() {
+        settings.setMessageTemplateFailed(":red_circle: {pipeline} {label} broke in {stage}\n{failed_jobs}");
+        settings.setMessageTemplateFixed(":green_heart: {pipeline} {label} is green again");
+
+        Message failed = service.onStageStatusChanged(settings, pipeline);
+        assertThat(failed.getText(), is(":red_circle: pipe abc broke in stage\n" +
+                " - [job1](http://go.ai-traders.com/go/tab/build/detail/pipe/3/stage/1/job1#tab-console) failed\n" +
+                " - [job2](http://go.ai-traders.com/go/tab/build/detail/pipe/3/stage/1/job2#tab-console) was cancelled"));
+
+        pipeline.counter = "4";
+        pipeline.stage.state = "Passed";
+        assertThat(service.onStageStatusChanged(settings, pipeline).getText(), is(":green_heart: pipe abc is green again"));
+    }
+
+    @Test
+    public void shouldFallBackToTheDefaultForAnInvalidTemplate() {
+        settings.setMessageTemplateFailed("{pipeline} broke, ask {author}");
+
+        assertThat(service.getTopMessage(pipeline, settings), is("Stage [pipe/3/stage/1](http://go.ai-traders.com/go/pipelines/pipe/3/stage/1) has failed"));
+    }
+
+    @Test
+    public void shouldKeepHugeFailedJobListsWithinTheConfiguredSize() {
+        pipeline.stage.jobs.clear();
+        for (int i = 0; i < 800; i++) {
+            StageStatusRequest.Job job = new StageStatusRequest.Job();
+            job.result = "Failed";
+            job.name = "matrix-" + i;
+            pipeline.stage.jobs.add(job);
+        }
+        settings.setFailedJobsMaxBytes("2000");
+
+        String text = service.getFailedJobsText(pipeline, settings);
+
+        String[] lines = text.split("\n");
+        assertThat(text.length() <= 2000, is(true));
+        assertThat(lines[lines.length - 1], is(" - and " + (800 - (lines.length - 1)) + " more"));
+    }
+
+    @Test
+    public void shouldAttachConsoleTailsOfFailedJobs() throws Exception {
+        try (GoServerStub go = GoServerStub.start()) {
+            go.consoleLog("pipe/3/stage/1", "job1", "npm test\n```\nAssertionError: expected 2\n");
+            settings.setGoServerUrl(go.url());
+            settings.setConsoleTailBytes("4096");
+
+            Message message = service.onStageFailed(pipeline, settings);
+
+            assertThat(message.getAttachments().length, is(2));
+            Attachment console = message.getAttachments()[1];
+            assertThat(console.getTitle(), is("job1 console"));
+            assertThat(console.getTitleLink(), is(go.url() + "/go/tab/build/detail/pipe/3/stage/1/job1#tab-console"));
+            assertThat(console.getText(), is("```\nnpm test\n'''\nAssertionError: expected 2\n```"));
+        }
+    }
+
+    @Test
+    public void shouldKeepConsoleTailsWithinTheMessageSize() throws Exception {
+        StageStatusRequest.Job j3 = new StageStatusRequest.Job();
+        j3.result = "Failed";
+        j3.name = "job3";
+        pipeline.stage.jobs.add(j3);
+        try (GoServerStub go = GoServerStub.start()) {
+            String log = Strings.repeat("compiling a rather long line\n", 1000) + "BUILD FAILED\n";
+            go.consoleLog("pipe/3/stage/1", "job1", log);
+            go.consoleLog("pipe/3/stage/1", "job3", log);
+            settings.setGoServerUrl(go.url());
+            settings.setConsoleTailBytes("65536");
+            settings.setMessageMaxSize("1000");
+
+            Message message = service.onStageFailed(pipeline, settings);
+
+            assertThat(message.getAttachments().length, is(3));
+            int size = message.getText().length();
+            for (Attachment attachment : message.getAttachments()) {
+                size += attachment.getTitle() == null ? 0 : attachment.getTitle().length();
+                size += attachment.getText() == null ? 0 : attachment.getText().length();
+                for (AttachmentField field : attachment.getFields() == null ? new AttachmentField[0] : attachment.getFields()) {
+                    size += field.getTitle().length() + field.getValue().length();
+                }
+            }
+            assertThat(size <= 1000, is(true));
+            assertThat(message.getAttachments()[2].getText(), startsWith("```\ncompiling a rather long line\n"));
+            assertThat(message.getAttachments()[2].getText(), endsWith("compiling a rather long line\nBUILD FAILED\n```"));
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MessageTemplateTest {
+    private final LinkBuilder links = new LinkBuilder("https://gocd.example.com");
+    private StageStatusRequest.Pipeline pipeline;
+
+    @Before
+    public void setUp() {
+        pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = "up42";
+        pipeline.counter = "7";
+        pipeline.label = "1.0.7";
+        pipeline.group = "first";
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = "test";
+        pipeline.stage.counter = "2";
+        pipeline.stage.approvedBy = "alice";
+        pipeline.stage.createTime = new Date(0);
+        pipeline.stage.lastTransitionTime = new Date(((3 * 60) + 25) * 1000L);
+        pipeline.stage.jobs = new ArrayList<>();
+        StageStatusRequest.Job job = new StageStatusRequest.Job();
+        job.name = "unit";
+        job.result = "Failed";
+        pipeline.stage.jobs.add(job);
+    }
+
+    @Test
+    public void shouldRenderEveryPlaceholder() {
+        String text = render("{pipeline} {pipeline_counter} {group} {label} {stage} {stage_counter} {stage_run} {approver} {duration}");
+
+        assertThat(text, is("up42 7 first 1.0.7 test 2 up42/7/test/2 alice 3m 25s"));
+    }
+
+    @Test
+    public void shouldRenderLinksAndFailedJobs() {
+        String text = render("[{label}]({vsm_url}) [stage]({stage_url})\n{failed_jobs}");
+
+        assertThat(text, is("[1.0.7](https://gocd.example.com/go/pipelines/value_stream_map/up42/7) " +
+                "[stage](https://gocd.example.com/go/pipelines/up42/7/test/2)\n" +
+                " - [unit](https://gocd.example.com/go/tab/build/detail/up42/7/test/2/unit#tab-console) failed"));
+    }
+
+    @Test
+    public void shouldKeepTextWithoutPlaceholdersAndEscapedBraces() {
+        assertThat(render("no placeholders } here"), is("no placeholders } here"));
+        assertThat(render("{{pipeline} is {pipeline}"), is("{pipeline} is up42"));
+        assertThat(render(""), is(""));
+    }
+
+    @Test
+    public void shouldLeaveMissingValuesEmpty() {
+        pipeline.stage.approvedBy = null;
+        pipeline.stage.lastTransitionTime = null;
+
+        assertThat(render("by [{approver}] in [{duration}]"), is("by [] in []"));
+    }
+
+    @Test
+    public void shouldListOnlyTheFailedJobsWhichFitTheBudget() {
+        addJobs(5);
+        String line = " - [job-1](https://gocd.example.com/go/tab/build/detail/up42/7/test/2/job-1#tab-console) failed";
+        // the first two lines and the line break between them, then no room for the count after a third
+        int twoLines = 2 * MessageTemplate.utf8Length(line, 0, line.length()) + 1;
+
+        String text = MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, links, twoLines + 1 + MessageTemplate.OMITTED_JOBS_RESERVE).toString();
+        assertThat(text, is(" - [unit](https://gocd.example.com/go/tab/build/detail/up42/7/test/2/unit#tab-console) failed\n" +
+                " - [job-1](https://gocd.example.com/go/tab/build/detail/up42/7/test/2/job-1#tab-console) failed\n" +
+                " - and 4 more"));
+
+        text = MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, links, twoLines).toString();
+        assertThat(text, is(" - [unit](https://gocd.example.com/go/tab/build/detail/up42/7/test/2/unit#tab-console) failed\n" +
+                " - and 5 more"));
+    }
+
+    @Test
+    public void shouldListEveryFailedJobWithinTheBudget() {
+        addJobs(5);
+        String all = MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, links, Integer.MAX_VALUE).toString();
+
+        assertThat(MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, links, MessageTemplate.utf8Length(all, 0, all.length())).toString(), is(all));
+        assertThat(all.contains("more"), is(false));
+    }
+
+    @Test
+    public void shouldStayWithinEveryBudgetWithShortJobNames() {
+        pipeline.stage.jobs.clear();
+        for (int i = 0; i < 40; i++) {
+            StageStatusRequest.Job job = new StageStatusRequest.Job();
+            job.name = String.valueOf((char) ('a' + i % 26));
+            job.result = "Failed";
+            pipeline.stage.jobs.add(job);
+        }
+        LinkBuilder shortLinks = new LinkBuilder("http://g");
+        String all = MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, shortLinks, Integer.MAX_VALUE).toString();
+
+        for (int budget = MessageTemplate.OMITTED_JOBS_RESERVE; budget <= all.length(); budget++) {
+            String text = MessageTemplate.appendFailedJobs(new StringBuilder(), pipeline, shortLinks, budget).toString();
+            String[] lines = text.split("\n");
+            String last = lines[lines.length - 1];
+
+            assertThat("budget " + budget, MessageTemplate.utf8Length(text, 0, text.length()) <= budget, is(true));
+            int listed = last.startsWith(" - and ") ? lines.length - 1 : lines.length;
+            int counted = last.startsWith(" - and ") ? Integer.parseInt(last.replaceAll("\\D", "")) : 0;
+            assertThat("budget " + budget, listed + counted, is(40));
+        }
+    }
+
+    @Test
+    public void shouldOnlyCountJobsWhenNotEvenOneFits() {
+        addJobs(2);
+
+        assertThat(render("jobs:\n{failed_jobs}", 10), is("jobs:\n - and 3 more"));
+    }
+
+    @Test
+    public void shouldMeasureUtf8Bytes() {
+        String text = "a\u00e9\u20ac\ud83d\ude80";
+
+        assertThat(MessageTemplate.utf8Length(text, 0, text.length()), is(text.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test
+    public void shouldFormatDurations() {
+        assertThat(MessageTemplate.appendDuration(new StringBuilder(), new Date(0), new Date(45000)).toString(), is("45s"));
+        assertThat(MessageTemplate.appendDuration(new StringBuilder(), new Date(0), new Date((2 * 3600 + 5 * 60 + 9) * 1000L)).toString(), is("2h 5m"));
+    }
+
+    @Test
+    public void shouldRejectUnknownAndUnterminatedPlaceholders() {
+        assertInvalid("{pipeline} by {author}", "unknown placeholder {author}");
+        assertInvalid("{pipeline", "unterminated placeholder at '{pipeline'");
+    }
+
+    @Test
+    public void shouldKnowWhichTextItWasCompiledFrom() {
+        MessageTemplate template = MessageTemplate.compile("{pipeline} broke");
+
+        assertThat(template.isFor("{pipeline} broke"), is(true));
+        assertThat(template.isFor("{pipeline} is broken"), is(false));
+        assertThat(template.standingInFor("{author}").isFor("{author}"), is(true));
+    }
+
+    private String render(String template) {
+        return MessageTemplate.compile(template).appendTo(new StringBuilder(), pipeline, links).toString();
+    }
+
+    private String render(String template, int failedJobsMaxBytes) {
+        return MessageTemplate.compile(template).appendTo(new StringBuilder(), pipeline, links, failedJobsMaxBytes).toString();
+    }
+
+    private void addJobs(int count) {
+        for (int i = 1; i <= count; i++) {
+            StageStatusRequest.Job job = new StageStatusRequest.Job();
+            job.name = "job-" + i;
+            job.result = "Failed";
+            pipeline.stage.jobs.add(job);
+            StageStatusRequest.Job passed = new StageStatusRequest.Job();
+            passed.name = "passed-" + i;
+            passed.result = "Passed";
+            pipeline.stage.jobs.add(passed);
+        }
+    }
+
+    private static void assertInvalid(String template, String message) {
+        try {
+            MessageTemplate.compile(template);
+            fail("expected " + template + " to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+}
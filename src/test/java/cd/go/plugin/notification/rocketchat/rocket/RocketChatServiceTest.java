@@ -0,0 +1,163 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import cd.go.plugin.notification.rocketchat.PluginSettings;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RocketChatServiceTest {
+    private RocketChatStub stub;
+    private final AtomicInteger transports = new AtomicInteger();
+    private RocketChatService service;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = RocketChatStub.start();
+        service = new RocketChatService() {
+            @Override
+            protected RocketChatTransport newTransport(RocketChatSettings settings) {
+                transports.incrementAndGet();
+                return super.newTransport(settings);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    public void shouldKeepTheClientForUnchangedSettings() throws Exception {
+        PluginSettings settings = settings("bot", "builds");
+        service.configure(settings);
+        service.configure(settings);
+        service.configure(settings("bot", "builds"));
+        service.postMessage(new Message("hello"));
+
+        assertThat(transports.get(), is(1));
+        assertThat(stub.loginCount(), is(1));
+    }
+
+    @Test
+    public void shouldKeepTheTransportWhenOnlyTheRoomChanges() throws Exception {
+        service.configure(settings("bot", "builds"));
+        service.postMessage(new Message("first"));
+        service.configure(settings("bot", "deployments"));
+        service.postMessage(new Message("second"));
+
+        assertThat(transports.get(), is(1));
+        assertThat(stub.loginCount(), is(1));
+        assertThat(stub.posts().get(1).get("channel").getAsString(), is("#deployments"));
+    }
+
+    @Test
+    public void shouldCloseAReplacedTransportOnceItsPostIsDone() throws Exception {
+        stub.latencyMillis(300);
+        service.configure(settings("bot", "builds"));
+        service.postMessage(new Message("logs in"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> slowPost = executor.submit(() -> {
+            service.postMessage(new Message("slow"));
+            return null;
+        });
+        Thread.sleep(100);
+
+        service.configure(settings("other-bot", "builds"));
+        assertThat(stub.logoutCount(), is(0));
+
+        slowPost.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertThat(stub.logoutCount(), is(1));
+        assertThat(stub.postsBy("bot").size(), is(2));
+    }
+
+    @Test
+    public void shouldPostWithOneConsistentConfigurationWhileBeingReconfigured() throws Exception {
+        int threads = 16;
+        PluginSettings[] configurations = {settings("bot-a", "room-a"), settings("bot-b", "room-b")};
+        service.configure(configurations[0]);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> posters = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            posters.add(executor.submit(() -> {
+                started.countDown();
+                int posted = 0;
+                while (running.get()) {
+                    service.postMessage(new Message("stress"));
+                    posted++;
+                }
+                return posted;
+            }));
+        }
+        started.await();
+        for (int i = 1; i <= 200; i++) {
+            service.configure(configurations[i % 2]);
+            Thread.sleep(2);
+        }
+        running.set(false);
+        int posted = 0;
+        for (Future<Integer> poster : posters) {
+            // a post which failed rethrows here
+            posted += poster.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        service.postMessage(new Message("after"));
+
+        assertThat(stub.postCount(), is(posted + 1));
+        for (JsonObject post : stub.postsBy("bot-a")) {
+            assertThat(post.get("channel").getAsString(), is("#room-a"));
+        }
+        for (JsonObject post : stub.postsBy("bot-b")) {
+            assertThat(post.get("channel").getAsString(), is("#room-b"));
+        }
+        assertThat(stub.postsBy("bot-b").size(), greaterThan(0));
+        // every replaced transport which logged in logged out again, only the current one is left
+        assertThat(stub.logoutCount(), is(stub.loginCount() - 1));
+    }
+
+    @Test
+    public void shouldCountOpenedAndRejectedCircuits() throws Exception {
+        assertThat(service.circuitOpenedCount(), is(0L));
+        stub.errorRate(1);
+        service.configure(PluginSettings.fromJSON("{\"api_url\":\"" + stub.url() + "\",\"api_user\":\"bot\",\"api_key\":\"secret\"," +
+                "\"room\":\"builds\",\"retry_max_attempts\":\"1\",\"circuit_breaker_failure_threshold\":\"1\"}"));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                service.postMessage(new Message("hello"));
+                fail("expected the post to fail");
+            }
+            catch (IOException expected) {
+            }
+        }
+
+        assertThat(service.circuitOpenedCount(), is(1L));
+        assertThat(service.circuitRejectedCount(), is(2L));
+    }
+
+    private PluginSettings settings(String user, String room) {
+        return PluginSettings.fromJSON("{\"api_url\":\"" + stub.url() + "\",\"api_user\":\"" + user + "\",\"api_key\":\"secret\"," +
+                "\"room\":\"" + room + "\",\"rate_limit_per_minute\":\"1000000\",\"rate_limit_burst\":\"10000\"}");
+    }
+}
@@ -0,0 +1,257 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for a Rocket.Chat server on a local port, for tests which go over HTTP.
+ * <p>
+ * Implements {@code /api/v1/login}, {@code /api/v1/logout}, {@code /api/v1/chat.postMessage} and
+ * {@code /api/v1/rooms.info}, and can add
+ * latency to every response, answer a share of the posts with 500 and another share with 429 and rate limit headers.
+ * Failures are drawn from a seeded random, so a run can be repeated.
+ */
+public class RocketChatStub implements Closeable {
+    static {
+        // without it every response waits for the delayed ack of its headers, about 40 ms; read once per JVM, the
+        // build sets it for all tests in case another server was started first
+        if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random(42);
+    private final ConcurrentLinkedQueue<JsonObject> posts = new ConcurrentLinkedQueue<>();
+    private final Map<String, ConcurrentLinkedQueue<JsonObject>> postsByUser = new ConcurrentHashMap<>();
+    // auth token to user
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger logouts = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile long rateLimitResetMillis = 100;
+
+    private RocketChatStub(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static RocketChatStub start() throws IOException {
+        // room for bursts of new connections, the default backlog of 50 drops some and they wait a second for the retry
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        // a thread per request in flight, so latency does not queue requests behind each other
+        ExecutorService executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rocketchat-stub-%d").build());
+        RocketChatStub stub = new RocketChatStub(server, executor);
+        server.setExecutor(executor);
+        server.createContext("/api/v1/login", stub::login);
+        server.createContext("/api/v1/logout", stub::logout);
+        server.createContext("/api/v1/chat.postMessage", stub::postMessage);
+        server.createContext("/api/v1/rooms.info", stub::roomInfo);
+        server.start();
+        return stub;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public RocketChatStub latencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param errorRate share of posts answered with 500, 0 to 1
+     */
+    public RocketChatStub errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param rateLimitRate share of posts answered with 429, 0 to 1
+     */
+    public RocketChatStub rateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+        return this;
+    }
+
+    /**
+     * @param rateLimitResetMillis how long after a 429 the {@code X-RateLimit-Reset} header lies
+     */
+    public RocketChatStub rateLimitResetMillis(long rateLimitResetMillis) {
+        this.rateLimitResetMillis = rateLimitResetMillis;
+        return this;
+    }
+
+    /**
+     * Rejects every token handed out so far, the next post has to log in again.
+     */
+    public void expireToken() {
+        tokens.clear();
+    }
+
+    /**
+     * @return bodies of the accepted posts, in the order they arrived
+     */
+    public List<JsonObject> posts() {
+        return new ArrayList<>(posts);
+    }
+
+    public List<JsonObject> postsBy(String user) {
+        ConcurrentLinkedQueue<JsonObject> posted = postsByUser.get(user);
+        return posted == null ? new ArrayList<>() : new ArrayList<>(posted);
+    }
+
+    public int postCount() {
+        return posts.size();
+    }
+
+    public int loginCount() {
+        return logins.get();
+    }
+
+    public int logoutCount() {
+        return logouts.get();
+    }
+
+    public int errorCount() {
+        return errors.get();
+    }
+
+    public int rateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        JsonObject request = new JsonParser().parse(new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8)).getAsJsonObject();
+        delay();
+        String user = request.get("user").getAsString();
+        String token = "token-" + logins.incrementAndGet();
+        tokens.put(token, user);
+        respond(exchange, 200, "{\"status\":\"success\",\"data\":{\"userId\":\"" + user + "\",\"authToken\":\"" + token + "\"}}");
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        ByteStreams.exhaust(exchange.getRequestBody());
+        delay();
+        if(authorized(exchange) == null) {
+            return;
+        }
+        tokens.remove(exchange.getRequestHeaders().getFirst("X-Auth-Token"));
+        logouts.incrementAndGet();
+        respond(exchange, 200, "{\"status\":\"success\",\"data\":{\"message\":\"You've been logged out!\"}}");
+    }
+
+    private void postMessage(HttpExchange exchange) throws IOException {
+        byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+        delay();
+        String user = authorized(exchange);
+        if(user == null) {
+            return;
+        }
+        double draw;
+        synchronized (random) {
+            draw = random.nextDouble();
+        }
+        if(draw < rateLimitRate) {
+            rateLimited.incrementAndGet();
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() + rateLimitResetMillis));
+            respond(exchange, 429, "{\"success\":false,\"error\":\"error-too-many-requests\"}");
+            return;
+        }
+        if(draw < rateLimitRate + errorRate) {
+            errors.incrementAndGet();
+            respond(exchange, 500, "{\"success\":false,\"error\":\"Internal server error\"}");
+            return;
+        }
+        JsonObject post = new JsonParser().parse(new String(body, Charsets.UTF_8)).getAsJsonObject();
+        posts.add(post);
+        postsByUser.computeIfAbsent(user, key -> new ConcurrentLinkedQueue<>()).add(post);
+        respond(exchange, 200, "{\"success\":true,\"channel\":\"" + post.get("channel").getAsString() + "\"}");
+    }
+
+    private void roomInfo(HttpExchange exchange) throws IOException {
+        ByteStreams.exhaust(exchange.getRequestBody());
+        delay();
+        if(authorized(exchange) == null) {
+            return;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        String name = query != null && query.startsWith("roomName=") ? query.substring("roomName=".length()) : null;
+        if(name == null || name.isEmpty()) {
+            respond(exchange, 400, "{\"success\":false,\"error\":\"The 'roomId' or 'roomName' param is required\"}");
+            return;
+        }
+        respond(exchange, 200, "{\"success\":true,\"room\":{\"_id\":\"room-" + Integer.toHexString(name.hashCode()) +
+                "\",\"name\":\"" + name + "\",\"t\":\"c\"}}");
+    }
+
+    /**
+     * @return the user the auth token belongs to, null after answering 401
+     */
+    private String authorized(HttpExchange exchange) throws IOException {
+        String token = exchange.getRequestHeaders().getFirst("X-Auth-Token");
+        String user = token == null ? null : tokens.get(token);
+        if(user == null || !user.equals(exchange.getRequestHeaders().getFirst("X-User-Id"))) {
+            respond(exchange, 401, "{\"status\":\"error\",\"message\":\"You must be logged in to do this.\"}");
+            return null;
+        }
+        return user;
+    }
+
+    private void delay() {
+        long millis = latencyMillis;
+        if(millis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
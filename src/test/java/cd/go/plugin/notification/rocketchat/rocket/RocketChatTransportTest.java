@@ -0,0 +1,175 @@
+package cd.go.plugin.notification.rocketchat.rocket;
+
+import com.github.baloise.rocketchatrestclient.model.Attachment;
+import com.github.baloise.rocketchatrestclient.model.Message;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RocketChatTransportTest {
+    private HttpServer server;
+    private final List<String> posts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger logins = new AtomicInteger();
+    private volatile String validToken = "token-1";
+    private volatile int postStatus = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/login", exchange -> {
+            String token = "token-" + logins.incrementAndGet();
+            validToken = token;
+            respond(exchange, 200, "{\"status\":\"success\",\"data\":{\"userId\":\"u1\",\"authToken\":\"" + token + "\"}}");
+        });
+        server.createContext("/api/v1/chat.postMessage", exchange -> {
+            if(!validToken.equals(exchange.getRequestHeaders().getFirst("X-Auth-Token"))) {
+                respond(exchange, 401, "{\"status\":\"error\",\"message\":\"You must be logged in to do this.\"}");
+                return;
+            }
+            posts.add(new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "7");
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", "1550000000000");
+            respond(exchange, postStatus, postStatus == 200 ? "{\"success\":true}" : "{\"success\":false,\"error\":\"error-not-allowed\"}");
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldLogInOnceForManyPosts() throws Exception {
+        RocketChatTransport transport = transport();
+
+        for (int i = 0; i < 5; i++) {
+            transport.postMessage("builds", new Message("hello " + i), (remaining, reset) -> { });
+        }
+
+        assertThat(posts.size(), is(5));
+        assertThat(logins.get(), is(1));
+        assertThat(transport.loginCount(), is(1L));
+    }
+
+    @Test
+    public void shouldLogInAgainWhenTheTokenExpires() throws Exception {
+        RocketChatTransport transport = transport();
+        transport.postMessage("builds", new Message("first"), (remaining, reset) -> { });
+
+        validToken = "expired";
+        transport.postMessage("builds", new Message("second"), (remaining, reset) -> { });
+
+        assertThat(posts.size(), is(2));
+        assertThat(logins.get(), is(2));
+    }
+
+    @Test
+    public void shouldReportRateLimitHeaders() throws Exception {
+        long[] observed = new long[2];
+
+        transport().postMessage("builds", new Message("hello"), (remaining, reset) -> {
+            observed[0] = remaining;
+            observed[1] = reset;
+        });
+
+        assertThat(observed[0], is(7L));
+        assertThat(observed[1], is(1550000000000L));
+    }
+
+    @Test
+    public void shouldThrowTheStatusOfRefusedPosts() throws Exception {
+        postStatus = 400;
+        try {
+            transport().postMessage("builds", new Message("hello"), (remaining, reset) -> { });
+            fail("expected the post to be refused");
+        }
+        catch (RocketChatApiException e) {
+            assertThat(e.getStatusCode(), is(400));
+            assertThat(e.getMessage(), is("Rocket.Chat refused the message to builds with 400: error-not-allowed"));
+        }
+    }
+
+    @Test
+    public void shouldReportRateLimitedPosts() throws Exception {
+        try (RocketChatStub stub = RocketChatStub.start().rateLimitRate(1).rateLimitResetMillis(5000)) {
+            new RocketChatTransport(stub.url(), "bot", "secret", 1000, 1000).postMessage("builds", new Message("hello"), (remaining, reset) -> { });
+            fail("expected the post to be rate limited");
+        }
+        catch (RocketChatApiException e) {
+            assertThat(e.isRateLimited(), is(true));
+            assertThat(e.getRateLimitReset(), greaterThan(System.currentTimeMillis()));
+        }
+    }
+
+    @Test
+    public void shouldLogInAgainWhenTheStubExpiresTheToken() throws Exception {
+        try (RocketChatStub stub = RocketChatStub.start()) {
+            RocketChatTransport transport = new RocketChatTransport(stub.url(), "bot", "secret", 1000, 1000);
+            transport.postMessage("builds", new Message("first"), (remaining, reset) -> { });
+            stub.expireToken();
+            transport.postMessage("builds", new Message("second"), (remaining, reset) -> { });
+
+            assertThat(stub.loginCount(), is(2));
+            assertThat(stub.posts().get(1).get("text").getAsString(), is("second"));
+        }
+    }
+
+    @Test
+    public void shouldSerializeMessagesForChatPostMessage() throws Exception {
+        Message message = new Message("Stage failed");
+        Attachment attachment = new Attachment();
+        attachment.setTitle("up42");
+        attachment.setTitleLink("https://gocd/up42");
+        attachment.setColor("red");
+        message.addAttachment(attachment);
+
+        transport().postMessage("builds", message, (remaining, reset) -> { });
+
+        JSONAssert.assertEquals("{\"channel\":\"#builds\",\"text\":\"Stage failed\"," +
+                "\"attachments\":[{\"title\":\"up42\",\"title_link\":\"https://gocd/up42\",\"color\":\"red\"}]}", posts.get(0), true);
+    }
+
+    @Test
+    public void shouldAcceptServerAndApiUrls() {
+        assertThat(RocketChatTransport.apiUrl("https://chat.example.com"), is("https://chat.example.com/api/v1/"));
+        assertThat(RocketChatTransport.apiUrl("https://chat.example.com/api/"), is("https://chat.example.com/api/v1/"));
+        assertThat(RocketChatTransport.apiUrl("https://chat.example.com/api/v1"), is("https://chat.example.com/api/v1/"));
+    }
+
+    @Test
+    public void shouldKeepExplicitChannelPrefixes() {
+        assertThat(RocketChatTransport.channel("builds"), is("#builds"));
+        assertThat(RocketChatTransport.channel("@deployer"), is("@deployer"));
+    }
+
+    private RocketChatTransport transport() {
+        return new RocketChatTransport("http://127.0.0.1:" + server.getAddress().getPort(), "bot", "secret", 1000, 1000);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package cd.go.plugin.notification.rocketchat.routing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RoomRouterTest {
+    @Test
+    public void shouldUseDefaultRoomWithoutRules() {
+        RoomRouter router = RoomRouter.compile("", "builds");
+
+        assertThat(router.rooms("any", "pipeline", "stage"), is(Collections.singletonList("builds")));
+    }
+
+    @Test
+    public void shouldMatchExactNamesGlobsAndRegexes() {
+        RoomRouter router = RoomRouter.compile(
+                "pipeline=website => #web\n" +
+                "pipeline=deploy-* => #ops\n" +
+                "pipeline=/(api|worker)-v[0-9]+/ => #backend\n" +
+                "pipeline=?b => #short", "builds");
+
+        assertThat(router.rooms("g", "website", "build"), is(Collections.singletonList("#web")));
+        assertThat(router.rooms("g", "deploy-api", "build"), is(Collections.singletonList("#ops")));
+        assertThat(router.rooms("g", "worker-v2", "build"), is(Collections.singletonList("#backend")));
+        assertThat(router.rooms("g", "ab", "build"), is(Collections.singletonList("#short")));
+        assertThat(router.rooms("g", "website-old", "build"), is(Collections.singletonList("builds")));
+        assertThat(router.rooms("g", "worker-v2x", "build"), is(Collections.singletonList("builds")));
+    }
+
+    @Test
+    public void shouldRequireGroupAndStageWhenGiven() {
+        RoomRouter router = RoomRouter.compile("group=payments stage=deploy => #payments", "builds");
+
+        assertThat(router.rooms("payments", "checkout", "deploy"), is(Collections.singletonList("#payments")));
+        assertThat(router.rooms("payments", "checkout", "build"), is(Collections.singletonList("builds")));
+        assertThat(router.rooms("web", "checkout", "deploy"), is(Collections.singletonList("builds")));
+    }
+
+    @Test
+    public void shouldPostToRoomsOfAllMatchingRulesInRuleOrder() {
+        RoomRouter router = RoomRouter.compile(
+                "=> #all\n" +
+                "pipeline=deploy-api => #api, #ops\n" +
+                "pipeline=deploy* => #ops, #releases\n" +
+                "pipeline=/deploy-.*/ => #audit", "builds");
+
+        assertThat(router.rooms("g", "deploy-api", "prod"), is(Arrays.asList("#all", "#api", "#ops", "#releases", "#audit")));
+        assertThat(router.rooms("g", "other", "prod"), is(Collections.singletonList("#all")));
+    }
+
+    @Test
+    public void shouldSkipCommentsAndBlankLines() {
+        RoomRouter router = RoomRouter.compile("# payments team\n\n  group=payments => #payments  \r\n", "builds");
+
+        assertThat(router.ruleCount(), is(1));
+    }
+
+    @Test
+    public void shouldCacheDecisions() {
+        RoomRouter router = RoomRouter.compile("pipeline=deploy-* => #ops", "builds");
+
+        assertThat(router.rooms("g", "deploy-api", "prod"), sameInstance(router.rooms("g", "deploy-api", "prod")));
+        assertThat(router.cachedRoutes(), is(1));
+    }
+
+    @Test
+    public void shouldKeepCacheBounded() {
+        RoomRouter router = RoomRouter.compile("pipeline=deploy-* => #ops", "builds");
+
+        for (int i = 0; i < RoomRouter.MAX_CACHED_ROUTES + 10; i++) {
+            router.rooms("g", "pipeline-" + i, "stage");
+        }
+
+        assertThat(router.cachedRoutes() <= RoomRouter.MAX_CACHED_ROUTES, is(true));
+    }
+
+    @Test
+    public void shouldRouteAmongThousandsOfRules() {
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            rules.append(i % 2 == 0 ? "pipeline=service-" + i : "pipeline=team-" + i + "-*").append(" => #room-").append(i).append('\n');
+        }
+        RoomRouter router = RoomRouter.compile(rules.toString(), "builds");
+
+        assertThat(router.resolve("g", "service-42", "s"), is(Collections.singletonList("#room-42")));
+        assertThat(router.resolve("g", "team-4243-deploy", "s"), is(Collections.singletonList("#room-4243")));
+        assertThat(router.resolve("g", "team-4243", "s"), is(Collections.singletonList("builds")));
+    }
+
+    @Test
+    public void shouldTellWhichSettingsItWasCompiledFrom() {
+        RoomRouter router = RoomRouter.compile("pipeline=a => #a", "builds");
+
+        assertThat(router.isFor("pipeline=a => #a", "builds"), is(true));
+        assertThat(router.isFor("pipeline=a => #b", "builds"), is(false));
+        assertThat(router.isFor("pipeline=a => #a", "other"), is(false));
+    }
+
+    @Test
+    public void shouldNameTheInvalidLine() {
+        assertInvalid("pipeline=a => #a\nstage=build", "Line 2: expected '=>");
+        assertInvalid("branch=main => #a", "unknown selector 'branch'");
+        assertInvalid("pipeline= => #a", "expected key=value");
+        assertInvalid("pipeline=a =>", "no room");
+        assertInvalid("pipeline=/a(/ => #a", "invalid pipeline regex");
+    }
+
+    @Test
+    public void shouldTakeOnlyCertainLiteralStartOfRegex() {
+        assertThat(RoutingRule.regexPrefix("^deploy-.*"), is("deploy-"));
+        assertThat(RoutingRule.regexPrefix("deploys?-.*"), is("deploy"));
+        assertThat(RoutingRule.regexPrefix("deploy|build"), is(""));
+        assertThat(RoutingRule.regexPrefix("app-(build|deploy)"), is("app-"));
+        assertThat(RoutingRule.regexPrefix("app-[|(]x|y"), is(""));
+        assertThat(RoutingRule.regexPrefix(".*-deploy"), is(""));
+    }
+
+    private static void assertInvalid(String rules, String message) {
+        try {
+            RoutingRule.parseAll(rules);
+            fail("expected " + rules + " to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+}
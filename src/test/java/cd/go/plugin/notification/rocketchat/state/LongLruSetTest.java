@@ -0,0 +1,70 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class LongLruSetTest {
+
+    @Test
+    public void shouldReportWhetherAKeyWasNew() {
+        LongLruSet set = new LongLruSet(4);
+
+        assertThat(set.add(1), is(true));
+        assertThat(set.add(1), is(false));
+        assertThat(set.add(2), is(true));
+        assertThat(set.size(), is(2));
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedKey() {
+        LongLruSet set = new LongLruSet(3);
+        set.add(1);
+        set.add(2);
+        set.add(3);
+        set.add(1);
+
+        set.add(4);
+
+        assertThat(set.contains(2), is(false));
+        assertThat(set.size(), is(3));
+        assertArrayEquals(new long[]{3, 1, 4}, set.keysInAccessOrder());
+    }
+
+    @Test
+    public void shouldBehaveLikeAnAccessOrderedSetUnderRandomLoad() {
+        int capacity = 64;
+        LongLruSet set = new LongLruSet(capacity);
+        Set<Long> expected = new LinkedHashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            // small key space so hits, misses and evictions all happen, colliding low bits exercise the probing
+            long key = (random.nextInt(200) << 20) | 5;
+            boolean added = !expected.remove(key);
+            expected.add(key);
+            if (expected.size() > capacity) {
+                expected.remove(expected.iterator().next());
+            }
+
+            assertThat(set.add(key), is(added));
+        }
+
+        long[] order = expected.stream().mapToLong(Long::longValue).toArray();
+        assertArrayEquals(order, set.keysInAccessOrder());
+        for (long key : order) {
+            assertThat(set.contains(key), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAnEmptyCapacity() {
+        new LongLruSet(0);
+    }
+}
@@ -0,0 +1,56 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class NotificationDeduplicatorTest {
+
+    @Test
+    public void shouldSuppressTheSameStageRunAndState() {
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+
+        assertThat(deduplicator.firstSeen(pipeline("up42", "1", "build", "1", "Building")), is(true));
+        assertThat(deduplicator.firstSeen(pipeline("up42", "1", "build", "1", "Building")), is(false));
+        assertThat(deduplicator.firstSeen(pipeline("up42", "1", "build", "1", "Passed")), is(true));
+        assertThat(deduplicator.firstSeen(pipeline("up42", "1", "build", "2", "Passed")), is(true));
+
+        assertThat(deduplicator.hitCount(), is(1L));
+        assertThat(deduplicator.missCount(), is(3L));
+    }
+
+    @Test
+    public void shouldKeepItsSizeBounded() {
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator(100);
+
+        for (int i = 0; i < 1000; i++) {
+            deduplicator.firstSeen(pipeline("up42", String.valueOf(i), "build", "1", "Passed"));
+        }
+
+        assertThat(deduplicator.size(), is(100));
+        assertThat(deduplicator.firstSeen(pipeline("up42", "0", "build", "1", "Passed")), is(true));
+        assertThat(deduplicator.firstSeen(pipeline("up42", "999", "build", "1", "Passed")), is(false));
+    }
+
+    @Test
+    public void shouldNotConfuseFieldBoundaries() {
+        assertThat(StageKeys.stageRun(pipeline("ab", "1", "c", "1", "Passed")),
+                not(StageKeys.stageRun(pipeline("a", "1", "bc", "1", "Passed"))));
+        assertThat(StageKeys.stageRun(pipeline("up42", "11", "build", "1", "Passed")),
+                not(StageKeys.stageRun(pipeline("up42", "1", "build", "11", "Passed"))));
+    }
+
+    private static StageStatusRequest.Pipeline pipeline(String name, String counter, String stage, String stageCounter, String state) {
+        StageStatusRequest.Pipeline pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = name;
+        pipeline.counter = counter;
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = stage;
+        pipeline.stage.counter = stageCounter;
+        pipeline.stage.state = state;
+        return pipeline;
+    }
+}
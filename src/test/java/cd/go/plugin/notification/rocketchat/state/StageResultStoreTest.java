@@ -0,0 +1,102 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.FAILED;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.PASSED;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.BROKE;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.FIXED;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.IGNORED;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.STALE;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.STILL_FAILING;
+import static cd.go.plugin.notification.rocketchat.state.StageResultStore.Transition.STILL_PASSING;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StageResultStoreTest {
+    private final StageResultStore store = new StageResultStore();
+
+    @Test
+    public void shouldReportResultTransitions() {
+        assertThat(store.record("up42", 1, "build", 1, PASSED), is(STILL_PASSING));
+        assertThat(store.record("up42", 2, "build", 1, FAILED), is(BROKE));
+        assertThat(store.record("up42", 3, "build", 1, FAILED), is(STILL_FAILING));
+        assertThat(store.record("up42", 3, "build", 2, PASSED), is(FIXED));
+        assertThat(store.record("up42", 4, "build", 1, PASSED), is(STILL_PASSING));
+    }
+
+    @Test
+    public void shouldTreatFirstFailureAsBreaking() {
+        assertThat(store.record("up42", 1, "build", 1, FAILED), is(BROKE));
+    }
+
+    @Test
+    public void shouldKeepStagesApart() {
+        store.record("up42", 1, "build", 1, FAILED);
+
+        assertThat(store.isBroken("up42", "build"), is(true));
+        assertThat(store.isBroken("up42", "test"), is(false));
+        assertThat(store.isBroken("up4", "2build"), is(false));
+        assertThat(store.lastResult("other", "build"), is((byte) 0));
+    }
+
+    @Test
+    public void shouldIgnoreOlderRuns() {
+        store.record("up42", 5, "build", 1, FAILED);
+
+        assertThat(store.record("up42", 4, "build", 3, PASSED), is(STALE));
+        assertThat(store.record("up42", 5, "build", 2, PASSED), is(FIXED));
+        assertThat(store.record("up42", 5, "build", 1, FAILED), is(STALE));
+    }
+
+    @Test
+    public void shouldIgnoreOtherResults() {
+        assertThat(store.record("up42", 1, "build", 1, StageResultStore.resultOf("Cancelled")), is(IGNORED));
+        assertThat(store.size(), is(0));
+    }
+
+    @Test
+    public void shouldGrowAndKeepEveryStage() {
+        for (int i = 0; i < 50000; i++) {
+            store.record("pipeline-" + i, 1, "build", 1, i % 2 == 0 ? FAILED : PASSED);
+        }
+
+        assertThat(store.size(), is(50000));
+        for (int i = 0; i < 50000; i++) {
+            assertThat(store.isBroken("pipeline-" + i, "build"), is(i % 2 == 0));
+        }
+    }
+
+    @Test
+    public void shouldReadWhileAnotherThreadWrites() throws Exception {
+        store.record("watched", 1, "build", 1, FAILED);
+        AtomicBoolean lost = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            Thread reader = new Thread(() -> {
+                while (done.getCount() > 0) {
+                    if(!store.isBroken("watched", "build")) {
+                        lost.set(true);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < 20000; i++) {
+            store.record("pipeline-" + i, 1, "build", 1, PASSED);
+        }
+        done.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(lost.get(), is(false));
+    }
+}
@@ -0,0 +1,232 @@
+package cd.go.plugin.notification.rocketchat.state;
+
+import cd.go.plugin.notification.rocketchat.requests.StageStatusRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StateSnapshotsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRestoreLoggedChangesAfterReopen() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, deduplicator);
+        results.record("up42", 1, "build", 1, StageResultStore.FAILED);
+        results.record("up42", 1, "test", 1, StageResultStore.PASSED);
+        deduplicator.firstSeen(pipeline("up42", "1", "build", "1", "Failed"));
+        snapshots.close();
+
+        StageResultStore restoredResults = new StageResultStore();
+        NotificationDeduplicator restoredDeduplicator = new NotificationDeduplicator();
+        StateSnapshots.open(directory, restoredResults, restoredDeduplicator);
+
+        assertThat(restoredResults.isBroken("up42", "build"), is(true));
+        assertThat(restoredResults.lastResult("up42", "test"), is(StageResultStore.PASSED));
+        assertThat(restoredResults.record("up42", 2, "build", 1, StageResultStore.FAILED), is(StageResultStore.Transition.STILL_FAILING));
+        assertThat(restoredDeduplicator.firstSeen(pipeline("up42", "1", "build", "1", "Failed")), is(false));
+    }
+
+    @Test
+    public void shouldSnapshotWhenTheLogIsFull() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator(), 8);
+        for (int i = 0; i < 100; i++) {
+            results.record("pipeline-" + i, 1, "build", 1, StageResultStore.FAILED);
+        }
+        snapshots.close();
+
+        assertThat(new File(directory, StateSnapshots.SNAPSHOT_FILE).isFile(), is(true));
+
+        StageResultStore restored = new StageResultStore();
+        StateSnapshots.open(directory, restored, new NotificationDeduplicator(), 8);
+        assertThat(restored.size(), is(100));
+        assertThat(restored.isBroken("pipeline-0", "build"), is(true));
+        assertThat(restored.isBroken("pipeline-99", "build"), is(true));
+    }
+
+    @Test
+    public void shouldRollOverToTheSecondLogWithoutWaitingForTheSnapshot() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator(), 4);
+        CountDownLatch compactionHeld = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (snapshots.compaction) {
+                compactionHeld.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        holder.start();
+        compactionHeld.await();
+
+        for (int i = 0; i < 6; i++) {
+            results.record("pipeline-" + i, 1, "build", 1, StageResultStore.FAILED);
+        }
+
+        assertThat(snapshots.loggedRecords(), is(2));
+        assertThat(new File(directory, StateSnapshots.SNAPSHOT_FILE).exists(), is(false));
+        // a crash now replays both logs
+        StageResultStore restored = new StageResultStore();
+        File copy = folder.newFolder();
+        Files.copy(new File(directory, StateSnapshots.LOG_FILE).toPath(), new File(copy, StateSnapshots.LOG_FILE).toPath());
+        Files.copy(new File(directory, StateSnapshots.SECOND_LOG_FILE).toPath(), new File(copy, StateSnapshots.SECOND_LOG_FILE).toPath());
+        StateSnapshots.open(copy, restored, new NotificationDeduplicator(), 4).close();
+        assertThat(restored.size(), is(6));
+
+        release.countDown();
+        holder.join();
+        snapshots.close();
+        assertThat(new File(directory, StateSnapshots.SNAPSHOT_FILE).isFile(), is(true));
+    }
+
+    @Test
+    public void shouldSaveChangesDroppedWhileBothLogsWereFull() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator(), 2);
+        synchronized (snapshots.compaction) {
+            for (int i = 0; i < 20; i++) {
+                results.record("pipeline-" + i, 1, "build", 1, StageResultStore.FAILED);
+            }
+        }
+        snapshots.close();
+
+        StageResultStore restored = new StageResultStore();
+        StateSnapshots.open(directory, restored, new NotificationDeduplicator(), 2);
+        assertThat(restored.size(), is(20));
+    }
+
+    @Test
+    public void shouldSnapshotOnCheckpointOnceTheLogIsHalfFull() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator(), 10);
+        for (int i = 0; i < 6; i++) {
+            results.record("pipeline-" + i, 1, "build", 1, StageResultStore.PASSED);
+        }
+
+        snapshots.checkpoint();
+
+        assertThat(snapshots.loggedRecords(), is(0));
+        assertThat(new File(directory, StateSnapshots.SNAPSHOT_FILE).isFile(), is(true));
+    }
+
+    @Test
+    public void shouldKeepTheNewestRunWhateverOrderChangesAreRestoredIn() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator());
+        long key = StageResultStore.key("up42", "build");
+        snapshots.stageResult(key, StageResultStore.pack(2, 1, StageResultStore.PASSED));
+        snapshots.stageResult(key, StageResultStore.pack(1, 1, StageResultStore.FAILED));
+        snapshots.close();
+
+        StageResultStore restored = new StageResultStore();
+        StateSnapshots.open(directory, restored, new NotificationDeduplicator());
+
+        assertThat(restored.lastResult("up42", "build"), is(StageResultStore.PASSED));
+    }
+
+    @Test
+    public void shouldIgnoreTornLogRecords() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator());
+        results.record("up42", 1, "build", 1, StageResultStore.FAILED);
+        results.record("up42", 1, "test", 1, StageResultStore.FAILED);
+        snapshots.close();
+        try (RandomAccessFile log = new RandomAccessFile(new File(directory, StateSnapshots.LOG_FILE), "rw")) {
+            // value of the second record
+            log.seek(StateSnapshots.LOG_HEADER_SIZE + StateSnapshots.RECORD_SIZE + 16);
+            log.write(0x7f);
+        }
+
+        StageResultStore restored = new StageResultStore();
+        StateSnapshots reopened = StateSnapshots.open(directory, restored, new NotificationDeduplicator());
+
+        assertThat(reopened.restoredCount(), is(1));
+        assertThat(restored.isBroken("up42", "build"), is(true));
+        assertThat(restored.lastResult("up42", "test"), is((byte) 0));
+    }
+
+    @Test
+    public void shouldStartEmptyFromADamagedSnapshot() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, new NotificationDeduplicator(), 4);
+        for (int i = 0; i < 10; i++) {
+            results.record("pipeline-" + i, 1, "build", 1, StageResultStore.FAILED);
+        }
+        snapshots.close();
+        try (RandomAccessFile snapshot = new RandomAccessFile(new File(directory, StateSnapshots.SNAPSHOT_FILE), "rw")) {
+            snapshot.seek(40);
+            snapshot.write(0x7f);
+        }
+
+        StageResultStore restored = new StageResultStore();
+        StateSnapshots reopened = StateSnapshots.open(directory, restored, new NotificationDeduplicator(), 4);
+
+        assertThat(reopened.restoredCount(), is(0));
+        assertThat(restored.size(), is(0));
+        restored.record("up42", 1, "build", 1, StageResultStore.FAILED);
+        reopened.close();
+        StageResultStore again = new StageResultStore();
+        StateSnapshots.open(directory, again, new NotificationDeduplicator(), 4);
+        assertThat(again.isBroken("up42", "build"), is(true));
+    }
+
+    @Test
+    public void shouldRestoreAHundredThousandEntries() throws Exception {
+        File directory = folder.newFolder();
+        StageResultStore results = new StageResultStore();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        StateSnapshots snapshots = StateSnapshots.open(directory, results, deduplicator);
+        for (int i = 0; i < 50000; i++) {
+            results.record("pipeline-" + i, i, "build", 1, i % 2 == 0 ? StageResultStore.FAILED : StageResultStore.PASSED);
+            deduplicator.firstSeen(pipeline("pipeline-" + i, String.valueOf(i), "build", "1", "Failed"));
+        }
+        snapshots.close();
+        assertThat(new File(directory, StateSnapshots.SNAPSHOT_FILE).length(), greaterThan(0L));
+
+        StageResultStore restoredResults = new StageResultStore();
+        NotificationDeduplicator restoredDeduplicator = new NotificationDeduplicator();
+        StateSnapshots reopened = StateSnapshots.open(directory, restoredResults, restoredDeduplicator);
+
+        assertThat(restoredResults.size(), is(50000));
+        assertThat(restoredDeduplicator.size(), is(50000));
+        assertThat(reopened.restoredCount(), greaterThan(100000 - 1));
+        assertThat(restoredResults.isBroken("pipeline-49998", "build"), is(true));
+        assertThat(restoredResults.isBroken("pipeline-49999", "build"), is(false));
+    }
+
+    private static StageStatusRequest.Pipeline pipeline(String name, String counter, String stage, String stageCounter, String state) {
+        StageStatusRequest.Pipeline pipeline = new StageStatusRequest.Pipeline();
+        pipeline.name = name;
+        pipeline.counter = counter;
+        pipeline.stage = new StageStatusRequest.Stage();
+        pipeline.stage.name = stage;
+        pipeline.stage.counter = stageCounter;
+        pipeline.stage.state = state;
+        return pipeline;
+    }
+}
@@ -0,0 +1,113 @@
+package cd.go.plugin.notification.rocketchat.utils;
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.bind.util.ISO8601Utils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DefaultDateTypeAdapterTest {
+    private static final TimeZone DEFAULT_TIME_ZONE = TimeZone.getDefault();
+
+    private final DefaultDateTypeAdapter adapter = new DefaultDateTypeAdapter(DefaultDateTypeAdapter.GOCD_PATTERN);
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(DEFAULT_TIME_ZONE);
+    }
+
+    @Test
+    public void shouldParseGoCdTimestampsLikeSimpleDateFormat() throws Exception {
+        Random random = new Random(7);
+        String[] zones = {"UTC", "Asia/Kolkata", "America/St_Johns", "Pacific/Chatham", "Europe/Warsaw"};
+        for (int i = 0; i < 10000; i++) {
+            SimpleDateFormat format = new SimpleDateFormat(DefaultDateTypeAdapter.GOCD_PATTERN, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone(zones[i % zones.length]));
+            // 1970 to 2100, older local mean time offsets have seconds which the pattern cannot show
+            long millis = (long) (random.nextDouble() * 4102444800000L);
+            String value = format.format(new Date(millis));
+
+            assertThat(value, DefaultDateTypeAdapter.parseGoCdMillis(value), is(millis));
+            assertThat(value, adapter.deserializeToDate(value).getTime(), is(format.parse(value).getTime()));
+        }
+    }
+
+    @Test
+    public void shouldLeaveOtherFormatsToTheFallbackParsers() {
+        assertThat(DefaultDateTypeAdapter.parseGoCdMillis("2016-04-06T12:50:03Z"), is(Long.MIN_VALUE));
+        assertThat(DefaultDateTypeAdapter.parseGoCdMillis("2016-02-30T12:50:03.317+0000"), is(Long.MIN_VALUE));
+
+        assertThat(adapter.deserializeToDate("2016-04-06T12:50:03Z").getTime(), is(1459947003000L));
+        assertThat(adapter.deserializeToDate("2016-04-06T12:50:03.317+02:00").getTime(), is(1459939803317L));
+        assertThat(adapter.deserializeToDate(""), is(nullValue()));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void shouldRejectValuesNoParserUnderstands() {
+        adapter.deserializeToDate("yesterday");
+    }
+
+    @Test
+    public void shouldFallBackWhenThePatternHasNoTime() throws Exception {
+        DefaultDateTypeAdapter dateOnly = new DefaultDateTypeAdapter("yyyy-MM-dd");
+
+        assertThat(dateOnly.deserializeToDate("2016-04-06"), is(ISO8601Utils.parse("2016-04-06", new ParsePosition(0))));
+        try {
+            dateOnly.deserializeToDate("yesterday");
+            fail("expected no parser to understand it");
+        } catch (JsonSyntaxException expected) {
+        }
+    }
+
+    @Test
+    public void shouldSerializeInTheDefaultTimeZone() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+
+        assertThat(adapter.serialize(new Date(1459947003317L), Date.class, null), is(new JsonPrimitive("2016-04-06T18:20:03.317+0530")));
+    }
+
+    @Test
+    public void shouldBeSafeToShareBetweenThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long base = 1459947003317L + t * 86400000L;
+                results.add(pool.submit((Callable<Boolean>) () -> {
+                    SimpleDateFormat format = new SimpleDateFormat(DefaultDateTypeAdapter.GOCD_PATTERN, Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    for (int i = 0; i < 2000; i++) {
+                        long millis = base + i * 1001L;
+                        if (adapter.deserializeToDate(format.format(new Date(millis))).getTime() != millis) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}